@@ -37,6 +37,7 @@ import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
@@ -62,6 +63,20 @@ public class ExceptionHandler {
 	 * @param context
 	 */
 	public static boolean register(Context context) {
+		return register(context, new Executor() {
+			public void execute(Runnable command) {
+				new Thread(command).start();
+			}
+		});
+	}
+
+	/**
+	 * Register handler for unhandled exceptions, submitting stored stack
+	 * traces on the given executor.
+	 * @param context
+	 * @param executor
+	 */
+	public static boolean register(Context context, Executor executor) {
 		Log.i(TAG, "Registering default exceptions handler");
 		// Get information about the Package
 		PackageManager pm = context.getPackageManager();
@@ -94,8 +109,7 @@ public class ExceptionHandler {
 			stackTracesFound = true;
 		}
 		
-		new Thread() {
-			@Override
+		executor.execute(new Runnable() {
 			public void run() {
 				// First of all transmit any stack traces that may be lying around
 				submitStackTraces();
@@ -110,7 +124,7 @@ public class ExceptionHandler {
 							new DefaultExceptionHandler(currentHandler));
 				}
 			}
-       	}.start();
+		});
 		
 		return stackTracesFound;
 	}
@@ -128,6 +142,19 @@ public class ExceptionHandler {
 		register(context);
 	}
 
+	/**
+	 * Register handler for unhandled exceptions.
+	 * @param context
+	 * @param Url
+	 * @param executor
+	 */
+	public static void register(Context context, String url, Executor executor) {
+		Log.i(TAG, "Registering default exceptions handler: " + url);
+		// Use custom URL
+		G.URL = url;
+		register(context, executor);
+	}
+
 	
 	/**
 	 * Search for stack trace files.
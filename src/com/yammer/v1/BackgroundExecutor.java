@@ -0,0 +1,243 @@
+package com.yammer.v1;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.yammer.v1.metrics.Gauge;
+import com.yammer.v1.metrics.Metrics;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * The application's background threads, split into lanes so slow network
+ * calls cannot hold up database writes or avatar work.
+ *
+ * Every lane has a fixed number of named threads and a bounded queue.
+ * Work offered to a full lane is dropped and counted rather than piling
+ * up behind a hung connection.
+ */
+public class BackgroundExecutor {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  static final int NETWORK_THREADS = 2;
+  static final int DATABASE_THREADS = 1;
+  static final int IMAGE_THREADS = 3;
+  static final int QUEUE_CAPACITY = 64;
+
+  /**
+   * A fixed-size pool with queue depth and latency accounting.
+   */
+  public static class Lane implements Executor {
+    private final String name;
+    private final ThreadPoolExecutor pool;
+
+    private long submitted = 0L;
+    private long completed = 0L;
+    private long rejected = 0L;
+    private long totalWaitMillis = 0L;
+    private long maxWaitMillis = 0L;
+    private long totalRunMillis = 0L;
+
+    Lane(final String _name, int _threads) {
+      this.name = _name;
+      this.pool = new ThreadPoolExecutor(
+          _threads, _threads,
+          0L, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+          new ThreadFactory() {
+            private int count = 0;
+            public synchronized Thread newThread(final Runnable _r) {
+              return new Thread(new Runnable() {
+                public void run() {
+                  Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                  _r.run();
+                }
+              }, _name + "-" + (++count));
+            }
+          });
+    }
+
+    public void execute(Runnable _command) {
+      offer(_command);
+    }
+
+    /**
+     * Like execute(), for callers that must know whether the task was dropped.
+     *
+     * @return false if the lane was full
+     */
+    public boolean offer(final Runnable _command) {
+      final long queuedAt = System.currentTimeMillis();
+      try {
+        pool.execute(new Runnable() {
+          public void run() {
+            long startedAt = System.currentTimeMillis();
+            try {
+              _command.run();
+            } catch(RuntimeException e) {
+              // Don't let one task take the thread down with it
+              if (DEBUG) Log.e(getClass().getName(), name + ": " + e.getMessage(), e);
+            } finally {
+              finished(startedAt - queuedAt, System.currentTimeMillis() - startedAt);
+            }
+          }
+        });
+        synchronized(this) {
+          submitted++;
+        }
+        return true;
+      } catch(RejectedExecutionException e) {
+        if (DEBUG) Log.w(getClass().getName(), name + " is full, dropping " + _command);
+        synchronized(this) {
+          rejected++;
+        }
+        return false;
+      }
+    }
+
+    private synchronized void finished(long _waitMillis, long _runMillis) {
+      completed++;
+      totalWaitMillis += _waitMillis;
+      totalRunMillis += _runMillis;
+      if(_waitMillis > maxWaitMillis) {
+        maxWaitMillis = _waitMillis;
+      }
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+      return pool.getQueue().size();
+    }
+
+    public int getActiveCount() {
+      return pool.getActiveCount();
+    }
+
+    public synchronized long getSubmittedCount() {
+      return submitted;
+    }
+
+    public synchronized long getCompletedCount() {
+      return completed;
+    }
+
+    public synchronized long getRejectedCount() {
+      return rejected;
+    }
+
+    /**
+     * @return mean time tasks spent queued before they started
+     */
+    public synchronized long getAverageWaitMillis() {
+      return 0 == completed ? 0L : totalWaitMillis / completed;
+    }
+
+    public synchronized long getMaxWaitMillis() {
+      return maxWaitMillis;
+    }
+
+    public synchronized long getAverageRunMillis() {
+      return 0 == completed ? 0L : totalRunMillis / completed;
+    }
+
+    public String toString() {
+      return name + ": queued=" + getQueueDepth()
+          + " active=" + getActiveCount()
+          + " completed=" + getCompletedCount()
+          + " rejected=" + getRejectedCount()
+          + " wait(avg/max)=" + getAverageWaitMillis() + "/" + getMaxWaitMillis() + "ms"
+          + " run(avg)=" + getAverageRunMillis() + "ms";
+    }
+  }
+
+  private final Lane network = new Lane("network", NETWORK_THREADS);
+  private final Lane database = new Lane("database", DATABASE_THREADS);
+  private final Lane image = new Lane("image", IMAGE_THREADS);
+
+  BackgroundExecutor() {
+    Lane[] lanes = getLanes();
+    for(int ii=0; ii < lanes.length ;ii++) {
+      registerGauges(lanes[ii]);
+    }
+  }
+
+  /**
+   * Publish a lane's own accounting as gauges.
+   */
+  private static void registerGauges(final Lane _lane) {
+    String prefix = "lane." + _lane.getName() + ".";
+    Metrics.gauge(prefix + "queued", new Gauge() {
+      public long getValue() {
+        return _lane.getQueueDepth();
+      }
+    });
+    Metrics.gauge(prefix + "active", new Gauge() {
+      public long getValue() {
+        return _lane.getActiveCount();
+      }
+    });
+    Metrics.gauge(prefix + "completed", new Gauge() {
+      public long getValue() {
+        return _lane.getCompletedCount();
+      }
+    });
+    Metrics.gauge(prefix + "rejected", new Gauge() {
+      public long getValue() {
+        return _lane.getRejectedCount();
+      }
+    });
+    Metrics.gauge(prefix + "wait_avg_ms", new Gauge() {
+      public long getValue() {
+        return _lane.getAverageWaitMillis();
+      }
+    });
+    Metrics.gauge(prefix + "wait_max_ms", new Gauge() {
+      public long getValue() {
+        return _lane.getMaxWaitMillis();
+      }
+    });
+    Metrics.gauge(prefix + "run_avg_ms", new Gauge() {
+      public long getValue() {
+        return _lane.getAverageRunMillis();
+      }
+    });
+  }
+
+  /**
+   * Calls to the Yammer API.
+   */
+  public Lane network() {
+    return network;
+  }
+
+  /**
+   * Local database writes, run one at a time.
+   */
+  public Lane database() {
+    return database;
+  }
+
+  /**
+   * Avatar downloads and decoding.
+   */
+  public Lane image() {
+    return image;
+  }
+
+  public Lane[] getLanes() {
+    return new Lane[] { network, database, image };
+  }
+
+}
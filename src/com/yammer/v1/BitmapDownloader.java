@@ -1,73 +1,173 @@
 package com.yammer.v1;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import android.os.Process;
+import android.os.Handler;
+import android.os.Looper;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.WeakHashMap;
 
-import javax.net.ssl.HttpsURLConnection;
-
-import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
+import com.yammer.v1.metrics.Counter;
+import com.yammer.v1.metrics.Histogram;
+import com.yammer.v1.metrics.Metrics;
 
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.util.Log;
+import android.widget.ImageView;
 
 public class BitmapDownloader {
 
 	public static String TAG_BITMAPDOWNLOADER = "ImageDownloader";
+	// Budget for decoded avatars kept in memory
+	private static final int MEMORY_CACHE_BYTES = 1024 * 1024;
+	// Where avatars come from: memory, a file, or the network
+	private static final Counter MEMORY_HITS = Metrics.counter("images.memory_hits");
+	private static final Counter MEMORY_MISSES = Metrics.counter("images.memory_misses");
+	private static final Counter FILE_HITS = Metrics.counter("images.file_hits");
+	private static final Histogram DECODE_TIME = Metrics.timer("images.decode");
+
+	static {
+		Metrics.ratio("images.memory_hit_percent", MEMORY_HITS, MEMORY_MISSES);
+	}
 	private Bitmap defaultBitmap = null;
 	private Context context = null;
-	private int concurrentDownloads = 2;
-	private final LinkedList<Runnable> queue;
-	private final PoolWorker[] threads;
+	public static final int DEFAULT_CONCURRENT_DOWNLOADS = 2;
+	private final BackgroundExecutor.Lane lane;
+	private final WorkQueue downloads;
+	// Downloads queued or running, by MD5. Guarded by downloads.items.
+	private final HashMap<String, Download> inFlight = new HashMap<String, Download>();
+	// Decodes are listed and drained apart from downloads, one at a time, so
+	// a decode never waits behind downloads in the same list. Both drain on
+	// the image lane's threads.
+	private final WorkQueue decodes;
+	// The image each view was last asked to show. Written on the UI thread
+	// and read by decodes, which must not call into the view. Guarded by itself.
+	private final WeakHashMap<ImageView, String> requested = new WeakHashMap<ImageView, String>();
+	private final Handler handler;
+	// Decoded bitmaps by MD5, least recently used first
+	private final LinkedHashMap<String, Bitmap> memoryCache = new LinkedHashMap<String, Bitmap>(32, 0.75f, true);
+	private int memoryCacheBytes = 0;
+
+	/**
+	 * A single avatar download and the views waiting for it
+	 */
+	private class Download implements Runnable {
+		final String urlString;
+		final String md5;
+		final LinkedList<ImageView> views = new LinkedList<ImageView>();
+
+		Download(String urlString, String md5) {
+			this.urlString = urlString;
+			this.md5 = md5;
+		}
+
+		public void run() {
+			ImageFetcher.fetch(urlString, context.getFilesDir(), md5);
+			ImageView[] waiting;
+			synchronized(downloads.items) {
+				inFlight.remove(md5);
+				waiting = views.toArray(new ImageView[views.size()]);
+			}
+			// Decode once for everyone who asked
+			long started = Metrics.start();
+			Bitmap bm = BitmapFactory.decodeFile(context.getFilesDir() + "/" + md5);
+			DECODE_TIME.recordSince(started);
+			if ( bm == null ) {
+				return;
+			}
+			cacheBitmap(md5, bm);
+			for ( int i=0; i<waiting.length; i++ ) {
+				deliver(md5, bm, waiting[i]);
+			}
+		}
+
+		public String toString() {
+			return md5;
+		}
+	}
+
+	/**
+	 * Newest-first work list drained on the image lane by at most a fixed
+	 * number of tasks at a time. Items can still be withdrawn until a drain
+	 * task picks them up.
+	 */
+	private class WorkQueue implements Runnable {
+		final LinkedList<Runnable> items = new LinkedList<Runnable>();
+		private final int maxDrains;
+		private int drains = 0;
+
+		WorkQueue(int maxDrains) {
+			this.maxDrains = maxDrains;
+		}
+
+		/**
+		 * Must be called holding the lock on items
+		 */
+		void push(Runnable r) {
+			items.addFirst(r);
+			if ( drains < maxDrains ) {
+				// A full lane leaves the item queued for the next push or drain
+				drains++;
+				if ( ! lane.offer(this) ) {
+					drains--;
+				}
+			}
+		}
 
-	private class PoolWorker extends Thread {
 		public void run() {
-			if (G.DEBUG_BMDOWNLOADER) Log.i(TAG_BITMAPDOWNLOADER, "Starting poolworker thread");
-			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
 			Runnable r;
 			while(true) {
-				synchronized(queue) {
-					while( queue.isEmpty() ) {
-						try  {
-							queue.wait();
-						} catch (InterruptedException ignored) {
-							// 
-						}
+				synchronized(items) {
+					if ( items.isEmpty() ) {
+						drains--;
+						return;
 					}
-					r = (Runnable)queue.removeFirst();
+					r = items.removeFirst();
 				}
-				if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "Starting download thread: " + r);
+				if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "Starting work: " + r);
 				try {
 					r.run();
 				} catch (RuntimeException e) {
-					// We need to catch runtimeexception - otherwise
-					// we could leak threads
+					// Keep draining, the remaining items would be stuck otherwise
 					if (G.DEBUG_BMDOWNLOADER) Log.e(TAG_BITMAPDOWNLOADER, "ERROR: " + e.getMessage());
 				}
 			}
 		}
-	};
+	}
 	
 	BitmapDownloader(Context context) {
+		this(context, DEFAULT_CONCURRENT_DOWNLOADS);
+	}
+
+	BitmapDownloader(Context context, int concurrentDownloads) {
 		if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "BitmapDownloader::BitmapDownloader");
 		this.context = context;
-		queue = new LinkedList<Runnable>();
-		threads = new PoolWorker[concurrentDownloads];
-		// Create worker threads
-		for ( int i=0; i<concurrentDownloads; i++ ) {
-			threads[i] = new PoolWorker();
-			threads[i].start();
+		handler = new Handler(Looper.getMainLooper());
+		lane = YammerApp.getExecutor().image();
+		downloads = new WorkQueue(concurrentDownloads);
+		decodes = new WorkQueue(1);
+		removeTemporaryFiles();
+	}
+
+	/**
+	 * Remove temporary files left behind by downloads that never finished
+	 */
+	private void removeTemporaryFiles() {
+		File[] files = context.getFilesDir().listFiles();
+		if ( files == null ) {
+			return;
+		}
+		for ( int i=0; i<files.length; i++ ) {
+			if ( files[i].getName().endsWith(".tmp") ) {
+				if (G.DEBUG_BMDOWNLOADER) Log.i(TAG_BITMAPDOWNLOADER, "Removing temporary file: " + files[i].getName());
+				files[i].delete();
+			}
 		}
-		// TODO: Remove all temporary files	    
 	}
 	
 	/**
@@ -83,91 +183,171 @@ public class BitmapDownloader {
 	}
 	
 	/**
-	 * Check that file identified by MD5 is not downloading already
+	 * Look up a decoded bitmap in memory
 	 */
-	protected boolean isDownloading(String md5) {
-		if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "BitmapDownloader::isDownloading");
-		// Try to open the file
-	    File file = new File(context.getFilesDir(), md5 + ".tmp");
-		if ( file.exists() ) {
-			// It exists, so we're probably downloading it right now
-			return true;
-		} 
-		return false;
-	}
-
-	private void startDownload(String urlString, String filename) {
-		if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "BitmapDownloader::startDownload");
-		try {
-			URL url = new URL(urlString);
-			HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-			connection.setHostnameVerifier(new AllowAllHostnameVerifier());
-			InputStream is = connection.getInputStream();
-			BufferedInputStream bis = new BufferedInputStream(is);
-			FileOutputStream fos = context.openFileOutput(filename+".tmp", 0);
-			BufferedOutputStream bos = new BufferedOutputStream(fos);
-			// Dump input stream to output stream
-		    while (true) {
-		        int data = bis.read();
-		        if (data == -1)
-		          break;
-		        bos.write(data);
-		      }
-		    bos.flush();
-		    // Close up everything
-		    bis.close();
-		    bos.close();
-		    // Rename the downloaded file
-		    if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "Renaming downloaded temporary file");
-		    File srcFile = new File(context.getFilesDir(), filename + ".tmp");
-		    File dstFile = new File(context.getFilesDir(), filename );
-		    srcFile.renameTo(dstFile);
-		} catch (MalformedURLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			if (G.DEBUG_BMDOWNLOADER) Log.i(TAG_BITMAPDOWNLOADER, "Removing temporary file: " + filename + ".tmp");
+	private Bitmap getCachedBitmap(String md5) {
+		synchronized(memoryCache) {
+			return memoryCache.get(md5);
 		}
 	}
-	
+
+	/**
+	 * Keep a decoded bitmap in memory, evicting the least recently used ones over budget
+	 */
+	private void cacheBitmap(String md5, Bitmap bm) {
+		synchronized(memoryCache) {
+			Bitmap previous = memoryCache.put(md5, bm);
+			if ( previous != null ) {
+				memoryCacheBytes -= sizeOf(previous);
+			}
+			memoryCacheBytes += sizeOf(bm);
+			Iterator<Map.Entry<String, Bitmap>> it = memoryCache.entrySet().iterator();
+			while ( memoryCacheBytes > MEMORY_CACHE_BYTES && it.hasNext() ) {
+				Map.Entry<String, Bitmap> eldest = it.next();
+				if ( eldest.getKey().equals(md5) ) {
+					// Never evict the bitmap we were asked to keep
+					continue;
+				}
+				memoryCacheBytes -= sizeOf(eldest.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	private static int sizeOf(Bitmap bm) {
+		return bm.getRowBytes() * bm.getHeight();
+	}
+
+	/**
+	 * Queue work newest first: the most recent request is for a row the user
+	 * is looking at, older ones may long have scrolled out of view.
+	 */
+	private void enqueue(WorkQueue target, Runnable r) {
+		synchronized(target.items) {
+			target.push(r);
+		}
+	}
+
+	/**
+	 * Download the image for the view, joining a download already queued or
+	 * running for the same MD5. A queued download moves to the front.
+	 */
+	private void requestDownload(String urlString, String md5, ImageView view) {
+		synchronized(downloads.items) {
+			Download download = inFlight.get(md5);
+			// A download no longer in the queue is already running
+			boolean waiting = true;
+			if ( download == null ) {
+				if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "Adding downloader to queue");
+				download = new Download(urlString, md5);
+				inFlight.put(md5, download);
+			} else {
+				waiting = downloads.items.remove(download);
+			}
+			if ( !download.views.contains(view) ) {
+				download.views.add(view);
+			}
+			if ( waiting ) {
+				downloads.push(download);
+			}
+		}
+	}
+
+	/**
+	 * The view was rebound to another image; drop its interest in the old
+	 * one and forget the download if nobody else is waiting and it has not
+	 * started yet.
+	 */
+	private void cancel(String md5, ImageView view) {
+		synchronized(downloads.items) {
+			Download download = inFlight.get(md5);
+			if ( download == null ) {
+				return;
+			}
+			download.views.remove(view);
+			if ( download.views.isEmpty() && downloads.items.remove(download) ) {
+				if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "Cancelled download: " + md5);
+				inFlight.remove(md5);
+			}
+		}
+	}
+
 	/**
-	 * Retrieve and return the image pointed to by the url
+	 * Show the image pointed to by the url in the given view.
 	 *
-	 * @param url
-	 * @return
+	 * Bitmaps already in memory are set right away. Otherwise the view shows
+	 * the default bitmap while the file cache is decoded (or the image
+	 * downloaded) in the background, and is updated from the UI thread unless
+	 * it has been rebound to another image in the meantime.
 	 */
-	// TODO: Check that it is actually a bitmap being pointed to
-	public Bitmap getBitmap(final String urlString, final String md5) {
+	public void getBitmap(final String urlString, final String md5, final ImageView view) {
 		if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "BitmapDownloader::getBitmap");
-		// Bitmat to return
-		Bitmap bm = null;
-		// Create an MD5 of the URL string to easily identify the image
-		if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "MD5Gen.md5("+urlString+"):"+md5);
-		// Check if we have the image in the cache - attempt to load it
-		bm = BitmapFactory.decodeFile(context.getFilesDir() + "/" + md5);
-		if ( bm != null ) {
-			// Bitmap was found and decoded, so return it
-			return bm;
+		Object previous = view.getTag();
+		if ( previous instanceof String && !previous.equals(md5) ) {
+			cancel((String)previous, view);
 		}
-		// Are we already downloading it?
-		if ( isDownloading(md5) ) {
-			if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "Returning default bitmap");
-			return getDefaultBitmap();
+		view.setTag(md5);
+		synchronized(requested) {
+			requested.put(view, md5);
+		}
+		if ( md5 == null ) {
+			view.setImageBitmap(getDefaultBitmap());
+			return;
+		}
+		Bitmap bm = getCachedBitmap(md5);
+		if ( bm != null ) {
+			MEMORY_HITS.inc();
+			view.setImageBitmap(bm);
+			return;
 		}
-		// Not downloading, so initiate the download
-		Runnable downloader = new Runnable() {
+		MEMORY_MISSES.inc();
+		view.setImageBitmap(getDefaultBitmap());
+		enqueue(decodes, new Runnable() {
 			public void run() {
-				startDownload(urlString, md5);				
+				decode(urlString, md5, view);
+			}
+		});
+	}
+
+	/**
+	 * Decode the cached file, or queue its download when there is none yet.
+	 * Runs on the image lane, one decode at a time.
+	 */
+	private void decode(final String urlString, final String md5, final ImageView view) {
+		if ( !md5.equals(requestedFor(view)) ) {
+			// View was recycled before we got to it
+			return;
+		}
+		Bitmap bm = getCachedBitmap(md5);
+		if ( bm == null ) {
+			long started = Metrics.start();
+			bm = BitmapFactory.decodeFile(context.getFilesDir() + "/" + md5);
+			DECODE_TIME.recordSince(started);
+			if ( bm != null ) {
+				FILE_HITS.inc();
+				cacheBitmap(md5, bm);
 			}
-		};
-		if (G.DEBUG_BMDOWNLOADER) Log.d(TAG_BITMAPDOWNLOADER, "Adding downloader to queue");
-		synchronized(queue) {
-			queue.addLast(downloader);
-			queue.notify();
 		}
-		// Return the default bitmap
-		return getDefaultBitmap();		
+		if ( bm != null ) {
+			deliver(md5, bm, view);
+			return;
+		}
+		requestDownload(urlString, md5, view);
+	}
+
+	private String requestedFor(ImageView view) {
+		synchronized(requested) {
+			return requested.get(view);
+		}
+	}
+
+	private void deliver(final String md5, final Bitmap bm, final ImageView view) {
+		handler.post(new Runnable() {
+			public void run() {
+				if ( md5.equals(view.getTag()) ) {
+					view.setImageBitmap(bm);
+				}
+			}
+		});
 	}
 }
@@ -0,0 +1,119 @@
+package com.yammer.v1;
+
+import java.io.File;
+import java.util.HashSet;
+
+import com.yammer.v1.models.FeedMessage;
+
+import android.util.Log;
+
+/**
+ * Enforces the retention policy on the local store.
+ *
+ * Each feed keeps its newest messages up to a count and an age. Messages
+ * left in no feed are deleted, then the users and URLs nothing refers to
+ * any more, then the avatar files of deleted users. Deletes run in small
+ * batches so a sync or the timeline query never waits long, and the file
+ * is vacuumed once enough of it is free space.
+ */
+public class Compactor implements Runnable {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  static final int BATCH_SIZE = 200;
+  // Vacuum once this share of the file is free pages...
+  static final float MAX_FREE_RATIO = 0.25f;
+  // ...and there is at least this much of it (1MB at the default page size)
+  static final long MIN_FREE_PAGES = 1024;
+
+  private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+  private final YammerData data;
+  private final File avatarDir;
+  private final int keepMessages;
+  private final long keepMillis;
+
+  /**
+   * @param _keepMessages messages kept per feed
+   * @param _keepDays age in days past which messages are dropped
+   */
+  public Compactor(YammerData _data, File _avatarDir, int _keepMessages, int _keepDays) {
+    this.data = _data;
+    this.avatarDir = _avatarDir;
+    this.keepMessages = _keepMessages;
+    this.keepMillis = _keepDays * MILLIS_PER_DAY;
+  }
+
+  public void run() {
+    long started = System.currentTimeMillis();
+
+    int memberships = 0;
+    long tooOld = data.getLastMessageIdBefore(started - keepMillis);
+    FeedMessage.FeedKey[] feeds = data.getFeedsWithMessages();
+    for(int ii=0; ii < feeds.length ;ii++) {
+      long cutoff = Math.max(tooOld, data.getFeedCutoff(feeds[ii].networkId, feeds[ii].feed, keepMessages));
+      if(0L == cutoff) {
+        continue;
+      }
+      int deleted;
+      do {
+        deleted = data.deleteFeedMessagesUpTo(feeds[ii].networkId, feeds[ii].feed, cutoff, BATCH_SIZE);
+        memberships += deleted;
+        Thread.yield();
+      } while(BATCH_SIZE == deleted);
+    }
+
+    int messages = 0;
+    int deleted;
+    do {
+      deleted = data.deleteOrphanMessages(BATCH_SIZE);
+      messages += deleted;
+      Thread.yield();
+    } while(BATCH_SIZE == deleted);
+
+    int urls = data.deleteOrphanURLs();
+    int users = data.deleteOrphanUsers();
+    int avatars = purgeAvatars();
+    boolean vacuumed = data.vacuumIfFragmented(MAX_FREE_RATIO, MIN_FREE_PAGES);
+
+    if (DEBUG) Log.i(getClass().getName(), "Dropped " + memberships + " feed entries, " + messages + " messages, "
+        + urls + " urls, " + users + " users, " + avatars + " avatars"
+        + (vacuumed ? ", vacuumed" : "") + " in " + (System.currentTimeMillis() - started) + "ms");
+  }
+
+  /**
+   * Delete avatar files no stored user refers to.
+   *
+   * @return the number of files deleted
+   */
+  int purgeAvatars() {
+    File[] files = avatarDir.listFiles();
+    if(null == files) {
+      return 0;
+    }
+    HashSet<String> inUse = data.getMugshotMd5s();
+    int deleted = 0;
+    for(int ii=0; ii < files.length ;ii++) {
+      String name = files[ii].getName();
+      // Only touch files named like avatars
+      if(isMd5(name) && ! inUse.contains(name) && files[ii].delete()) {
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+
+  private static boolean isMd5(String _name) {
+    if(32 != _name.length()) {
+      return false;
+    }
+    for(int ii=0; ii < _name.length() ;ii++) {
+      char c = _name.charAt(ii);
+      if( ! ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,146 @@
+package com.yammer.v1;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import android.util.Log;
+
+/**
+ * Parses the API's created_at timestamps, e.g. "2009/01/04 21:57:17 +0000".
+ *
+ * The fixed layout is read digit by digit with no locking and no
+ * allocation, so any thread may call it. Anything that doesn't fit the
+ * layout exactly goes to a SimpleDateFormat made for that call.
+ */
+public class CreatedAtParser {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  static final String PATTERN = "yyyy/MM/dd HH:mm:ss ZZZZZ";
+  // "yyyy/MM/dd HH:mm:ss +hhmm"
+  private static final int LENGTH = 25;
+
+  private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+  private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+  /**
+   * @return milliseconds since the epoch, or -1 if _date is not a timestamp
+   */
+  public static long parse(String _date) {
+    long time = parseFixed(_date);
+    if(-1L != time) {
+      return time;
+    }
+    return parseSlow(_date);
+  }
+
+  /**
+   * @return milliseconds since the epoch, or the current time if _date is not a timestamp
+   */
+  public static long parseOrNow(String _date) {
+    long time = parse(_date);
+    if(-1L == time) {
+      return System.currentTimeMillis();
+    }
+    return time;
+  }
+
+  /**
+   * @return milliseconds since the epoch, or -1 unless _date is in exactly the expected layout
+   */
+  static long parseFixed(String _date) {
+    if(null == _date || LENGTH != _date.length()
+        || '/' != _date.charAt(4) || '/' != _date.charAt(7) || ' ' != _date.charAt(10)
+        || ':' != _date.charAt(13) || ':' != _date.charAt(16) || ' ' != _date.charAt(19)) {
+      return -1L;
+    }
+
+    int year = digits(_date, 0, 4);
+    int month = digits(_date, 5, 2);
+    int day = digits(_date, 8, 2);
+    int hour = digits(_date, 11, 2);
+    int minute = digits(_date, 14, 2);
+    int second = digits(_date, 17, 2);
+    if(year < 1970 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+        || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return -1L;
+    }
+
+    long time = daysSinceEpoch(year, month, day) * MILLIS_PER_DAY
+        + ((hour * 60L + minute) * 60L + second) * 1000L;
+
+    // Fast path for UTC, which is all the server sends in practice
+    if(_date.startsWith("+0000", 20)) {
+      return time;
+    }
+
+    char sign = _date.charAt(20);
+    int offsetHours = digits(_date, 21, 2);
+    int offsetMinutes = digits(_date, 23, 2);
+    if(('+' != sign && '-' != sign) || offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59) {
+      return -1L;
+    }
+    long offset = (offsetHours * 60L + offsetMinutes) * MILLIS_PER_MINUTE;
+    return '+' == sign ? time - offset : time + offset;
+  }
+
+  private static long parseSlow(String _date) {
+    if(null == _date) {
+      return -1L;
+    }
+    try {
+      // SimpleDateFormat is not thread-safe, so each caller gets its own
+      return new SimpleDateFormat(PATTERN).parse(_date).getTime();
+    } catch (ParseException e) {
+      if(DEBUG) Log.e(CreatedAtParser.class.getName(), "Could not parse date: " + _date, e);
+    }
+    return -1L;
+  }
+
+  /**
+   * @return the decimal value of _count digits starting at _start, or -1 on a non-digit
+   */
+  private static int digits(String _s, int _start, int _count) {
+    int value = 0;
+    for(int ii=_start; ii < _start + _count ;ii++) {
+      int digit = _s.charAt(ii) - '0';
+      if(digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static boolean isLeapYear(int _year) {
+    return 0 == _year % 4 && (0 != _year % 100 || 0 == _year % 400);
+  }
+
+  private static int daysInMonth(int _year, int _month) {
+    switch(_month) {
+      case 2:
+        return isLeapYear(_year) ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /**
+   * Days from 1970-01-01 to the given date in the proleptic Gregorian calendar.
+   */
+  static long daysSinceEpoch(int _year, int _month, int _day) {
+    // Count years from March so the leap day falls at the end
+    long y = _month <= 2 ? _year - 1 : _year;
+    long era = y / 400;
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (_month > 2 ? _month - 3 : _month + 9) + 2) / 5 + _day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+}
@@ -0,0 +1,106 @@
+package com.yammer.v1;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+import org.json.JSONException;
+
+import com.yammer.v1.metrics.Metrics;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+/**
+ * Shows the metrics recorded so far, refreshed while the screen is up,
+ * and shares them as JSON.
+ */
+public class DiagnosticsActivity extends Activity {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  private static final long REFRESH_INTERVAL = 2000;
+
+  private static final int MENU_EXPORT = Menu.FIRST;
+  private static final int MENU_RESET = Menu.FIRST + 1;
+
+  private final Handler handler = new Handler();
+
+  private final Runnable refresh = new Runnable() {
+    public void run() {
+      show();
+      handler.postDelayed(this, REFRESH_INTERVAL);
+    }
+  };
+
+  public void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    setContentView(R.layout.diagnostics);
+  }
+
+  public void onResume() {
+    super.onResume();
+    handler.post(refresh);
+  }
+
+  public void onPause() {
+    super.onPause();
+    handler.removeCallbacks(refresh);
+  }
+
+  private void show() {
+    TextView status = (TextView)findViewById(R.id.diagnostics_status);
+    if(Metrics.isEnabled()) {
+      String since = DateFormat.getDateTimeInstance().format(new Date(Metrics.getSince()));
+      status.setText(getString(R.string.diagnostics_recording, since));
+    } else {
+      status.setText(R.string.diagnostics_not_recording);
+    }
+    ((TextView)findViewById(R.id.diagnostics_metrics)).setText(Metrics.toText());
+  }
+
+  public boolean onCreateOptionsMenu(Menu menu) {
+    menu.add(0, MENU_EXPORT, Menu.NONE, R.string.menu_export).setIcon(android.R.drawable.ic_menu_share);
+    menu.add(0, MENU_RESET, Menu.NONE, R.string.menu_reset).setIcon(android.R.drawable.ic_menu_delete);
+    return (super.onCreateOptionsMenu(menu));
+  }
+
+  public boolean onOptionsItemSelected(MenuItem item) {
+    switch(item.getItemId()) {
+    case MENU_EXPORT:
+      if (DEBUG) Log.d(getClass().getName(), "MENU_EXPORT selected");
+      export();
+      break;
+    case MENU_RESET:
+      if (DEBUG) Log.d(getClass().getName(), "MENU_RESET selected");
+      Metrics.reset();
+      show();
+      break;
+    }
+    return (super.onOptionsItemSelected(item));
+  }
+
+  /**
+   * Hand the metrics as JSON to whatever the user picks, e.g. mail.
+   */
+  private void export() {
+    String json;
+    try {
+      json = Metrics.toJSON().toString(2);
+    } catch(JSONException e) {
+      if (DEBUG) Log.w(getClass().getName(), e.getMessage());
+      return;
+    }
+    Intent send = new Intent(Intent.ACTION_SEND);
+    send.setType("text/plain");
+    send.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.diagnostics_export_subject));
+    send.putExtra(Intent.EXTRA_TEXT, json);
+    startActivity(Intent.createChooser(send, getString(R.string.menu_export)));
+  }
+
+}
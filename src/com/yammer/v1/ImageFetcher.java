@@ -0,0 +1,115 @@
+package com.yammer.v1;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import com.yammer.v1.metrics.Counter;
+import com.yammer.v1.metrics.Histogram;
+import com.yammer.v1.metrics.Metrics;
+
+import android.util.Log;
+
+/**
+ * Downloads one image into the file cache for BitmapDownloader.
+ *
+ * Nothing here needs more of the framework than logging, so the host
+ * benchmarks run this same code.
+ */
+class ImageFetcher {
+
+	// Avatars are small thumbnails, anything bigger is not what we asked for
+	static final int MAX_DOWNLOAD_BYTES = 256 * 1024;
+	private static final int TIMEOUT_MILLIS = 20 * 1000;
+	private static final Counter DOWNLOAD_FAILURES = Metrics.counter("images.download_failures");
+	private static final Counter BYTES_IN = Metrics.counter("images.bytes_in");
+	private static final Histogram DOWNLOAD_TIME = Metrics.timer("images.download");
+
+	private ImageFetcher() {
+	}
+
+	/**
+	 * Download the image into a temporary file and rename it into place once
+	 * complete, so readers never see a partial file.
+	 *
+	 * The response stream is closed rather than disconnected. Once an image
+	 * has been read to the end, that lets HttpURLConnection keep the
+	 * connection alive for the next avatar from the same host. A response
+	 * that is rejected or fails part way is closed without reading the rest,
+	 * so its connection may not be reused.
+	 *
+	 * @return whether dir/filename now holds the image
+	 */
+	static boolean fetch(String urlString, File dir, String filename) {
+		if (G.DEBUG_BMDOWNLOADER) Log.d(ImageFetcher.class.getName(), "ImageFetcher::fetch");
+		File srcFile = new File(dir, filename + ".tmp");
+		File dstFile = new File(dir, filename );
+		InputStream is = null;
+		FileOutputStream fos = null;
+		boolean published = false;
+		long started = Metrics.start();
+		try {
+			URL url = new URL(urlString);
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(TIMEOUT_MILLIS);
+			connection.setReadTimeout(TIMEOUT_MILLIS);
+			is = connection.getInputStream();
+
+			// Make sure we are actually getting a reasonably sized image
+			String contentType = connection.getContentType();
+			if ( contentType == null || !contentType.startsWith("image/") ) {
+				throw new IOException("Not an image: " + contentType);
+			}
+			int contentLength = connection.getContentLength();
+			if ( contentLength > MAX_DOWNLOAD_BYTES ) {
+				throw new IOException("Image too large: " + contentLength);
+			}
+
+			fos = new FileOutputStream(srcFile);
+			// Copy input stream to output stream in chunks
+			int total = Utils.copy(is, fos, new byte[8192], MAX_DOWNLOAD_BYTES);
+			if ( contentLength >= 0 && total != contentLength ) {
+				throw new IOException("Truncated download: " + total + " of " + contentLength);
+			}
+			BYTES_IN.add(total);
+			fos.getFD().sync();
+			fos.close();
+			fos = null;
+
+			// Rename the downloaded file
+			if (G.DEBUG_BMDOWNLOADER) Log.d(ImageFetcher.class.getName(), "Renaming downloaded temporary file");
+			published = srcFile.renameTo(dstFile);
+		} catch (MalformedURLException e) {
+			if (G.DEBUG_BMDOWNLOADER) Log.w(ImageFetcher.class.getName(), "Invalid avatar URL: " + urlString);
+		} catch (IOException e) {
+			if (G.DEBUG_BMDOWNLOADER) Log.w(ImageFetcher.class.getName(), "Download failed: " + urlString + ": " + e.getMessage());
+		} finally {
+			close(is);
+			close(fos);
+			DOWNLOAD_TIME.recordSince(started);
+			if ( !published ) {
+				DOWNLOAD_FAILURES.inc();
+				if (G.DEBUG_BMDOWNLOADER) Log.i(ImageFetcher.class.getName(), "Removing temporary file: " + filename + ".tmp");
+				srcFile.delete();
+			}
+		}
+		return published;
+	}
+
+	private static void close(Closeable stream) {
+		if ( stream == null ) {
+			return;
+		}
+		try {
+			stream.close();
+		} catch (IOException ignored) {
+			//
+		}
+	}
+
+}
@@ -0,0 +1,380 @@
+package com.yammer.v1;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Pull parser reading JSON incrementally from a Reader.
+ *
+ * Callers walk the outer structure with begin/end/hasNext/nextName and
+ * materialize only the elements they need as org.json objects, so a large
+ * document never has to exist in memory as a whole.
+ */
+public class JSONStreamReader {
+
+  private static final int SCOPE_ARRAY = 1;
+  private static final int SCOPE_OBJECT = 2;
+
+  private final Reader in;
+  private final char[] buffer = new char[8192];
+  private int pos = 0;
+  private int limit = 0;
+
+  private int[] scopes = new int[16];
+  private boolean[] firsts = new boolean[16];
+  private int depth = 0;
+  private boolean afterName = false;
+
+  private final StringBuilder chars = new StringBuilder();
+
+  public JSONStreamReader(Reader _in) {
+    this.in = _in;
+  }
+
+  public void beginObject() throws IOException, JSONException {
+    beforeValue();
+    expect('{');
+    push(SCOPE_OBJECT);
+  }
+
+  public void endObject() throws IOException, JSONException {
+    expect('}');
+    pop(SCOPE_OBJECT);
+  }
+
+  public void beginArray() throws IOException, JSONException {
+    beforeValue();
+    expect('[');
+    push(SCOPE_ARRAY);
+  }
+
+  public void endArray() throws IOException, JSONException {
+    expect(']');
+    pop(SCOPE_ARRAY);
+  }
+
+  /**
+   * @return whether the current array or object has another element
+   */
+  public boolean hasNext() throws IOException, JSONException {
+    int c = peekNonWhitespace();
+    return ']' != c && '}' != c;
+  }
+
+  public String nextName() throws IOException, JSONException {
+    if(0 == depth || SCOPE_OBJECT != scopes[depth - 1] || afterName) {
+      throw syntaxError("Expected a value");
+    }
+    beforeElement();
+    expect('"');
+    String name = readString();
+    expect(':');
+    afterName = true;
+    return name;
+  }
+
+  /**
+   * @return the next value as a JSONObject, JSONArray, String, Boolean, Long, Double or JSONObject.NULL
+   */
+  public Object nextValue() throws IOException, JSONException {
+    beforeValue();
+    return readValue(true);
+  }
+
+  public JSONObject nextObject() throws IOException, JSONException {
+    Object value = nextValue();
+    if( ! (value instanceof JSONObject)) {
+      throw syntaxError("Expected an object");
+    }
+    return (JSONObject)value;
+  }
+
+  public void skipValue() throws IOException, JSONException {
+    beforeValue();
+    readValue(false);
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private void push(int _scope) {
+    if(depth == scopes.length) {
+      int[] newScopes = new int[depth * 2];
+      boolean[] newFirsts = new boolean[depth * 2];
+      System.arraycopy(scopes, 0, newScopes, 0, depth);
+      System.arraycopy(firsts, 0, newFirsts, 0, depth);
+      scopes = newScopes;
+      firsts = newFirsts;
+    }
+    scopes[depth] = _scope;
+    firsts[depth] = true;
+    depth++;
+  }
+
+  private void pop(int _scope) throws JSONException {
+    if(0 == depth || _scope != scopes[depth - 1] || afterName) {
+      throw syntaxError("Unbalanced " + (SCOPE_ARRAY == _scope ? "array" : "object"));
+    }
+    depth--;
+  }
+
+  private void beforeElement() throws IOException, JSONException {
+    if(firsts[depth - 1]) {
+      firsts[depth - 1] = false;
+    } else {
+      expect(',');
+    }
+  }
+
+  private void beforeValue() throws IOException, JSONException {
+    if(0 == depth) {
+      return;
+    }
+    if(SCOPE_ARRAY == scopes[depth - 1]) {
+      beforeElement();
+    } else if(afterName) {
+      afterName = false;
+    } else {
+      throw syntaxError("Expected a name");
+    }
+  }
+
+  /**
+   * Read one complete value, building it only when asked to.
+   */
+  private Object readValue(boolean _build) throws IOException, JSONException {
+    int c = nextNonWhitespace();
+    switch(c) {
+      case '{':
+        return readObject(_build);
+      case '[':
+        return readArray(_build);
+      case '"':
+        if(_build) {
+          return readString();
+        }
+        skipString();
+        return null;
+      case 't':
+        expectLiteral("rue");
+        return Boolean.TRUE;
+      case 'f':
+        expectLiteral("alse");
+        return Boolean.FALSE;
+      case 'n':
+        expectLiteral("ull");
+        return JSONObject.NULL;
+      default:
+        pos--;
+        return readNumber(_build);
+    }
+  }
+
+  private JSONObject readObject(boolean _build) throws IOException, JSONException {
+    JSONObject object = _build ? new JSONObject() : null;
+    if('}' == peekNonWhitespace()) {
+      pos++;
+      return object;
+    }
+    while(true) {
+      expect('"');
+      if(_build) {
+        String name = readString();
+        expect(':');
+        object.put(name, readValue(true));
+      } else {
+        skipString();
+        expect(':');
+        readValue(false);
+      }
+
+      int c = nextNonWhitespace();
+      if('}' == c) {
+        return object;
+      } else if(',' != c) {
+        throw syntaxError("Unterminated object");
+      }
+    }
+  }
+
+  private JSONArray readArray(boolean _build) throws IOException, JSONException {
+    JSONArray array = _build ? new JSONArray() : null;
+    if(']' == peekNonWhitespace()) {
+      pos++;
+      return array;
+    }
+    while(true) {
+      Object value = readValue(_build);
+      if(_build) {
+        array.put(value);
+      }
+
+      int c = nextNonWhitespace();
+      if(']' == c) {
+        return array;
+      } else if(',' != c) {
+        throw syntaxError("Unterminated array");
+      }
+    }
+  }
+
+  private Object readNumber(boolean _build) throws IOException, JSONException {
+    chars.setLength(0);
+    boolean integral = true;
+    while(true) {
+      if(pos == limit && ! fill()) {
+        break;
+      }
+      char c = buffer[pos];
+      if(('0' <= c && c <= '9') || '-' == c || '+' == c) {
+        chars.append(c);
+      } else if('.' == c || 'e' == c || 'E' == c) {
+        chars.append(c);
+        integral = false;
+      } else {
+        break;
+      }
+      pos++;
+    }
+
+    if(0 == chars.length()) {
+      throw syntaxError("Expected a value");
+    }
+    if( ! _build) {
+      return null;
+    }
+
+    String number = chars.toString();
+    try {
+      if(integral && chars.length() < 19) {
+        return Long.valueOf(number);
+      }
+      return Double.valueOf(number);
+    } catch(NumberFormatException e) {
+      throw syntaxError("Invalid number " + number);
+    }
+  }
+
+  /**
+   * Read the rest of a string whose opening quote was consumed.
+   */
+  private String readString() throws IOException, JSONException {
+    chars.setLength(0);
+    while(true) {
+      if(pos == limit && ! fill()) {
+        throw syntaxError("Unterminated string");
+      }
+      char c = buffer[pos++];
+      if('"' == c) {
+        return chars.toString();
+      } else if('\\' == c) {
+        chars.append(readEscape());
+      } else {
+        chars.append(c);
+      }
+    }
+  }
+
+  private void skipString() throws IOException, JSONException {
+    while(true) {
+      if(pos == limit && ! fill()) {
+        throw syntaxError("Unterminated string");
+      }
+      char c = buffer[pos++];
+      if('"' == c) {
+        return;
+      } else if('\\' == c) {
+        readEscape();
+      }
+    }
+  }
+
+  private char readEscape() throws IOException, JSONException {
+    int c = read();
+    switch(c) {
+      case 'b': return '\b';
+      case 'f': return '\f';
+      case 'n': return '\n';
+      case 'r': return '\r';
+      case 't': return '\t';
+      case 'u':
+        int value = 0;
+        for(int ii=0; ii < 4 ;ii++) {
+          int digit = Character.digit(read(), 16);
+          if(digit < 0) {
+            throw syntaxError("Invalid escape");
+          }
+          value = (value << 4) | digit;
+        }
+        return (char)value;
+      case '"':
+      case '\\':
+      case '/':
+        return (char)c;
+      default:
+        throw syntaxError("Invalid escape");
+    }
+  }
+
+  private void expectLiteral(String _rest) throws IOException, JSONException {
+    for(int ii=0; ii < _rest.length() ;ii++) {
+      if(_rest.charAt(ii) != read()) {
+        throw syntaxError("Invalid literal");
+      }
+    }
+  }
+
+  private void expect(char _c) throws IOException, JSONException {
+    if(_c != nextNonWhitespace()) {
+      throw syntaxError("Expected '" + _c + "'");
+    }
+  }
+
+  private int read() throws IOException, JSONException {
+    if(pos == limit && ! fill()) {
+      throw syntaxError("Unexpected end of input");
+    }
+    return buffer[pos++];
+  }
+
+  private int nextNonWhitespace() throws IOException, JSONException {
+    int c = peekNonWhitespace();
+    pos++;
+    return c;
+  }
+
+  private int peekNonWhitespace() throws IOException, JSONException {
+    while(true) {
+      if(pos == limit && ! fill()) {
+        throw syntaxError("Unexpected end of input");
+      }
+      char c = buffer[pos];
+      if(' ' == c || '\n' == c || '\r' == c || '\t' == c) {
+        pos++;
+      } else {
+        return c;
+      }
+    }
+  }
+
+  private boolean fill() throws IOException {
+    int count = in.read(buffer, 0, buffer.length);
+    if(count <= 0) {
+      pos = limit = 0;
+      return false;
+    }
+    pos = 0;
+    limit = count;
+    return true;
+  }
+
+  private JSONException syntaxError(String _message) {
+    return new JSONException(_message);
+  }
+
+}
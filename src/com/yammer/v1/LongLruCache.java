@@ -0,0 +1,185 @@
+package com.yammer.v1;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size least-recently-used map from long keys to values.
+ *
+ * Entries live in parallel arrays allocated up front, with hash chains and
+ * the LRU list threaded through them as slot indices, so lookups box no
+ * keys and neither get() nor put() allocates once the cache is built.
+ * Not thread-safe.
+ */
+public class LongLruCache<V> {
+
+  private static final int NONE = -1;
+
+  private final int capacity;
+  private final long[] keys;
+  private final Object[] values;
+  // Next slot in the same hash bucket
+  private final int[] chain;
+  // LRU list, most recently used at head
+  private final int[] newer;
+  private final int[] older;
+  private final int[] buckets;
+  private final int mask;
+
+  private int size = 0;
+  private int head = NONE;
+  private int tail = NONE;
+  // Slots freed by remove(), linked through chain
+  private int free = NONE;
+
+  public LongLruCache(int _capacity) {
+    if(_capacity < 1) {
+      throw new IllegalArgumentException("capacity: " + _capacity);
+    }
+    this.capacity = _capacity;
+    this.keys = new long[_capacity];
+    this.values = new Object[_capacity];
+    this.chain = new int[_capacity];
+    this.newer = new int[_capacity];
+    this.older = new int[_capacity];
+
+    int buckets = 1;
+    while(buckets < _capacity * 2) {
+      buckets <<= 1;
+    }
+    this.buckets = new int[buckets];
+    this.mask = buckets - 1;
+    Arrays.fill(this.buckets, NONE);
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(long _key) {
+    int slot = find(_key);
+    if(NONE == slot) {
+      return null;
+    }
+    touch(slot);
+    return (V)values[slot];
+  }
+
+  public void put(long _key, V _value) {
+    int slot = find(_key);
+    if(NONE != slot) {
+      values[slot] = _value;
+      touch(slot);
+      return;
+    }
+
+    if(NONE != free) {
+      slot = free;
+      free = chain[slot];
+    } else if(size < capacity) {
+      slot = size;
+    } else {
+      // Evict the least recently used entry
+      slot = tail;
+      unchain(slot);
+      unlink(slot);
+      size--;
+    }
+
+    keys[slot] = _key;
+    values[slot] = _value;
+    int bucket = bucketOf(_key);
+    chain[slot] = buckets[bucket];
+    buckets[bucket] = slot;
+    linkAtHead(slot);
+    size++;
+  }
+
+  public void remove(long _key) {
+    int slot = find(_key);
+    if(NONE == slot) {
+      return;
+    }
+    unchain(slot);
+    unlink(slot);
+    values[slot] = null;
+    chain[slot] = free;
+    free = slot;
+    size--;
+  }
+
+  public void clear() {
+    Arrays.fill(buckets, NONE);
+    Arrays.fill(values, null);
+    size = 0;
+    head = NONE;
+    tail = NONE;
+    free = NONE;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  private int bucketOf(long _key) {
+    int h = (int)(_key ^ (_key >>> 32));
+    h ^= (h >>> 16);
+    return h & mask;
+  }
+
+  private int find(long _key) {
+    for(int slot = buckets[bucketOf(_key)]; NONE != slot ;slot = chain[slot]) {
+      if(keys[slot] == _key) {
+        return slot;
+      }
+    }
+    return NONE;
+  }
+
+  private void unchain(int _slot) {
+    int bucket = bucketOf(keys[_slot]);
+    if(buckets[bucket] == _slot) {
+      buckets[bucket] = chain[_slot];
+      return;
+    }
+    for(int slot = buckets[bucket]; NONE != slot ;slot = chain[slot]) {
+      if(chain[slot] == _slot) {
+        chain[slot] = chain[_slot];
+        return;
+      }
+    }
+  }
+
+  private void touch(int _slot) {
+    if(head != _slot) {
+      unlink(_slot);
+      linkAtHead(_slot);
+    }
+  }
+
+  private void unlink(int _slot) {
+    if(NONE == newer[_slot]) {
+      head = older[_slot];
+    } else {
+      older[newer[_slot]] = older[_slot];
+    }
+    if(NONE == older[_slot]) {
+      tail = newer[_slot];
+    } else {
+      newer[older[_slot]] = newer[_slot];
+    }
+  }
+
+  private void linkAtHead(int _slot) {
+    newer[_slot] = NONE;
+    older[_slot] = head;
+    if(NONE != head) {
+      newer[head] = _slot;
+    }
+    head = _slot;
+    if(NONE == tail) {
+      tail = _slot;
+    }
+  }
+
+}
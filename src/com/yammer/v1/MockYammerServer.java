@@ -0,0 +1,712 @@
+package com.yammer.v1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.util.Log;
+
+/**
+ * A stand-in for the Yammer API on a local port, so sync can be load
+ * tested without the live service.
+ *
+ * Serves synthetic networks through the endpoints YammerProxy uses: the
+ * WRAP login, users/current.json, networks/current.json, oauth/tokens.json
+ * and the feed pages with newer_than and older_than. Each network has its
+ * own users and a message stream that starts with a backlog and grows at
+ * a fixed rate. Posts, follows and deletes are accepted and dropped. The
+ * resources YammerProxy caches carry an ETag and a matching If-None-Match
+ * is answered 304.
+ *
+ * Latency, 401s and 5xx errors can be injected at random. Everything is
+ * derived from the ids and a seeded Random, so a run can be repeated.
+ */
+public class MockYammerServer {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  // Far above real ids, so synthetic rows never overwrite real ones
+  static final long NETWORK_ID_BASE = 900000000L;
+  static final long USER_ID_BASE = 900000000000L;
+  static final long MESSAGE_ID_BASE = 900000000000000L;
+  // User ids per network
+  private static final long USER_ID_SPAN = 1000000L;
+
+  private static final int HANDLER_THREADS = 4;
+  private static final int SOCKET_TIMEOUT = 10000;
+  private static final int MAX_FOLLOWED = 10;
+
+  private static final String[] FIRST_NAMES = {"Ann", "Bob", "Carla", "Dev", "Erin", "Femi", "Gus", "Hana", "Ivan", "Jo"};
+  private static final String[] LAST_NAMES = {"Abbott", "Brook", "Chen", "Diaz", "Evans", "Fox", "Gray", "Hill", "Ito", "Jones", "Khan"};
+  private static final String[] WORDS = {"release", "build", "meeting", "customer", "deploy", "review", "lunch", "office",
+    "design", "bug", "launch", "report", "sync", "phone", "update", "team", "plan", "demo", "server", "coffee"};
+
+  // A transparent 1x1 GIF, served for every mugshot
+  private static final byte[] MUGSHOT = {
+    0x47, 0x49, 0x46, 0x38, 0x39, 0x61, 0x01, 0x00, 0x01, 0x00, (byte)0x80, 0x00, 0x00, 0x00, 0x00, 0x00,
+    (byte)0xff, (byte)0xff, (byte)0xff, 0x21, (byte)0xf9, 0x04, 0x01, 0x00, 0x00, 0x00, 0x00, 0x2c, 0x00, 0x00,
+    0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00, 0x02, 0x02, 0x44, 0x01, 0x00, 0x3b};
+
+  /**
+   * What to serve. Fields are read when the server starts.
+   */
+  public static class Config {
+    public int networks = 2;
+    public int usersPerNetwork = 50;
+    // Messages each network already has when the server starts
+    public int backlog = 1000;
+    // New messages per network per minute, 0 for none
+    public int messagesPerMinute = 60;
+    public int messagesPerPage = 20;
+    // Characters in a message body, roughly
+    public int messageLength = 140;
+    public long latencyMillis = 0L;
+    // Up to this much more latency, at random
+    public long jitterMillis = 0L;
+    // Share of requests failed with a 5xx, and with a 401
+    public float serverErrorRate = 0f;
+    public float unauthorizedRate = 0f;
+    public long seed = 1L;
+  }
+
+  /**
+   * Counts of what the server has done, as of one moment.
+   */
+  public static class Stats {
+    public final long requests;
+    public final long bytesSent;
+    public final long messagesSent;
+    public final long notModified;
+    public final long serverErrors;
+    public final long unauthorized;
+
+    Stats(long _requests, long _bytesSent, long _messagesSent, long _notModified, long _serverErrors, long _unauthorized) {
+      this.requests = _requests;
+      this.bytesSent = _bytesSent;
+      this.messagesSent = _messagesSent;
+      this.notModified = _notModified;
+      this.serverErrors = _serverErrors;
+      this.unauthorized = _unauthorized;
+    }
+
+    /**
+     * @return what happened between _earlier and this
+     */
+    public Stats since(Stats _earlier) {
+      return new Stats(requests - _earlier.requests, bytesSent - _earlier.bytesSent,
+          messagesSent - _earlier.messagesSent, notModified - _earlier.notModified,
+          serverErrors - _earlier.serverErrors, unauthorized - _earlier.unauthorized);
+    }
+
+    public String toString() {
+      return requests + " requests, " + bytesSent + " bytes, " + messagesSent + " messages, "
+          + notModified + " not modified, " + serverErrors + " 5xx, " + unauthorized + " 401";
+    }
+  }
+
+  private static class Response {
+    final int status;
+    final String contentType;
+    final byte[] body;
+    String etag;
+    int messages = 0;
+
+    Response(int _status, String _contentType, byte[] _body) {
+      this.status = _status;
+      this.contentType = _contentType;
+      this.body = _body;
+    }
+  }
+
+  private final Config config;
+  // Guarded by itself
+  private final Random random;
+  // Milliseconds between messages in a stream
+  private final long spacing;
+  private long startedAt;
+  private ServerSocket serverSocket;
+  private ExecutorService handlers;
+  private String baseURL;
+
+  // Guarded by this
+  private long requests = 0L;
+  private long bytesSent = 0L;
+  private long messagesSent = 0L;
+  private long notModified = 0L;
+  private long serverErrors = 0L;
+  private long unauthorized = 0L;
+
+  public MockYammerServer(Config _config) {
+    this.config = _config;
+    this.random = new Random(_config.seed);
+    this.spacing = 60000L / Math.max(1, _config.messagesPerMinute);
+  }
+
+  /**
+   * Start listening on a free port of the loopback interface.
+   */
+  public synchronized void start() throws IOException {
+    if(null != serverSocket) {
+      return;
+    }
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    baseURL = "http://127.0.0.1:" + serverSocket.getLocalPort();
+    startedAt = System.currentTimeMillis();
+    handlers = Executors.newFixedThreadPool(HANDLER_THREADS);
+
+    final ServerSocket listening = serverSocket;
+    Thread acceptor = new Thread(new Runnable() {
+      public void run() {
+        accept(listening);
+      }
+    }, getClass().getSimpleName());
+    acceptor.setDaemon(true);
+    acceptor.start();
+    if (DEBUG) Log.i(getClass().getName(), "Serving " + config.networks + " networks at " + baseURL);
+  }
+
+  public synchronized void stop() {
+    if(null == serverSocket) {
+      return;
+    }
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      // ignore
+    }
+    serverSocket = null;
+    handlers.shutdownNow();
+    if (DEBUG) Log.i(getClass().getName(), "Stopped: " + getStats());
+  }
+
+  /**
+   * @return where the server listens, e.g. "http://127.0.0.1:41234"
+   */
+  public synchronized String getBaseURL() {
+    return baseURL;
+  }
+
+  public synchronized Stats getStats() {
+    return new Stats(requests, bytesSent, messagesSent, notModified, serverErrors, unauthorized);
+  }
+
+  public static long getNetworkId(int _network) {
+    return NETWORK_ID_BASE + _network + 1;
+  }
+
+  /**
+   * @return the password the login accepts, for any email address
+   */
+  public static String getPassword() {
+    return "mock";
+  }
+
+  private void accept(ServerSocket _listening) {
+    while( ! _listening.isClosed()) {
+      final Socket socket;
+      try {
+        socket = _listening.accept();
+      } catch (IOException e) {
+        // Closed by stop()
+        return;
+      }
+      try {
+        handlers.execute(new Runnable() {
+          public void run() {
+            handle(socket);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        close(socket);
+        return;
+      }
+    }
+  }
+
+  private void handle(Socket _socket) {
+    try {
+      _socket.setSoTimeout(SOCKET_TIMEOUT);
+      InputStream in = _socket.getInputStream();
+      String requestLine = readLine(in);
+      if(null == requestLine) {
+        return;
+      }
+      Map<String, String> headers = new HashMap<String, String>();
+      String line;
+      while(null != (line = readLine(in)) && 0 < line.length()) {
+        int colon = line.indexOf(':');
+        if(0 < colon) {
+          headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+      }
+      // Form bodies carry nothing the server needs
+      String length = headers.get("content-length");
+      if(null != length) {
+        skip(in, Long.parseLong(length));
+      }
+
+      String[] parts = requestLine.split(" ");
+      Response response = respond(parts[0], 1 < parts.length ? parts[1] : "/", headers);
+      delay();
+      write(_socket.getOutputStream(), response);
+    } catch (IOException e) {
+      if (DEBUG) Log.w(getClass().getName(), "Request failed: " + e.getMessage());
+    } catch (NumberFormatException e) {
+      if (DEBUG) Log.w(getClass().getName(), "Bad request: " + e.getMessage());
+    } finally {
+      close(_socket);
+    }
+  }
+
+  private Response respond(String _method, String _target, Map<String, String> _headers) {
+    int query = _target.indexOf('?');
+    String path = -1 == query ? _target : _target.substring(0, query);
+    Map<String, String> params = parseQuery(-1 == query ? "" : _target.substring(query + 1));
+
+    String fault = pickFault();
+    if(null != fault) {
+      return fault(fault);
+    }
+
+    try {
+      if("/oauth_wrap/access_token".equals(path)) {
+        if( ! getPassword().equals(params.get("wrap_password"))) {
+          return text(400, "application/x-www-form-urlencoded", "");
+        }
+        return text(200, "application/x-www-form-urlencoded",
+            "wrap_access_token=" + getToken(0) + "&wrap_refresh_token=" + getSecret(0));
+      }
+      if(path.startsWith("/mugshots/")) {
+        return new Response(200, "image/gif", MUGSHOT);
+      }
+
+      int network = findNetwork(params.get("oauth_token"), _headers.get("authorization"));
+      if(-1 == network) {
+        return unauthorized();
+      }
+
+      if("POST".equals(_method)) {
+        return text(201, "application/json", "{}");
+      }
+      if("DELETE".equals(_method)) {
+        return text(200, "application/json", "{}");
+      }
+
+      if("/api/v1/users/current.json".equals(path)) {
+        return cacheable(getCurrentUser(network, params.containsKey("include_followed_users")).toString(), _headers);
+      }
+      if("/api/v1/networks/current.json".equals(path)) {
+        return cacheable(getNetworks().toString(), _headers);
+      }
+      if("/api/v1/oauth/tokens.json".equals(path)) {
+        return cacheable(getTokens().toString(), _headers);
+      }
+      if("/api/v1/messages.json".equals(path) || "/api/v1/messages/following.json".equals(path)) {
+        return getPage(network, params);
+      }
+      return text(404, "application/json", "{}");
+    } catch (JSONException e) {
+      return text(500, "application/json", "{}");
+    }
+  }
+
+  /**
+   * @return "5xx", "401" or null for a request that should succeed
+   */
+  private String pickFault() {
+    float roll;
+    synchronized(random) {
+      roll = random.nextFloat();
+    }
+    if(roll < config.serverErrorRate) {
+      return "5xx";
+    }
+    if(roll < config.serverErrorRate + config.unauthorizedRate) {
+      return "401";
+    }
+    return null;
+  }
+
+  private Response fault(String _fault) {
+    if("401".equals(_fault)) {
+      synchronized(this) {
+        unauthorized++;
+      }
+      return unauthorized();
+    }
+    synchronized(this) {
+      serverErrors++;
+    }
+    int[] statuses = {500, 502, 503};
+    int status;
+    synchronized(random) {
+      status = statuses[random.nextInt(statuses.length)];
+    }
+    return text(status, "application/json", "{}");
+  }
+
+  private Response unauthorized() {
+    return text(401, "application/json", "{}");
+  }
+
+  private void delay() {
+    long millis = config.latencyMillis;
+    if(0L < config.jitterMillis) {
+      synchronized(random) {
+        millis += (long)(random.nextDouble() * config.jitterMillis);
+      }
+    }
+    if(0L < millis) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * @return the network whose token the request carries, in the query
+   *   string or an OAuth Authorization header, or -1
+   */
+  private int findNetwork(String _token, String _authorization) {
+    String token = _token;
+    if(null == token && null != _authorization) {
+      int start = _authorization.indexOf("oauth_token=\"");
+      if(-1 != start) {
+        start += "oauth_token=\"".length();
+        int end = _authorization.indexOf('"', start);
+        token = decode(_authorization.substring(start, -1 == end ? _authorization.length() : end));
+      }
+    }
+    for(int ii=0; null != token && ii < config.networks ;ii++) {
+      if(getToken(ii).equals(token)) {
+        return ii;
+      }
+    }
+    return -1;
+  }
+
+  private static String getToken(int _network) {
+    return "mock-token-" + _network;
+  }
+
+  private static String getSecret(int _network) {
+    return "mock-secret-" + _network;
+  }
+
+  /**
+   * A 200 with an ETag, or a 304 if the client already has this body.
+   */
+  private Response cacheable(String _body, Map<String, String> _headers) {
+    String etag = "\"" + Integer.toHexString(_body.hashCode()) + "\"";
+    if(etag.equals(_headers.get("if-none-match"))) {
+      synchronized(this) {
+        notModified++;
+      }
+      Response response = new Response(304, null, new byte[0]);
+      response.etag = etag;
+      return response;
+    }
+    Response response = text(200, "application/json", _body);
+    response.etag = etag;
+    return response;
+  }
+
+  private JSONObject getCurrentUser(int _network, boolean _includeFollowed) throws JSONException {
+    JSONObject user = getUser(_network, 0);
+
+    JSONArray tabs = new JSONArray();
+    tabs.put(getTab(YammerProxy.DEFAULT_FEED, "/api/v1/messages/following", "Messages from people you follow", 0));
+    tabs.put(getTab("All", "/api/v1/messages", "All messages in the network", 1));
+    user.put("web_preferences", new JSONObject().put("home_tabs", tabs));
+
+    if(_includeFollowed) {
+      JSONArray followed = new JSONArray();
+      for(int ii=1; ii < config.usersPerNetwork && ii <= MAX_FOLLOWED ;ii++) {
+        followed.put(getUser(_network, ii));
+      }
+      user.put("subscriptions", followed);
+    }
+    return user;
+  }
+
+  private JSONObject getTab(String _name, String _path, String _description, int _order) throws JSONException {
+    return new JSONObject()
+        .put("name", _name)
+        .put("url", baseURL + _path)
+        .put("feed_description", _description)
+        .put("ordering_index", _order);
+  }
+
+  private JSONObject getUser(int _network, int _user) throws JSONException {
+    long id = USER_ID_BASE + _network * USER_ID_SPAN + _user;
+    String first = FIRST_NAMES[_user % FIRST_NAMES.length];
+    String last = LAST_NAMES[(_user / FIRST_NAMES.length) % LAST_NAMES.length];
+    String name = first.toLowerCase() + _user;
+    JSONObject email = new JSONObject()
+        .put("type", "primary")
+        .put("address", name + "@network" + _network + ".example.com");
+    return new JSONObject()
+        .put("type", "user")
+        .put("id", id)
+        .put("network_id", getNetworkId(_network))
+        .put("name", name)
+        .put("full_name", first + " " + last)
+        .put("job_title", "Engineer")
+        .put("mugshot_url", baseURL + "/mugshots/" + id + ".gif")
+        .put("web_url", baseURL + "/users/" + name)
+        .put("url", baseURL + "/api/v1/users/" + id)
+        .put("contact", new JSONObject().put("email_addresses", new JSONArray().put(email)));
+  }
+
+  private JSONArray getNetworks() throws JSONException {
+    JSONArray networks = new JSONArray();
+    for(int ii=0; ii < config.networks ;ii++) {
+      networks.put(new JSONObject()
+          .put("id", getNetworkId(ii))
+          .put("user_id", USER_ID_BASE + ii * USER_ID_SPAN)
+          .put("name", "Mock network " + (ii + 1))
+          .put("web_url", baseURL));
+    }
+    return networks;
+  }
+
+  private JSONArray getTokens() throws JSONException {
+    JSONArray tokens = new JSONArray();
+    for(int ii=0; ii < config.networks ;ii++) {
+      tokens.put(new JSONObject()
+          .put("network_id", getNetworkId(ii))
+          .put("token", getToken(ii))
+          .put("secret", getSecret(ii)));
+    }
+    return tokens;
+  }
+
+  /**
+   * One page of a network's stream, newest first, as the messages
+   * endpoints give it: the page newer_than, older_than or the newest.
+   */
+  private Response getPage(int _network, Map<String, String> _params) throws JSONException {
+    long newest = getMessageCount();
+    long to = newest;
+    long from;
+    if(_params.containsKey("older_than")) {
+      to = Math.min(newest, toSequence(_network, parseId(_params.get("older_than"))) - 1);
+      from = to - config.messagesPerPage + 1;
+    } else {
+      from = Math.max(to - config.messagesPerPage + 1, toSequence(_network, parseId(_params.get("newer_than"))) + 1);
+    }
+    from = Math.max(1L, from);
+
+    SimpleDateFormat format = new SimpleDateFormat(CreatedAtParser.PATTERN, Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    JSONArray messages = new JSONArray();
+    Map<Integer, JSONObject> senders = new LinkedHashMap<Integer, JSONObject>();
+    for(long seq = to; seq >= from ;seq--) {
+      long id = MESSAGE_ID_BASE + seq * config.networks + _network;
+      Random content = new Random(config.seed ^ id);
+      int sender = content.nextInt(config.usersPerNetwork);
+      if( ! senders.containsKey(sender)) {
+        senders.put(sender, getUser(_network, sender));
+      }
+      messages.put(new JSONObject()
+          .put("id", id)
+          .put("sender_id", USER_ID_BASE + _network * USER_ID_SPAN + sender)
+          .put("sender_type", "user")
+          .put("thread_id", id)
+          .put("replied_to_id", JSONObject.NULL)
+          .put("client_type", "Mock")
+          .put("created_at", format.format(new Date(startedAt + (seq - config.backlog) * spacing)))
+          .put("body", new JSONObject().put("plain", getBody(content))));
+    }
+
+    JSONArray references = new JSONArray();
+    for(JSONObject sender : senders.values()) {
+      references.put(sender);
+    }
+    Response response = text(200, "application/json",
+        new JSONObject().put("messages", messages).put("references", references).toString());
+    response.messages = messages.length();
+    return response;
+  }
+
+  /**
+   * @return how many messages each stream has by now
+   */
+  private long getMessageCount() {
+    if(0 == config.messagesPerMinute) {
+      return config.backlog;
+    }
+    return config.backlog + (System.currentTimeMillis() - startedAt) / spacing;
+  }
+
+  /**
+   * @return the position in _network's stream at or after message _id, 0 before the first
+   */
+  private long toSequence(int _network, long _id) {
+    if(_id < MESSAGE_ID_BASE) {
+      return 0L;
+    }
+    return (_id - MESSAGE_ID_BASE - _network) / config.networks;
+  }
+
+  private static long parseId(String _value) {
+    if(null == _value) {
+      return 0L;
+    }
+    try {
+      return Long.parseLong(_value);
+    } catch (NumberFormatException e) {
+      return 0L;
+    }
+  }
+
+  private String getBody(Random _content) {
+    StringBuilder body = new StringBuilder(config.messageLength + 16);
+    while(body.length() < config.messageLength) {
+      if(0 < body.length()) {
+        body.append(' ');
+      }
+      body.append(WORDS[_content.nextInt(WORDS.length)]);
+    }
+    return body.toString();
+  }
+
+  private static Response text(int _status, String _contentType, String _body) {
+    try {
+      return new Response(_status, _contentType, _body.getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      // Every platform has UTF-8
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void write(OutputStream _out, Response _response) throws IOException {
+    StringBuilder head = new StringBuilder();
+    head.append("HTTP/1.1 ").append(_response.status).append(' ').append(getReason(_response.status)).append("\r\n");
+    if(null != _response.contentType) {
+      head.append("Content-Type: ").append(_response.contentType).append("; charset=utf-8\r\n");
+    }
+    head.append("Content-Length: ").append(_response.body.length).append("\r\n");
+    if(null != _response.etag) {
+      head.append("ETag: ").append(_response.etag).append("\r\n");
+    }
+    head.append("Connection: close\r\n\r\n");
+    byte[] headBytes = head.toString().getBytes("US-ASCII");
+    _out.write(headBytes);
+    _out.write(_response.body);
+    _out.flush();
+
+    synchronized(this) {
+      requests++;
+      bytesSent += headBytes.length + _response.body.length;
+      messagesSent += _response.messages;
+    }
+  }
+
+  private static String getReason(int _status) {
+    switch(_status) {
+      case 200: return "OK";
+      case 201: return "Created";
+      case 304: return "Not Modified";
+      case 400: return "Bad Request";
+      case 401: return "Unauthorized";
+      case 404: return "Not Found";
+      case 502: return "Bad Gateway";
+      case 503: return "Service Unavailable";
+      default:  return "Internal Server Error";
+    }
+  }
+
+  private static Map<String, String> parseQuery(String _query) {
+    Map<String, String> params = new HashMap<String, String>();
+    String[] pairs = _query.split("&");
+    for(int ii=0; ii < pairs.length ;ii++) {
+      if(0 == pairs[ii].length()) {
+        continue;
+      }
+      int equals = pairs[ii].indexOf('=');
+      if(-1 == equals) {
+        params.put(decode(pairs[ii]), "");
+      } else {
+        params.put(decode(pairs[ii].substring(0, equals)), decode(pairs[ii].substring(equals + 1)));
+      }
+    }
+    return params;
+  }
+
+  private static String decode(String _value) {
+    try {
+      return URLDecoder.decode(_value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    } catch (IllegalArgumentException e) {
+      return _value;
+    }
+  }
+
+  /**
+   * @return the next line without its CRLF, or null at the end of the stream
+   */
+  private static String readLine(InputStream _in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+    int b;
+    while(-1 != (b = _in.read())) {
+      if('\n' == b) {
+        break;
+      }
+      if('\r' != b) {
+        line.write(b);
+      }
+    }
+    if(-1 == b && 0 == line.size()) {
+      return null;
+    }
+    return line.toString("US-ASCII");
+  }
+
+  private static void skip(InputStream _in, long _bytes) throws IOException {
+    long left = _bytes;
+    while(0 < left) {
+      long skipped = _in.skip(left);
+      if(0 >= skipped) {
+        if(-1 == _in.read()) {
+          return;
+        }
+        skipped = 1;
+      }
+      left -= skipped;
+    }
+  }
+
+  private static void close(Socket _socket) {
+    try {
+      _socket.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+}
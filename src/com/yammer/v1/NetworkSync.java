@@ -0,0 +1,245 @@
+package com.yammer.v1;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.yammer.v1.BackgroundExecutor.Lane;
+import com.yammer.v1.YammerData.YammerDataException;
+import com.yammer.v1.YammerProxy.YammerProxyException;
+import com.yammer.v1.models.Message;
+import com.yammer.v1.models.Network;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Syncs the networks the user is not looking at.
+ *
+ * A pass fetches the networks one at a time on the network lane, each
+ * through a proxy holding that network's own token, so slow networks
+ * leave the lane's other threads to the current network. Every network
+ * keeps its own high-water mark (its default feed's newest stored
+ * message) and its own unread count, which stays in the networks table
+ * until the user switches to it.
+ */
+public class NetworkSync {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  // Give up waiting on a pass that takes longer than this
+  static final long PASS_TIMEOUT = 2 * 60 * 1000L;
+
+  private final Context context;
+  private final YammerData data;
+  private final Lane lane;
+
+  // Guarded by itself
+  private final HashMap<Long, YammerProxy> proxies = new HashMap<Long, YammerProxy>();
+  // Guarded by this; true until the last network of a pass is done
+  private boolean running = false;
+  // Guarded by this; set when a pass gave up waiting on its networks
+  private boolean skipNext = false;
+
+  public NetworkSync(Context _ctx, YammerData _data, Lane _lane) {
+    this.context = _ctx;
+    this.data = _data;
+    this.lane = _lane;
+  }
+
+  /**
+   * Sync every network but one and wait for them to finish.
+   *
+   * The networks are synced one after another in a single lane task, so a
+   * pass never holds more than one of the lane's threads. A pass that
+   * times out is left running: no new pass starts until it is done, and
+   * the one after the timeout is skipped.
+   *
+   * @param _skipNetworkId the network synced separately, i.e. the current one
+   * @param _onUnread called on the lane's thread with each network, as now stored, that got unread messages
+   * @return the number of unread messages found, or YammerService.SYNC_FAILED if every network failed
+   */
+  public int syncAll(long _skipNetworkId, final Block<Network, Void> _onUnread) {
+    synchronized(this) {
+      if(running) {
+        if (DEBUG) Log.d(getClass().getName(), "Already syncing");
+        return 0;
+      }
+      if(skipNext) {
+        if (DEBUG) Log.d(getClass().getName(), "Skipping a pass after a timeout");
+        skipNext = false;
+        return 0;
+      }
+      running = true;
+    }
+
+    // One share for the queued pass and one for this thread, the last to
+    // finish ends the pass
+    final AtomicInteger shares = new AtomicInteger(1);
+    try {
+      Network[] all = data.getNetworks();
+      final ArrayList<Network> networks = new ArrayList<Network>();
+      for(int ii=0; ii < all.length ;ii++) {
+        if(_skipNetworkId != all[ii].networkId) {
+          networks.add(all[ii]);
+        }
+      }
+      if(networks.isEmpty()) {
+        return 0;
+      }
+
+      final int[] unread = new int[networks.size()];
+      final boolean[] failed = new boolean[networks.size()];
+      final CountDownLatch done = new CountDownLatch(1);
+      shares.incrementAndGet();
+      boolean queued = lane.offer(new Runnable() {
+        public void run() {
+          try {
+            for(int ii=0; ii < networks.size() ;ii++) {
+              Network network = networks.get(ii);
+              try {
+                unread[ii] = sync(network);
+              } catch(YammerProxyException e) {
+                if (DEBUG) Log.w(NetworkSync.class.getName(), network.name + ": " + e.getMessage());
+                failed[ii] = true;
+              } catch(YammerDataException e) {
+                if (DEBUG) Log.w(NetworkSync.class.getName(), network.name + ": " + e.getMessage());
+                failed[ii] = true;
+              }
+              if(0 < unread[ii]) {
+                Network stored = data.getNetwork(network.networkId);
+                if(null != stored) {
+                  _onUnread.call(stored);
+                }
+              }
+            }
+          } finally {
+            done.countDown();
+            release(shares);
+          }
+        }
+      });
+      if( ! queued) {
+        shares.decrementAndGet();
+        if (DEBUG) Log.w(getClass().getName(), "Network lane full, no pass");
+        return YammerService.SYNC_FAILED;
+      }
+
+      try {
+        if( ! done.await(PASS_TIMEOUT, TimeUnit.MILLISECONDS)) {
+          if (DEBUG) Log.w(getClass().getName(), "Timed out waiting for networks");
+          synchronized(this) {
+            skipNext = true;
+          }
+          // The networks still to come report through _onUnread
+          return 0;
+        }
+      } catch(InterruptedException e) {
+        return 0;
+      }
+
+      // The latch orders the pass's writes before these reads
+      int total = 0;
+      int failures = 0;
+      for(int ii=0; ii < unread.length ;ii++) {
+        total += unread[ii];
+        if(failed[ii]) {
+          failures++;
+        }
+      }
+      if (DEBUG) Log.d(getClass().getName(), "Synced " + unread.length + " networks, " + total + " unread, " + failures + " failed");
+      return failures == unread.length ? YammerService.SYNC_FAILED : total;
+    } finally {
+      release(shares);
+    }
+  }
+
+  private void release(AtomicInteger _shares) {
+    if(0 == _shares.decrementAndGet()) {
+      synchronized(this) {
+        running = false;
+      }
+    }
+  }
+
+  /**
+   * @return the number of new messages from others
+   */
+  private int sync(Network _network) throws YammerProxyException, YammerDataException {
+    long lastMessageId = data.getLastMessageId(_network.networkId, YammerProxy.DEFAULT_FEED);
+    Reader messages = getProxy(_network).openMessagesNewerThan(getFeedURL(_network), lastMessageId);
+
+    UnreadTally tally = new UnreadTally(_network.userId);
+    try {
+      data.ingestStream(messages, _network.networkId, YammerProxy.DEFAULT_FEED, tally);
+    } finally {
+      try {
+        messages.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+
+    // The first sync of a network only fills the cache
+    int unread = 0L == lastMessageId ? 0 : tally.count;
+    data.recordSync(_network.networkId, unread, System.currentTimeMillis());
+    if (DEBUG) Log.d(getClass().getName(), _network.name + ": " + unread + " unread");
+    return unread;
+  }
+
+  private String getFeedURL(Network _network) {
+    try {
+      return data.getURLForFeed(_network.networkId, YammerProxy.DEFAULT_FEED);
+    } catch(YammerDataException e) {
+      // Feeds are only loaded for the current network
+      return YammerProxy.DEFAULT_FEED_URL;
+    }
+  }
+
+  /**
+   * @return a proxy for _network alone, kept for the next call
+   */
+  YammerProxy getProxy(Network _network) {
+    synchronized(proxies) {
+      YammerProxy proxy = proxies.get(_network.networkId);
+      if(null == proxy || ! proxy.isFor(_network)) {
+        proxy = YammerProxy.forNetwork(context, _network);
+        proxies.put(_network.networkId, proxy);
+      }
+      return proxy;
+    }
+  }
+
+  /**
+   * Forget the per-network proxies, e.g. after the account was reset.
+   */
+  public void reset() {
+    synchronized(proxies) {
+      proxies.clear();
+    }
+  }
+
+  /**
+   * Counts the messages not posted by the network's own user.
+   */
+  private static class UnreadTally implements Block<Message, Void> {
+    private final long userId;
+    int count = 0;
+
+    UnreadTally(long _userId) {
+      this.userId = _userId;
+    }
+
+    public Void call(Message _message) {
+      if(userId != _message.userId) {
+        count++;
+      }
+      return null;
+    }
+  }
+
+}
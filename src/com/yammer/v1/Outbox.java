@@ -0,0 +1,178 @@
+package com.yammer.v1;
+
+import com.yammer.v1.YammerProxy.RequestRejected;
+import com.yammer.v1.YammerProxy.YammerProxyException;
+import com.yammer.v1.models.OutboxItem;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Persistent queue of posts and follow toggles.
+ *
+ * Composing only queues the write of a row on the database lane; a single
+ * worker thread sends the rows in order whenever the network is up,
+ * backing off after failures. A row
+ * leaves the table only once the server has accepted it, so nothing is
+ * lost when the radio drops or the process dies. Server errors and lost
+ * connections are retried for as long as it takes; only a row the server
+ * refuses outright (a 4xx other than 401) is dropped, so it cannot block
+ * the queue.
+ */
+public class Outbox implements Runnable {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  static final long MIN_RETRY_DELAY = 15 * 1000L;
+  static final long MAX_RETRY_DELAY = 30 * 60 * 1000L;
+
+  public interface Delegate {
+    /**
+     * @return the network whose items can be sent now, or 0 for none
+     */
+    public long getNetworkId();
+    public boolean isOnline();
+    /**
+     * @param _networkId the network the item was composed for, which may no longer be the current one
+     */
+    public void send(long _networkId, OutboxItem _item) throws YammerProxyException;
+    public void onSent(OutboxItem _item);
+    public void onRejected(OutboxItem _item);
+  }
+
+  private final YammerData data;
+  private final Delegate delegate;
+  // Guards sendingId and the table between claiming and completing an item
+  private final Object lock = new Object();
+  private long sendingId = 0L;
+  private Thread worker;
+
+  public Outbox(YammerData _data, Delegate _delegate) {
+    this.data = _data;
+    this.delegate = _delegate;
+  }
+
+  public synchronized void start() {
+    if(null == worker) {
+      worker = new Thread(this, "Outbox");
+      worker.start();
+    }
+  }
+
+  public void post(long _networkId, String _body, long _repliedToId) {
+    enqueue(new OutboxItem(_networkId, OutboxItem.ACTION_POST, _body, _repliedToId));
+  }
+
+  public void follow(long _networkId, long _userId, boolean _follow) {
+    enqueue(new OutboxItem(_networkId, _follow ? OutboxItem.ACTION_FOLLOW : OutboxItem.ACTION_UNFOLLOW, null, _userId));
+  }
+
+  /**
+   * Wake the worker, e.g. once the network is back.
+   */
+  public void kick() {
+    synchronized(lock) {
+      lock.notify();
+    }
+  }
+
+  /**
+   * Off the caller's thread, which is usually the UI's: the write waits for
+   * the lock while the worker updates the table.
+   */
+  private void enqueue(final OutboxItem _item) {
+    Runnable write = new Runnable() {
+      public void run() {
+        synchronized(lock) {
+          data.enqueue(_item, sendingId);
+          lock.notify();
+        }
+      }
+    };
+    if( ! YammerApp.getExecutor().database().offer(write)) {
+      // Never lose a post to a full queue
+      write.run();
+    }
+  }
+
+  public void run() {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    while(true) {
+      OutboxItem item;
+      synchronized(lock) {
+        item = claim();
+        if(null == item) {
+          continue;
+        }
+      }
+
+      boolean sent = false;
+      boolean rejected = false;
+      try {
+        if (DEBUG) Log.d(getClass().getName(), "Sending " + item.action + ": " + item.id);
+        delegate.send(item.networkId, item);
+        sent = true;
+      } catch(RequestRejected e) {
+        if (DEBUG) Log.w(getClass().getName(), "Rejected: " + item.id);
+        rejected = true;
+      } catch(YammerProxyException e) {
+        if (DEBUG) Log.w(getClass().getName(), "Failed: " + item.id);
+      } catch(RuntimeException e) {
+        if (DEBUG) Log.w(getClass().getName(), "Failed: " + item.id, e);
+      }
+
+      synchronized(lock) {
+        sendingId = 0L;
+        item.attempts++;
+        if(sent || rejected) {
+          data.deleteOutboxItem(item.id);
+        } else {
+          item.nextAttemptAt = System.currentTimeMillis() + getRetryDelay(item.attempts);
+          data.save(item);
+        }
+      }
+
+      if(sent) {
+        delegate.onSent(item);
+      } else if(rejected) {
+        delegate.onRejected(item);
+      }
+    }
+  }
+
+  /**
+   * Wait until the oldest item may be sent and mark it as being sent.
+   * Only items strictly in order are sent: a failed item holds back the
+   * ones behind it.
+   *
+   * @return the item, or null after a wakeup that requires checking again
+   */
+  private OutboxItem claim() {
+    long networkId = delegate.getNetworkId();
+    OutboxItem item = 0L == networkId ? null : data.getFirstOutboxItem(networkId);
+    long delay = 0L;
+    if(null != item) {
+      delay = item.nextAttemptAt - System.currentTimeMillis();
+      if(delay <= 0 && delegate.isOnline()) {
+        sendingId = item.id;
+        return item;
+      }
+    }
+
+    try {
+      if(delay > 0 && delegate.isOnline()) {
+        lock.wait(delay);
+      } else {
+        lock.wait();
+      }
+    } catch(InterruptedException e) {
+      // check again
+    }
+    return null;
+  }
+
+  static long getRetryDelay(int _attempts) {
+    return Math.min(MAX_RETRY_DELAY, MIN_RETRY_DELAY << Math.min(_attempts - 1, 10));
+  }
+
+}
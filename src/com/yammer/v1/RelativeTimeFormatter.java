@@ -0,0 +1,139 @@
+package com.yammer.v1;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import android.content.res.Resources;
+
+/**
+ * Turns message times into "5 minutes ago" style labels.
+ *
+ * Ages fall into buckets that share one label, and each label string is
+ * built once and reused. nextChangeAt() tells when a label moves to the
+ * next bucket so the list can refresh just those rows at that moment.
+ *
+ * Only for use on the UI thread.
+ */
+public class RelativeTimeFormatter {
+
+  public static final long NEVER = Long.MAX_VALUE;
+
+  private static final long MINUTE = 60;
+  private static final long HOUR = 60 * MINUTE;
+  private static final long DAY = 24 * HOUR;
+  private static final long WEEK = 7 * DAY;
+
+  private final String a_moment_ago;
+  private final String one_minute_ago;
+  private final String a_few_minutes_ago;
+  private final String minutes_ago;
+  private final String about_half_an_hour_ago;
+  private final String about_an_hour_ago;
+  private final String hours_ago;
+  private final String days_ago;
+
+  // "N minutes ago" etc. by N, filled as needed
+  private final String[] minuteLabels = new String[(int)(HOUR / MINUTE)];
+  private final String[] hourLabels = new String[(int)(DAY / HOUR) + 1];
+  private final String[] dayLabels = new String[(int)(WEEK / DAY) + 1];
+
+  // Labels for messages older than a week never change
+  private static final int DATE_CACHE_SIZE = 64;
+  private final LongLruCache<String> dateLabels = new LongLruCache<String>(DATE_CACHE_SIZE);
+  private final SimpleDateFormat formatter = new SimpleDateFormat("MMMMM dd yyyy, HH:mm:ss");
+
+  public RelativeTimeFormatter(Resources _resources) {
+    a_moment_ago = _resources.getString(R.string.a_moment_ago);
+    one_minute_ago = _resources.getString(R.string.one_minute_ago);
+    a_few_minutes_ago = _resources.getString(R.string.a_few_minutes_ago);
+    minutes_ago = _resources.getString(R.string.minutes_ago);
+    about_half_an_hour_ago = _resources.getString(R.string.about_half_an_hour_ago);
+    about_an_hour_ago = _resources.getString(R.string.about_an_hour_ago);
+    hours_ago = _resources.getString(R.string.hours_ago);
+    days_ago = _resources.getString(R.string.days_ago);
+  }
+
+  public String format(long _timestamp, long _now) {
+    // Get the number of seconds ago since this message was posted
+    long seconds = ( _now - _timestamp ) / 1000;
+
+    if ( seconds <= 30 ) {
+      return a_moment_ago;
+    } else if ( seconds <= 90 ) {
+      return one_minute_ago;
+    } else if ( seconds <= 5*MINUTE ) {
+      return a_few_minutes_ago;
+    } else if ( seconds <= 25*MINUTE ) {
+      return label(minuteLabels, (int)(seconds/MINUTE), minutes_ago);
+    } else if ( seconds <= 35*MINUTE ) {
+      return about_half_an_hour_ago;
+    } else if ( seconds <= 55*MINUTE ) {
+      return label(minuteLabels, (int)(seconds/MINUTE), minutes_ago);
+    } else if ( seconds <= 65*MINUTE ) {
+      return about_an_hour_ago;
+    } else if ( seconds <= DAY ) {
+      return label(hourLabels, (int)(seconds/HOUR), hours_ago);
+    } else if ( seconds <= WEEK ) {
+      return label(dayLabels, (int)(seconds/DAY), days_ago);
+    }
+
+    String date = dateLabels.get(_timestamp);
+    if ( null == date ) {
+      date = formatter.format(new Date(_timestamp));
+      dateLabels.put(_timestamp, date);
+    }
+    return date;
+  }
+
+  /**
+   * @return the time at which format() starts returning a different label
+   *         for _timestamp, or NEVER once it shows the date
+   */
+  public long nextChangeAt(long _timestamp, long _now) {
+    long seconds = ( _now - _timestamp ) / 1000;
+    long end;
+
+    if ( seconds <= 30 ) {
+      end = 30;
+    } else if ( seconds <= 90 ) {
+      end = 90;
+    } else if ( seconds <= 5*MINUTE ) {
+      end = 5*MINUTE;
+    } else if ( seconds <= 25*MINUTE ) {
+      end = Math.min(25*MINUTE, lastSecondOf(seconds, MINUTE));
+    } else if ( seconds <= 35*MINUTE ) {
+      end = 35*MINUTE;
+    } else if ( seconds <= 55*MINUTE ) {
+      end = Math.min(55*MINUTE, lastSecondOf(seconds, MINUTE));
+    } else if ( seconds <= 65*MINUTE ) {
+      end = 65*MINUTE;
+    } else if ( seconds <= DAY ) {
+      end = Math.min(DAY, lastSecondOf(seconds, HOUR));
+    } else if ( seconds <= WEEK ) {
+      end = Math.min(WEEK, lastSecondOf(seconds, DAY));
+    } else {
+      return NEVER;
+    }
+
+    // The label changes once a whole second past the end has gone by
+    return _timestamp + (end + 1) * 1000;
+  }
+
+  /**
+   * @return the last second that still rounds down to the same whole _unit
+   */
+  private static long lastSecondOf(long _seconds, long _unit) {
+    return (_seconds / _unit + 1) * _unit - 1;
+  }
+
+  private static String label(String[] _labels, int _count, String _suffix) {
+    if ( _count >= _labels.length ) {
+      return _count + " " + _suffix;
+    }
+    if ( null == _labels[_count] ) {
+      _labels[_count] = _count + " " + _suffix;
+    }
+    return _labels[_count];
+  }
+
+}
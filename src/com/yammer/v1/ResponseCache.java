@@ -0,0 +1,158 @@
+package com.yammer.v1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import android.util.Log;
+
+/**
+ * Small on-disk cache of GET response bodies, used to make conditional requests.
+ *
+ * Each entry is a single file named after the MD5 of its key, holding the
+ * ETag, the Last-Modified value and the body.  The files' modification times
+ * double as the LRU order: a hit touches the file, and once the directory
+ * grows past its byte budget the least recently used files are deleted.
+ */
+public class ResponseCache {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  public static class Entry {
+    public final String etag;
+    public final String lastModified;
+    public final String body;
+
+    Entry(String _etag, String _lastModified, String _body) {
+      this.etag = _etag;
+      this.lastModified = _lastModified;
+      this.body = _body;
+    }
+  }
+
+  private final File dir;
+  private final long maxBytes;
+
+  public ResponseCache(File _dir, long _maxBytes) {
+    this.dir = _dir;
+    this.maxBytes = _maxBytes;
+  }
+
+  public synchronized Entry get(String _key) {
+    File file = fileFor(_key);
+    if( ! file.exists()) {
+      return null;
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+      String etag = emptyToNull(in.readUTF());
+      String lastModified = emptyToNull(in.readUTF());
+      byte[] body = new byte[in.readInt()];
+      in.readFully(body);
+      file.setLastModified(System.currentTimeMillis());
+      return new Entry(etag, lastModified, new String(body, "UTF-8"));
+    } catch(IOException e) {
+      if(DEBUG) Log.w(getClass().getName(), "Dropping unreadable entry: " + file, e);
+      file.delete();
+      return null;
+    } finally {
+      close(in);
+    }
+  }
+
+  public synchronized void put(String _key, String _etag, String _lastModified, String _body) {
+    if( ! dir.exists() && ! dir.mkdirs()) {
+      return;
+    }
+
+    File file = fileFor(_key);
+    File tmp = new File(dir, file.getName() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 8192));
+      out.writeUTF(nullToEmpty(_etag));
+      out.writeUTF(nullToEmpty(_lastModified));
+      byte[] body = _body.getBytes("UTF-8");
+      out.writeInt(body.length);
+      out.write(body);
+      out.close();
+      out = null;
+      if( ! tmp.renameTo(file)) {
+        tmp.delete();
+      }
+    } catch(IOException e) {
+      if(DEBUG) Log.w(getClass().getName(), "Unable to cache " + _key, e);
+      tmp.delete();
+    } finally {
+      close(out);
+    }
+
+    trim();
+  }
+
+  public synchronized void clear() {
+    File[] files = dir.listFiles();
+    if(null == files) return;
+    for(int ii=0; ii < files.length ;ii++) {
+      files[ii].delete();
+    }
+  }
+
+  private void trim() {
+    File[] files = dir.listFiles();
+    if(null == files) return;
+
+    long total = 0;
+    for(int ii=0; ii < files.length ;ii++) {
+      total += files[ii].length();
+    }
+    if(total <= maxBytes) return;
+
+    Arrays.sort(files, new Comparator<File>() {
+      public int compare(File _a, File _b) {
+        long a = _a.lastModified();
+        long b = _b.lastModified();
+        return a < b ? -1 : (a == b ? 0 : 1);
+      }
+    });
+    for(int ii=0; ii < files.length && total > maxBytes ;ii++) {
+      long length = files[ii].length();
+      if(files[ii].delete()) {
+        total -= length;
+        if(DEBUG) Log.d(getClass().getName(), "Evicted " + files[ii].getName());
+      }
+    }
+  }
+
+  private File fileFor(String _key) {
+    return new File(dir, Utils.md5(_key));
+  }
+
+  private static String nullToEmpty(String _value) {
+    return null == _value ? "" : _value;
+  }
+
+  private static String emptyToNull(String _value) {
+    return 0 == _value.length() ? null : _value;
+  }
+
+  private static void close(Closeable _stream) {
+    if(null == _stream) return;
+    try {
+      _stream.close();
+    } catch(IOException e) {
+      // ignore
+    }
+  }
+
+}
@@ -0,0 +1,176 @@
+package com.yammer.v1;
+
+import com.yammer.v1.models.Message;
+import com.yammer.v1.settings.SettingsEditor;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.AdapterView.OnItemClickListener;
+
+/**
+ * Searches the messages stored for the current network as the user types.
+ *
+ * Queries run on the database lane once typing pauses, and a result that
+ * arrives after a newer query was started is dropped.
+ */
+public class SearchActivity extends Activity {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  public static final String EXTRA_QUERY = "query";
+
+  // Wait this long after a keystroke before searching
+  private static final long TYPING_DELAY = 300;
+  private static final int RESULT_LIMIT = 100;
+  private static final String[] PROJECTION = new String[] {Message.FIELD_MESSAGE};
+
+  private final Handler handler = new Handler();
+  private YammerData data;
+  private long networkId;
+  private TweetListAdapter adapter;
+  // Only touched on the UI thread
+  private int generation = 0;
+
+  private final Runnable search = new Runnable() {
+    public void run() {
+      search(getQueryEditor().getText().toString());
+    }
+  };
+
+  public void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    setContentView(R.layout.search_activity);
+
+    data = new YammerData(this);
+    networkId = new SettingsEditor(this).getCurrentNetworkId();
+
+    ListView results = getResultList();
+    results.setEmptyView(findViewById(R.id.search_empty));
+    results.setOnItemClickListener(new OnItemClickListener() {
+      public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
+        Message message = data.getMessage(id);
+        if(null != message) {
+          Intent intent = new Intent(SearchActivity.this, YammerReplyActivity.class);
+          intent.putExtra("messageId", message.messageId);
+          startActivity(intent);
+        }
+      }
+    });
+
+    EditText editor = getQueryEditor();
+    editor.addTextChangedListener(new TextWatcher() {
+      public void afterTextChanged(Editable s) {
+        handler.removeCallbacks(search);
+        handler.postDelayed(search, TYPING_DELAY);
+      }
+
+      public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+      }
+
+      public void onTextChanged(CharSequence s, int start, int before, int count) {
+      }
+    });
+
+    String query = getIntent().getStringExtra(EXTRA_QUERY);
+    if(null != query) {
+      editor.setText(query);
+    }
+  }
+
+  private void search(final String _query) {
+    final int searchGeneration = ++generation;
+    YammerApp.getExecutor().database().execute(new Runnable() {
+      public void run() {
+        long started = System.currentTimeMillis();
+        final Cursor cursor = data.search(_query, networkId, RESULT_LIMIT);
+        if(null != cursor) {
+          // Run the query here rather than on the UI thread
+          cursor.getCount();
+        }
+        if (DEBUG) Log.d(SearchActivity.class.getName(), "\"" + _query + "\": "
+            + (null == cursor ? 0 : cursor.getCount()) + " results in " + (System.currentTimeMillis() - started) + "ms");
+
+        handler.post(new Runnable() {
+          public void run() {
+            if(searchGeneration != generation || isFinishing()) {
+              if(null != cursor) {
+                cursor.close();
+              }
+              return;
+            }
+            showResults(cursor);
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * @param _cursor the results, or null to clear them
+   */
+  private void showResults(Cursor _cursor) {
+    TextView empty = (TextView)findViewById(R.id.search_empty);
+    empty.setText(null == _cursor ? R.string.search_hint : R.string.search_no_results);
+
+    if(null == adapter) {
+      if(null == _cursor) {
+        return;
+      }
+      adapter = new TweetListAdapter(this, R.layout.list_row, _cursor, PROJECTION, new int[] {R.id.message});
+      getResultList().setAdapter(adapter);
+    } else {
+      // Closes the previous results
+      adapter.changeCursor(_cursor);
+    }
+  }
+
+  public void onPause() {
+    super.onPause();
+    if(null != adapter) {
+      adapter.pauseTimeRefresh();
+    }
+  }
+
+  public void onResume() {
+    super.onResume();
+    if(null != adapter) {
+      adapter.resumeTimeRefresh();
+    }
+  }
+
+  public void onDestroy() {
+    handler.removeCallbacks(search);
+    // Drop any result still on its way
+    generation++;
+    if(null != adapter) {
+      adapter.changeCursor(null);
+    }
+    // Behind any search still running on the single database thread
+    YammerApp.getExecutor().database().execute(new Runnable() {
+      public void run() {
+        data.close();
+      }
+    });
+    super.onDestroy();
+  }
+
+  private EditText getQueryEditor() {
+    return (EditText)findViewById(R.id.search_query);
+  }
+
+  private ListView getResultList() {
+    return (ListView)findViewById(R.id.search_results);
+  }
+
+}
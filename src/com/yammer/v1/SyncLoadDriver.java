@@ -0,0 +1,161 @@
+package com.yammer.v1;
+
+import java.io.IOException;
+
+import com.yammer.v1.settings.SettingsEditor;
+
+import android.content.Intent;
+import android.os.Debug;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Measures sync against a MockYammerServer. Debug builds only.
+ *
+ * Started by YammerService.INTENT_LOAD_TEST, e.g.
+ *   adb shell am broadcast -a com.yammer.v1:LOAD_TEST --ei passes 30 --ei rate 600 --ei error_percent 5
+ *
+ * Signs the service in to a fresh server, then makes one
+ * YammerService.getMessages() call per pass, the same call the sync timer
+ * makes; the timer itself is suspended for the run. Each pass logs the messages stored, the time taken, what the
+ * server sent, the CPU time the process used (our proxy for battery) and
+ * the heap in use; a summary follows the last pass. If the sign in
+ * succeeded, the synthetic networks are then deleted and the service is
+ * signed out and pointed back at the server it used before, so the real
+ * account has to sign in again.
+ */
+class SyncLoadDriver implements Runnable {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  public static final String EXTRA_PASSES = "passes";
+  // Milliseconds between passes
+  public static final String EXTRA_INTERVAL = "interval";
+  public static final String EXTRA_NETWORKS = "networks";
+  public static final String EXTRA_USERS = "users";
+  public static final String EXTRA_BACKLOG = "backlog";
+  // New messages per network per minute
+  public static final String EXTRA_RATE = "rate";
+  public static final String EXTRA_PAGE_SIZE = "page_size";
+  public static final String EXTRA_MESSAGE_LENGTH = "message_length";
+  public static final String EXTRA_LATENCY = "latency";
+  public static final String EXTRA_JITTER = "jitter";
+  public static final String EXTRA_ERROR_PERCENT = "error_percent";
+  public static final String EXTRA_UNAUTHORIZED_PERCENT = "unauthorized_percent";
+  public static final String EXTRA_SEED = "seed";
+
+  private final YammerService service;
+  private final int passes;
+  private final long interval;
+  private final MockYammerServer.Config config = new MockYammerServer.Config();
+
+  SyncLoadDriver(YammerService _service, Intent _intent) {
+    this.service = _service;
+    this.passes = _intent.getIntExtra(EXTRA_PASSES, 20);
+    this.interval = _intent.getIntExtra(EXTRA_INTERVAL, 5000);
+    config.networks = _intent.getIntExtra(EXTRA_NETWORKS, config.networks);
+    config.usersPerNetwork = _intent.getIntExtra(EXTRA_USERS, config.usersPerNetwork);
+    config.backlog = _intent.getIntExtra(EXTRA_BACKLOG, config.backlog);
+    config.messagesPerMinute = _intent.getIntExtra(EXTRA_RATE, config.messagesPerMinute);
+    config.messagesPerPage = _intent.getIntExtra(EXTRA_PAGE_SIZE, config.messagesPerPage);
+    config.messageLength = _intent.getIntExtra(EXTRA_MESSAGE_LENGTH, config.messageLength);
+    config.latencyMillis = _intent.getIntExtra(EXTRA_LATENCY, 0);
+    config.jitterMillis = _intent.getIntExtra(EXTRA_JITTER, 0);
+    config.serverErrorRate = _intent.getIntExtra(EXTRA_ERROR_PERCENT, 0) / 100f;
+    config.unauthorizedRate = _intent.getIntExtra(EXTRA_UNAUTHORIZED_PERCENT, 0) / 100f;
+    config.seed = _intent.getIntExtra(EXTRA_SEED, 1);
+  }
+
+  public void run() {
+    MockYammerServer server = new MockYammerServer(config);
+    try {
+      server.start();
+    } catch (IOException e) {
+      if (DEBUG) Log.w(getClass().getName(), "Could not start the server: " + e.getMessage());
+      return;
+    }
+
+    String realURL = new SettingsEditor(service).getUrl();
+    service.setSyncSuspended(true);
+    try {
+      int status = service.signIn(server.getBaseURL(), "load@example.com", MockYammerServer.getPassword());
+      if (200 != status) {
+        // Nothing of the server's was stored, and signIn() went back to the real server
+        if (DEBUG) Log.w(getClass().getName(), "Sign in failed with " + status);
+        return;
+      }
+      try {
+        // Let the first page fetched on changing feed land before measuring
+        pause();
+
+        drive(server);
+      } finally {
+        for(int ii=0; ii < config.networks ;ii++) {
+          service.getYammerData().resetData(MockYammerServer.getNetworkId(ii));
+        }
+        service.getYammerData().deleteOrphanUsers();
+        service.signOut(realURL);
+      }
+    } finally {
+      server.stop();
+      service.setSyncSuspended(false);
+    }
+  }
+
+  private void drive(MockYammerServer _server) {
+    int stored = 0;
+    int failed = 0;
+    long syncMillis = 0L;
+    long cpuMillis = 0L;
+    long peakHeap = 0L;
+    MockYammerServer.Stats first = _server.getStats();
+
+    for(int ii=0; ii < passes ;ii++) {
+      MockYammerServer.Stats before = _server.getStats();
+      long cpuBefore = Process.getElapsedCpuTime();
+      long started = System.currentTimeMillis();
+
+      int found = service.getMessages(false);
+
+      long took = System.currentTimeMillis() - started;
+      long cpu = Process.getElapsedCpuTime() - cpuBefore;
+      Runtime runtime = Runtime.getRuntime();
+      long heap = runtime.totalMemory() - runtime.freeMemory();
+      long nativeHeap = Debug.getNativeHeapAllocatedSize();
+      MockYammerServer.Stats sent = _server.getStats().since(before);
+
+      if (YammerService.SYNC_FAILED == found) {
+        failed++;
+      } else {
+        stored += found;
+      }
+      syncMillis += took;
+      cpuMillis += cpu;
+      peakHeap = Math.max(peakHeap, heap);
+
+      if (DEBUG) Log.i(getClass().getName(), "Pass " + (ii + 1) + "/" + passes + ": "
+          + (YammerService.SYNC_FAILED == found ? "failed" : found + " messages") + " in " + took + "ms, "
+          + cpu + "ms cpu, heap " + (heap / 1024) + "KB, native " + (nativeHeap / 1024) + "KB; server: " + sent);
+
+      if (ii + 1 < passes) {
+        pause();
+      }
+    }
+
+    MockYammerServer.Stats total = _server.getStats().since(first);
+    if (DEBUG) Log.i(getClass().getName(), "Summary: " + stored + " messages in " + passes + " passes, " + failed + " failed; "
+        + (0L == syncMillis ? 0L : stored * 1000L / syncMillis) + " messages/s while syncing, "
+        + (0 == stored ? 0L : cpuMillis * 100 / stored) + "ms cpu per 100 messages, "
+        + (0 == stored ? 0L : total.bytesSent / stored) + " bytes per message, "
+        + "peak heap " + (peakHeap / 1024) + "KB; server: " + total);
+  }
+
+  private void pause() {
+    try {
+      Thread.sleep(interval);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
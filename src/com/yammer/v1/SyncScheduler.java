@@ -0,0 +1,130 @@
+package com.yammer.v1;
+
+/**
+ * Decides when the service should next sync.
+ *
+ * The wait starts from the interval the user configured and doubles for
+ * every consecutive sync that found nothing new or failed, up to a cap,
+ * so an idle feed or a dead network costs a handful of wakeups an hour
+ * instead of hundreds. While the activity is in the foreground the idle
+ * back-off is ignored and the interval is shortened. Any new message
+ * resets the back-off.
+ *
+ * Has no Android dependencies so it can be driven by a fake clock.
+ */
+public class SyncScheduler {
+
+  public interface Clock {
+    public long now();
+  }
+
+  public static final Clock SYSTEM_CLOCK = new Clock() {
+    public long now() {
+      return System.currentTimeMillis();
+    }
+  };
+
+  // Never sync more often than this, whatever the settings say
+  static final long MIN_INTERVAL = 30 * 1000L;
+  // Back-off stops growing here
+  static final long MAX_INTERVAL = 60 * 60 * 1000L;
+  // Foreground syncs run this many times as often
+  static final int FOREGROUND_SPEEDUP = 2;
+  // Doubling more than this many times always hits MAX_INTERVAL anyway
+  private static final int MAX_BACKOFF_SHIFT = 8;
+
+  public static final long NEVER = Long.MAX_VALUE;
+
+  private final Clock clock;
+
+  private long interval = 0L;
+  private boolean foreground = false;
+  private boolean suspended = false;
+  private long lastSyncAt = 0L;
+  private int idleSyncs = 0;
+  private int failedSyncs = 0;
+
+  public SyncScheduler(Clock _clock) {
+    this.clock = _clock;
+  }
+
+  /**
+   * @param _interval milliseconds between syncs, 0 disables syncing
+   */
+  public synchronized void setInterval(long _interval) {
+    this.interval = _interval;
+  }
+
+  public synchronized void setForeground(boolean _foreground) {
+    this.foreground = _foreground;
+  }
+
+  /**
+   * Hold off all syncing until resumed, e.g. while something else is
+   * driving syncs itself.
+   */
+  public synchronized void setSuspended(boolean _suspended) {
+    this.suspended = _suspended;
+  }
+
+  /**
+   * Record a completed sync pass.
+   *
+   * @param _newMessages number of messages the pass brought in
+   * @param _failed whether the pass could not reach the server
+   */
+  public synchronized void onSyncFinished(int _newMessages, boolean _failed) {
+    this.lastSyncAt = clock.now();
+    if(_failed) {
+      failedSyncs++;
+    } else {
+      failedSyncs = 0;
+      idleSyncs = 0 == _newMessages ? idleSyncs + 1 : 0;
+    }
+  }
+
+  /**
+   * Forget any back-off, e.g. after the user asked for a refresh.
+   */
+  public synchronized void reset() {
+    idleSyncs = 0;
+    failedSyncs = 0;
+  }
+
+  /**
+   * @return the time the next sync is due, or NEVER when syncing is disabled or suspended
+   */
+  public synchronized long getNextSyncAt() {
+    if(0L == interval || suspended) {
+      return NEVER;
+    }
+    return lastSyncAt + getCurrentInterval();
+  }
+
+  /**
+   * @return milliseconds until the next sync is due, 0 if it is overdue, or NEVER
+   */
+  public synchronized long getDelay() {
+    long next = getNextSyncAt();
+    if(NEVER == next) {
+      return NEVER;
+    }
+    return Math.max(0L, next - clock.now());
+  }
+
+  synchronized long getCurrentInterval() {
+    long base = interval;
+    int shift = failedSyncs;
+    if(foreground) {
+      base /= FOREGROUND_SPEEDUP;
+    } else {
+      shift += idleSyncs;
+    }
+    base = Math.max(MIN_INTERVAL, base);
+    if(0 == shift) {
+      return base;
+    }
+    return Math.min(Math.max(MAX_INTERVAL, base), base << Math.min(shift, MAX_BACKOFF_SHIFT));
+  }
+
+}
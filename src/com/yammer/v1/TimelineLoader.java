@@ -0,0 +1,196 @@
+package com.yammer.v1;
+
+import com.yammer.v1.metrics.Histogram;
+import com.yammer.v1.metrics.Metrics;
+import com.yammer.v1.models.Message;
+
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Runs the timeline query off the UI thread and hands the finished cursor
+ * back on it.
+ *
+ * The cursor is filled in the background (getCount() forces the query),
+ * so swapping it into the adapter costs nothing on the UI thread. Loads
+ * requested while one is running are folded into a single follow-up load.
+ */
+public class TimelineLoader {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  // The timeline query, run to completion
+  private static final Histogram LOAD_TIME = Metrics.timer("timeline.load");
+
+  public interface Callback {
+    /**
+     * Called on the UI thread. The callback owns the cursor.
+     *
+     * @param _insertedAtTop number of rows newer than the previous top message
+     */
+    public void onLoaded(Cursor _cursor, int _insertedAtTop);
+
+    /**
+     * Called on the UI thread when the load could not be queued or the
+     * query threw.
+     */
+    public void onFailed();
+  }
+
+  private final YammerData data;
+  private final BackgroundExecutor.Lane executor;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  // Guarded by this
+  private boolean running = false;
+  private Request pending = null;
+
+  private static class Request {
+    final long networkId;
+    final String feed;
+    final long topMessageId;
+    final int limit;
+    final Callback callback;
+
+    Request(long _networkId, String _feed, long _topMessageId, int _limit, Callback _callback) {
+      this.networkId = _networkId;
+      this.feed = _feed;
+      this.topMessageId = _topMessageId;
+      this.limit = _limit;
+      this.callback = _callback;
+    }
+  }
+
+  public TimelineLoader(YammerData _data, BackgroundExecutor.Lane _executor) {
+    this.data = _data;
+    this.executor = _executor;
+  }
+
+  /**
+   * @param _topMessageId message id of the first row currently shown, 0 for none
+   * @param _limit number of rows to load
+   */
+  public synchronized void load(long _networkId, String _feed, long _topMessageId, int _limit, Callback _callback) {
+    pending = new Request(_networkId, _feed, _topMessageId, _limit, _callback);
+    if( ! running) {
+      running = true;
+      boolean queued = executor.offer(new Runnable() {
+        public void run() {
+          drain();
+        }
+      });
+      if( ! queued) {
+        // The lane is full; the next load() tries again
+        running = false;
+        pending = null;
+        fail(_callback);
+      }
+    }
+  }
+
+  private void drain() {
+    Request request = null;
+    Cursor cursor = null;
+    boolean drained = false;
+    try {
+      while(true) {
+        synchronized(this) {
+          if(null == pending) {
+            running = false;
+            drained = true;
+            return;
+          }
+          request = pending;
+          pending = null;
+        }
+
+        long started = System.currentTimeMillis();
+        long timed = Metrics.start();
+        cursor = data.getTimeline(request.networkId, request.feed, request.limit);
+        cursor.getCount();
+        LOAD_TIME.recordSince(timed);
+        final int inserted = countNewerThan(cursor, request.topMessageId);
+        if (DEBUG) Log.d(getClass().getName(), "Loaded " + cursor.getCount() + " rows (" + inserted + " new) in " + (System.currentTimeMillis() - started) + "ms");
+
+        post(request, cursor, inserted);
+        request = null;
+        cursor = null;
+      }
+    } finally {
+      if( ! drained) {
+        // The query threw: let the next load() start afresh
+        Request dropped;
+        synchronized(this) {
+          running = false;
+          dropped = pending;
+          pending = null;
+        }
+        if(null != cursor) {
+          cursor.close();
+        }
+        if(null != request) {
+          fail(request.callback);
+        }
+        if(null != dropped) {
+          fail(dropped.callback);
+        }
+      }
+    }
+  }
+
+  private void post(final Request _request, final Cursor _cursor, final int _inserted) {
+    handler.post(new Runnable() {
+      public void run() {
+        boolean superseded;
+        synchronized(TimelineLoader.this) {
+          superseded = null != pending;
+        }
+        if(superseded) {
+          // A newer load is on its way
+          _cursor.close();
+        } else {
+          _request.callback.onLoaded(_cursor, _inserted);
+        }
+      }
+    });
+  }
+
+  private void fail(final Callback _callback) {
+    handler.post(new Runnable() {
+      public void run() {
+        _callback.onFailed();
+      }
+    });
+  }
+
+  /**
+   * Rows are newest first, so the new ones are the leading rows above the old top.
+   */
+  static int countNewerThan(Cursor _cursor, long _topMessageId) {
+    if(0L == _topMessageId) {
+      return 0;
+    }
+    int column = _cursor.getColumnIndex(Message.FIELD_MESSAGE_ID);
+    int count = 0;
+    for(boolean more = _cursor.moveToFirst(); more ;more = _cursor.moveToNext()) {
+      if(_cursor.getLong(column) <= _topMessageId) {
+        break;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * @return message id of the first row of the cursor, 0 if there is none
+   */
+  public static long getTopMessageId(Cursor _cursor) {
+    if(null == _cursor || _cursor.isClosed() || ! _cursor.moveToFirst()) {
+      return 0L;
+    }
+    return _cursor.getLong(_cursor.getColumnIndex(Message.FIELD_MESSAGE_ID));
+  }
+
+}
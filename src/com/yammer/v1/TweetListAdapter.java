@@ -4,14 +4,15 @@ import com.yammer.v1.models.Message;
 import com.yammer.v1.models.Network;
 import com.yammer.v1.models.User;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
 import com.yammer.v1.settings.SettingsEditor;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.database.Cursor;
 import android.graphics.Color;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.text.SpannableString;
 import android.text.style.ForegroundColorSpan;
 import android.text.style.StyleSpan;
@@ -33,14 +34,6 @@ public class TweetListAdapter extends SimpleCursorAdapter {
   Context mContext = null;
 
   String in_reply_to;
-  String a_moment_ago;
-  String one_minute_ago;
-  String a_few_minutes_ago;
-  String minutes_ago;
-  String about_half_an_hour_ago;
-  String about_an_hour_ago;
-  String hours_ago;
-  String days_ago;
 
 
   int messageIdIndex;
@@ -53,7 +46,43 @@ public class TweetListAdapter extends SimpleCursorAdapter {
   int mugshotUrlColumnIndex;
   int mugshotMd5ColumnIndex;
 
-  SimpleDateFormat formatter;
+  String unknown;
+
+  RelativeTimeFormatter timeFormatter;
+
+  // Refreshes the time labels of the rows on screen as they go stale
+  private final Handler timeHandler = new Handler();
+  private ViewGroup listView;
+  private long timeRefreshAt = RelativeTimeFormatter.NEVER;
+  private boolean timeRefreshPaused = false;
+  private final Runnable timeRefresh = new Runnable() {
+    public void run() {
+      timeRefreshAt = RelativeTimeFormatter.NEVER;
+      refreshTimes();
+    }
+  };
+
+  private static final ForegroundColorSpan BLACK_SPAN = new ForegroundColorSpan(Color.BLACK);
+  private static final ForegroundColorSpan GREY_SPAN = new ForegroundColorSpan(Color.rgb(0x4c, 0x4c, 0x4c));
+  private static final StyleSpan BOLD_SPAN = new StyleSpan(android.graphics.Typeface.BOLD);
+
+  // Finished rows by message id, for the current display name setting
+  private static final int ROW_CACHE_SIZE = 256;
+  private final LongLruCache<Row> rowCache = new LongLruCache<Row>(ROW_CACHE_SIZE);
+  private final StringBuilder textBuilder = new StringBuilder();
+  private String displayName;
+
+  // Held here because preferences only keep weak references to listeners
+  private final OnSharedPreferenceChangeListener displayNameListener = new OnSharedPreferenceChangeListener() {
+    public void onSharedPreferenceChanged(SharedPreferences _preferences, String _key) {
+      if (SettingsEditor.KEY_DISPLAY_NAME.equals(_key)) {
+        if (DEBUG) Log.d(getClass().getName(), "Display name changed, dropping " + rowCache.size() + " cached rows");
+        displayName = getSettings().getDisplayName();
+        rowCache.clear();
+        notifyDataSetChanged();
+      }
+    }
+  };
 
   public TweetListAdapter(Context context, int layout, Cursor c, String[] from, int[] to) {
     super(context, layout, c, from, to);
@@ -65,10 +94,13 @@ public class TweetListAdapter extends SimpleCursorAdapter {
     ensureTimestampFormatter();
     prefetchStrings(context);
     cacheColumnIndices();
+
+    displayName = getSettings().getDisplayName();
+    getSettings().registerOnChangeListener(displayNameListener);
   }
 
   private void ensureTimestampFormatter() {
-    formatter = new SimpleDateFormat("MMMMM dd yyyy, HH:mm:ss");
+    timeFormatter = new RelativeTimeFormatter(mContext.getResources());
   }
 
   private void ensureLayoutInflater() {
@@ -90,14 +122,7 @@ public class TweetListAdapter extends SimpleCursorAdapter {
 
   private void prefetchStrings(Context context) {
     in_reply_to = " " + context.getResources().getString(R.string.in_reply_to) + " ";
-    a_moment_ago = context.getResources().getString(R.string.a_moment_ago);
-    one_minute_ago = context.getResources().getString(R.string.one_minute_ago);
-    a_few_minutes_ago = context.getResources().getString(R.string.a_few_minutes_ago);
-    minutes_ago = context.getResources().getString(R.string.minutes_ago);
-    about_half_an_hour_ago = context.getResources().getString(R.string.about_half_an_hour_ago);
-    about_an_hour_ago = context.getResources().getString(R.string.about_an_hour_ago);
-    hours_ago = context.getResources().getString(R.string.hours_ago);
-    days_ago = context.getResources().getString(R.string.days_ago);
+    unknown = context.getResources().getString(R.string.unknown);
   }
 
   private void ensureBitmapDownloader() {
@@ -107,70 +132,23 @@ public class TweetListAdapter extends SimpleCursorAdapter {
   }
 
   /**
-   * Timestamp created_at will be in this format: "2009/01/04 21:57:17 +0000"
-   * @param timestamp
-   * @return
+   * The parts of a row that don't change between binds.
    */
-  private String prettyDate(long timestamp) {
-    String prettyDate = null;
-    // Get the number of seconds ago since this message was posted
-    long seconds = ( System.currentTimeMillis() - timestamp ) / 1000;
-    // Convert it to a prettier date
-    if ( seconds <= 30 ) {
-      prettyDate = a_moment_ago;
-    } else if ( seconds > 30 && seconds <= 90 ) {
-      prettyDate = one_minute_ago;			
-    } else if ( seconds > 90 && seconds <= 60*5 ) {
-      prettyDate = a_few_minutes_ago;
-    } else if ( seconds > 60*5 && seconds <= 60*25 ) {
-      prettyDate = seconds/60 + " " + minutes_ago;
-    } else if ( seconds > 60*25 && seconds <= 60*35 ) {
-      prettyDate = about_half_an_hour_ago;
-    } else if ( seconds > 60*35 && seconds <= 60*55 ) {
-      prettyDate = seconds/60 + " " + minutes_ago;
-    } else if ( seconds > 60*55 && seconds <= 60*65 ) {
-      prettyDate = about_an_hour_ago;
-    } else if ( seconds > 60*65 && seconds <= 60*60*24 ) {
-      prettyDate = seconds/60/60 + " " + hours_ago;
-    } else if ( seconds > 60*60*24 && seconds <= 60*60*24 ) {
-      prettyDate = seconds/60/60 + " " + hours_ago;
-    } else if ( seconds > 60*60*24 && seconds <= 7*60*60*24 ) {
-      prettyDate = seconds/60/60/24 + " " + days_ago;
-    } else {
-      prettyDate = formatter.format(new Date(timestamp));
+  static class Row {
+    final CharSequence text;
+    final long createdAt;
+    final String mugshotUrl;
+    final String mugshotMd5;
+
+    Row(CharSequence _text, long _createdAt, String _mugshotUrl, String _mugshotMd5) {
+      this.text = _text;
+      this.createdAt = _createdAt;
+      this.mugshotUrl = _mugshotUrl;
+      this.mugshotMd5 = _mugshotMd5;
     }
-
-    return prettyDate;
-  }
-
-  static class ViewHolder {
-    ImageView user_icon;
-    TextView  message;
-    TextView  tweet_time;
   }
 
-  @Override
-  public View getView(int position, View convertView, ViewGroup parent) {
-    ViewHolder holder;
-
-    if ( convertView == null ) {
-      convertView = layoutInflater.inflate(R.layout.list_row, parent, false);
-
-      holder = new ViewHolder();
-      holder.user_icon = (ImageView)convertView.findViewById(R.id.user_icon);
-      holder.message = (TextView)convertView.findViewById(R.id.message);
-      holder.tweet_time = (TextView)convertView.findViewById(R.id.tweet_time);
-
-      convertView.setTag(holder);
-
-    } else {
-      holder = (ViewHolder)convertView.getTag();
-    }
-
-    Cursor cursor = getCursor();
-    
-    cursor.moveToPosition(position);
-
+  private Row renderRow(Cursor cursor) {
     // Get full name of poster
     String fullName = cursor.getString(fullNameColumnIndex);
 
@@ -182,85 +160,173 @@ public class TweetListAdapter extends SimpleCursorAdapter {
     // Full name still empty
     if ( fullName == null ) {
       // Assume name is unknown
-      fullName = mContext.getResources().getString(R.string.unknown);
+      fullName = unknown;
     }
 
     // Get full name of replyee
     String replyeeFullName = cursor.getString(replyeeColumnIndex);
 
     // Convert full name to first name only
-    if ("firstname".equals(getSettings().getDisplayName())) {
-      if (0 < fullName.indexOf(' ')) {
-        // Display firstname - i.e. text up until first space or EOF$
-        fullName = fullName.substring(0, fullName.indexOf(' '));
-      }
-      if (null != replyeeFullName && 0 < replyeeFullName.indexOf(' ')) {
-        replyeeFullName = replyeeFullName.substring(0, replyeeFullName.indexOf(' '));				
+    if ("firstname".equals(displayName)) {
+      fullName = firstName(fullName);
+      if (null != replyeeFullName) {
+        replyeeFullName = firstName(replyeeFullName);
       }
-    } else if ("email_only".equals(getSettings().getDisplayName())) {
+    } else if ("email_only".equals(displayName)) {
       fullName = cursor.getString(emailColumnIndex);
       if (replyeeFullName != null ) {
         replyeeFullName = cursor.getString(replyeeEmailColumnIndex);
       }
     }
 
-    // Do we have a replyee
-    int fullNameLength = fullName.length();			
-    int inReplyToLength = 0;
-    int replyeeFullNameLength = 0;
+    // Get the message/tweet text from the database
+    String message = cursor.getString(columnIndex);
 
-    String postPrefix = "";
-    if ( replyeeFullName != null  ) {
-      inReplyToLength = in_reply_to.length();
-      replyeeFullNameLength = replyeeFullName.length();
-      postPrefix = fullName + in_reply_to + replyeeFullName;
-    } else {
-      postPrefix = fullName;
+    textBuilder.setLength(0);
+    textBuilder.append(fullName);
+    int nameEnd = textBuilder.length();
+    if ( replyeeFullName != null ) {
+      textBuilder.append(in_reply_to);
+      textBuilder.append(replyeeFullName);
+    }
+    // The name part runs up to and including the ": "
+    textBuilder.append(": ");
+    int prefixEnd = textBuilder.length();
+    textBuilder.append(message);
+
+    // Colorize the message. The spans hold no per-row state, so every row
+    // shares the same instances; the later grey span wins over the black one.
+    SpannableString str = new SpannableString(textBuilder);
+    str.setSpan(BLACK_SPAN, 0, str.length(), 0);
+    if ( replyeeFullName != null ) {
+      str.setSpan(GREY_SPAN, nameEnd, nameEnd + in_reply_to.length(), 0);
     }
+    str.setSpan(BOLD_SPAN, 0, prefixEnd, 0);
+
+    return new Row(
+        str,
+        cursor.getLong(createdColumnIndex),
+        cursor.getString(mugshotUrlColumnIndex),
+        cursor.getString(mugshotMd5ColumnIndex)
+      );
+  }
 
-    // Get the message/tweet text from the database
-    String message = cursor.getString(columnIndex);
+  /**
+   * @return text up until the first space, or all of it
+   */
+  private static String firstName(String _fullName) {
+    int space = _fullName.indexOf(' ');
+    return 0 < space ? _fullName.substring(0, space) : _fullName;
+  }
 
-    // Colorize the message
-    int from = 0, to = 0;
-    SpannableString str = SpannableString.valueOf(postPrefix+ ": " + message);
-    
-    // Posters full name is white
-    from = 0;
-    to = fullNameLength;
-    str.setSpan(new ForegroundColorSpan(Color.BLACK), from, to, 0);
-
-    // Do we have a replyee
-    if ( replyeeFullNameLength > 0 ) {
-      from = to;
-      to = from + inReplyToLength;
-      str.setSpan(new ForegroundColorSpan(Color.rgb(0x4c, 0x4c, 0x4c)), from, to, 0);
-      from = to;
-      to = from + replyeeFullNameLength;
-      str.setSpan(new ForegroundColorSpan(Color.BLACK), from, to, 0);
+  static class ViewHolder {
+    ImageView user_icon;
+    TextView  message;
+    TextView  tweet_time;
+    long      createdAt;
+    // When the time label next goes stale
+    long      timeChangesAt;
+  }
+
+  private void bindTime(ViewHolder _holder, long _now) {
+    _holder.tweet_time.setText(timeFormatter.format(_holder.createdAt, _now));
+    _holder.timeChangesAt = timeFormatter.nextChangeAt(_holder.createdAt, _now);
+    scheduleTimeRefresh(_holder.timeChangesAt, _now);
+  }
+
+  /**
+   * Make sure a refresh runs by _at. Only one is ever pending.
+   */
+  private void scheduleTimeRefresh(long _at, long _now) {
+    if (timeRefreshPaused || _at >= timeRefreshAt) {
+      return;
+    }
+    timeHandler.removeCallbacks(timeRefresh);
+    timeRefreshAt = _at;
+    timeHandler.postAtTime(timeRefresh, SystemClock.uptimeMillis() + Math.max(0L, _at - _now));
+  }
+
+  /**
+   * Relabel the rows on screen whose label has gone stale and schedule
+   * the next refresh for the earliest of the rest.
+   */
+  private void refreshTimes() {
+    if (null == listView) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    int refreshed = 0;
+    for (int ii=0; ii < listView.getChildCount() ;ii++) {
+      Object tag = listView.getChildAt(ii).getTag();
+      if ( ! (tag instanceof ViewHolder)) {
+        continue;
+      }
+      ViewHolder holder = (ViewHolder)tag;
+      if (holder.timeChangesAt <= now) {
+        bindTime(holder, now);
+        refreshed++;
+      } else {
+        scheduleTimeRefresh(holder.timeChangesAt, now);
+      }
+    }
+    if (DEBUG) Log.d(getClass().getName(), "Refreshed " + refreshed + " time labels");
+  }
+
+  /**
+   * Stop refreshing time labels while the list is not visible.
+   */
+  public void pauseTimeRefresh() {
+    timeRefreshPaused = true;
+    timeRefreshAt = RelativeTimeFormatter.NEVER;
+    timeHandler.removeCallbacks(timeRefresh);
+  }
+
+  public void resumeTimeRefresh() {
+    timeRefreshPaused = false;
+    refreshTimes();
+  }
+
+  @Override
+  public View getView(int position, View convertView, ViewGroup parent) {
+    ViewHolder holder;
+
+    if ( convertView == null ) {
+      convertView = layoutInflater.inflate(R.layout.list_row, parent, false);
+
+      holder = new ViewHolder();
+      holder.user_icon = (ImageView)convertView.findViewById(R.id.user_icon);
+      holder.message = (TextView)convertView.findViewById(R.id.message);
+      holder.tweet_time = (TextView)convertView.findViewById(R.id.tweet_time);
+
+      convertView.setTag(holder);
+
+    } else {
+      holder = (ViewHolder)convertView.getTag();
     }
 
-    // Add 2 due to the appended ": " to the name
-    from = to;
-    to = from + 2;
-    str.setSpan(new StyleSpan(android.graphics.Typeface.BOLD), 0, to, 0);
-    str.setSpan(new ForegroundColorSpan(Color.BLACK), from, to, 0);
+    Cursor cursor = getCursor();
+    
+    cursor.moveToPosition(position);
 
-    // Span the rest of the text
-    from =  to;
-    to = from + message.length();
-    str.setSpan(new ForegroundColorSpan(Color.BLACK), from, to, 0);
+    // Everything but the relative time is fixed once a message is stored,
+    // so a recycled row only needs the cached text put back
+    long messageId = cursor.getLong(messageIdIndex);
+    Row row = rowCache.get(messageId);
+    if (null == row) {
+      row = renderRow(cursor);
+      rowCache.put(messageId, row);
+    }
 
     // Set the message
-    holder.message.setText(str);
+    holder.message.setText(row.text);
 
     // Convert the timestamp to a prettier timestamp (e.g. 5 hours ago etc.)
-    holder.tweet_time.setText(prettyDate(cursor.getLong(createdColumnIndex)));
+    this.listView = parent;
+    holder.createdAt = row.createdAt;
+    bindTime(holder, System.currentTimeMillis());
 
     // Download and decode avatar
-    holder.user_icon.setImageBitmap(
-        bitmapDownloader.getBitmap(cursor.getString(mugshotUrlColumnIndex), cursor.getString(mugshotMd5ColumnIndex))
-    );
+    bitmapDownloader.getBitmap(row.mugshotUrl, row.mugshotMd5, holder.user_icon);
    
     return convertView;
   }
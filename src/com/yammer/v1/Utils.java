@@ -1,27 +1,69 @@
 package com.yammer.v1;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class Utils {
-   
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // MessageDigest is not thread-safe and costly to look up, so each thread keeps one
+    private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException ex) {
+                return null;
+            }
+        }
+    };
+
+    /**
+     * @return the lower case hex MD5 of the UTF-8 bytes of input, or "" if MD5 is unavailable
+     */
     public static String md5(String input){
-        String res = "";
+        MessageDigest algorithm = MD5.get();
+        if (algorithm == null) {
+            return "";
+        }
+        algorithm.reset();
         try {
-            MessageDigest algorithm = MessageDigest.getInstance("MD5");
-            algorithm.reset();
-            algorithm.update(input.getBytes());
-            byte[] md5 = algorithm.digest();
-            String tmp = "";
-            for (int i = 0; i < md5.length; i++) {
-                tmp = (Integer.toHexString(0xFF & md5[i]));
-                if (tmp.length() == 1) {
-                    res += "0" + tmp;
-                } else {
-                    res += tmp;
-                }
+            return toHex(algorithm.digest(input.getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException ex) {
+            // Every platform has UTF-8
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Copy in to out through buffer, a chunk at a time. Neither stream is closed.
+     *
+     * @return the number of bytes copied
+     * @throws IOException also when in holds more than max bytes
+     */
+    public static int copy(InputStream in, OutputStream out, byte[] buffer, int max) throws IOException {
+        int total = 0;
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            total += count;
+            if (total > max) {
+                throw new IOException("More than " + max + " bytes");
             }
-        } catch (NoSuchAlgorithmException ex) {}
-        return res;
+            out.write(buffer, 0, count);
+        }
+        return total;
     }
 }
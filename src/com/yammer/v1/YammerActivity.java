@@ -30,7 +30,6 @@ import android.content.DialogInterface.OnCancelListener;
 import android.content.DialogInterface.OnDismissListener;
 import android.database.Cursor;
 import android.database.CursorIndexOutOfBoundsException;
-import android.database.sqlite.SQLiteCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.graphics.drawable.AnimationDrawable;
 import android.net.Uri;
@@ -49,6 +48,7 @@ import android.view.View;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.view.View.OnKeyListener;
 import android.view.WindowManager.LayoutParams;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.EditText;
 import android.widget.ImageView;
@@ -57,6 +57,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.AdapterView.AdapterContextMenuInfo;
 import android.widget.AdapterView.OnItemClickListener;
+import android.widget.AbsListView.OnScrollListener;
 
 public class YammerActivity extends Activity {
 
@@ -73,10 +74,8 @@ public class YammerActivity extends Activity {
   public static final String INTENT_AUTHORIZATION_START = "com.yammer.v1:AUTHORIZATION_START";
 
   private static final boolean DEBUG = G.DEBUG;
-  
-  private static final long TEMP_SLEEP = 500;
 
-  private YammerService mYammerService = null;
+  private volatile YammerService mYammerService = null;
   private SQLiteDatabase db = null;;
   private YammerIntentReceiver yammerIntentReceiver = null;
   boolean listViewInitialized = false;
@@ -86,6 +85,8 @@ public class YammerActivity extends Activity {
   // if it reaches zero, the loading animation disappears.
   private static int loadingRefCounter = 0;
   private final Semaphore loadingRefCounterSemaphore = new Semaphore(1);
+  // Authorization finished before the service was bound; UI thread only
+  private boolean syncOnServiceConnected = false;
 
   private void bindYammerService() {
     if(DEBUG) Log.d(getClass().getName(), "Binding ServiceConnection");
@@ -107,6 +108,20 @@ public class YammerActivity extends Activity {
     if (DEBUG) Log.d(getClass().getName(), "Yammer.getYammerService()");
     return mYammerService;
   }
+
+  /**
+   * Queue _task on the network lane, or tell the user to try again if the
+   * lane is full.
+   *
+   * @return whether the task was queued
+   */
+  private boolean offerToNetwork(Runnable _task) {
+    if (YammerApp.getExecutor().network().offer(_task)) {
+      return true;
+    }
+    toastUser(R.string.busy_try_again);
+    return false;
+  }
   
   private void registerIntents() {
     if (DEBUG) Log.d(getClass().getName(), "Registering intents for Yammer");
@@ -150,12 +165,8 @@ public class YammerActivity extends Activity {
 
         // remove logic here looking for users you are following or your id since call to /messages/following will already do this        
 
-        String sql = 
-          "select messages._id, messages.message, messages.message_id, messages.timestamp, users.mugshot_url, users.mugshot_md5, users.full_name, users.is_following, users.email, u1.full_name as replyee_full_name, u1.email as replyee_email from messages " + 
-          "left join users on users.user_id=messages.user_id " +
-          "left join messages as m1 on messages.replied_to_id=m1.message_id " + 
-          "left join users as u1 on u1.user_id=m1.user_id where messages.deleted='0' AND messages.network_id=? order by messages.message_id desc";
-        Cursor cursor = db.rawQuery(sql, new String[] {String.valueOf(getYammerService().getCurrentNetworkId())});
+        timelineFeed = getSettings().getFeed();
+        Cursor cursor = getYammerService().getYammerData().getTimeline(getYammerService().getCurrentNetworkId(), timelineFeed, timelineLimit);
         cursor.moveToFirst();
 
         if (DEBUG) Log.d(getClass().getName(), "Creating new TweetListAdapter");
@@ -163,6 +174,16 @@ public class YammerActivity extends Activity {
         if (DEBUG) Log.d(getClass().getName(), "Binding adapter to list: " + tweetListView);
         tweetListView.setAdapter(tweetListAdapter);
         startManagingCursor(cursor);                	
+        tweetListView.setOnScrollListener(new OnScrollListener() {
+          public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+            if ( 0 < totalItemCount && firstVisibleItem + visibleItemCount >= totalItemCount - TIMELINE_PRELOAD ) {
+              loadOlderMessages(totalItemCount);
+            }
+          }
+
+          public void onScrollStateChanged(AbsListView view, int scrollState) {
+          }
+        });
 
         // Register tweetlistview for context menu clicks
         if (DEBUG) Log.d(getClass().getName(), "Registering tweet list view to receive context menu events");
@@ -218,35 +239,18 @@ public class YammerActivity extends Activity {
         // Show progress dialog
         showDialog(ID_DIALOG_LOADING);
       } else if ( INTENT_AUTHORIZATION_DONE.equals(intent.getAction()) ) {
-        new Thread(
-            new Runnable() {
-              public void run() {
-                try {
-                  // A delay in binding to the service may occur,
-                  // so wait until bound
-                  while (getYammerService() == null);
-                  // Delete it from the server
-                  showLoadingAnimation(true);
-                  // Update the messages timeline
-//                  getYammerService().updateCurrentUserData();
-                  getYammerService().getMessages(false);
-                  // Initialize the tweets view
-                  sendBroadcast(INTENT_TIMELINE_INITIALIZE);
-                  runOnUiThread( new Runnable() {
-                    public void run() {
-                      updateListView();        		    				    				
-                    }
-                  });
-                } finally {
-                  //if ( DEBUG ) Log.d(getClass().getName(), "REMOVE DIALOG LOADING");									
-                  showLoadingAnimation(false);
-                }
-              }
-            }).start();
+        YammerService service = getYammerService();
+        if (null == service) {
+          // Not bound yet; onServiceConnected() picks it up
+          syncOnServiceConnected = true;
+        } else {
+          syncAfterAuthorization(service);
+        }
       } else if (YammerService.INTENT_CHANGE_NETWORK.equals(intent.getAction()) ) {
         
       } else if (YammerService.INTENT_CHANGE_FEED.equals(intent.getAction()) ) {
-        clearMessages();
+        // The service shows the new feed's stored messages, then syncs it
+        resetTimelineWindow();
         showHeaderForFeed(intent.getStringExtra(YammerService.EXTRA_FEED_NAME));
         
       } else if ( INTENT_NETWORK_ERROR_MINOR.equals(intent.getAction()) ) {
@@ -289,6 +293,7 @@ public class YammerActivity extends Activity {
   private static final int MENU_VIEW_THREAD = Menu.FIRST + 8;
   private static final int MENU_UNFOLLOW = Menu.FIRST + 9;
   private static final int MENU_NETWORKS = Menu.FIRST + 10;
+  private static final int MENU_SEARCH = Menu.FIRST + 11;
   private static final int MENU_URL = Menu.FIRST + 1000;
 
   // ??
@@ -458,6 +463,9 @@ public class YammerActivity extends Activity {
     int selected = 0;
     for(int ii=0; ii<names.length ;ii++) {
       names[ii] = networks[ii].name;
+      if(0 < networks[ii].unreadCount) {
+        names[ii] += " (" + networks[ii].unreadCount + ")";
+      }
       if(defaultNetworkId == networks[ii].networkId) {
         selected = ii;
       }
@@ -494,6 +502,7 @@ public class YammerActivity extends Activity {
     menu.add(0, MENU_FEEDS, Menu.NONE, R.string.menu_feeds).setIcon(R.drawable.menu_feeds);
 //    menu.add(0, MENU_DIRECTORY, Menu.NONE, R.string.menu_directory).setIcon(R.drawable.menu_directory);
     menu.add(0, MENU_RELOAD, Menu.NONE, R.string.menu_reload).setIcon(R.drawable.menu_refresh);
+    menu.add(0, MENU_SEARCH, Menu.NONE, R.string.menu_search).setIcon(android.R.drawable.ic_menu_search);
     menu.add(0, MENU_SETTINGS, Menu.NONE, R.string.menu_settings).setIcon(android.R.drawable.ic_menu_preferences);
     return (super.onCreateOptionsMenu(menu));
   }
@@ -527,10 +536,23 @@ public class YammerActivity extends Activity {
       if (DEBUG) Log.d(getClass().getName(), "MENU_NETWORDS selected");
       showDialog(ID_DIALOG_NETWORKS);
       break;
+    case MENU_SEARCH:
+      if (DEBUG) Log.d(getClass().getName(), "MENU_SEARCH selected");
+      onSearchRequested();
+      break;
     };
     return (super.onOptionsItemSelected(item));  
   }
 
+  /**
+   * The search key and the menu item both open our own search screen.
+   */
+  @Override
+  public boolean onSearchRequested() {
+    startActivity(new Intent(this, SearchActivity.class));
+    return true;
+  }
+
   public void clearMessages() {
     new Handler(Looper.getMainLooper()).post(new Runnable() {
       public void run() {
@@ -545,27 +567,49 @@ public class YammerActivity extends Activity {
     });
   }
 
+  // The timeline shows the newest timelineLimit messages and grows by a page at a time
+  private static final int TIMELINE_PAGE_SIZE = 50;
+  // Start loading when this close to the bottom
+  private static final int TIMELINE_PRELOAD = 10;
+  private int timelineLimit = TIMELINE_PAGE_SIZE;
+  private boolean timelineLoading = false;
+  private boolean loadingOlderMessages = false;
+  private boolean timelineExhausted = false;
+  // Feed of the rows on screen
+  private String timelineFeed = null;
+
+  private TimelineLoader timelineLoader;
+  private TimelineLoader getTimelineLoader() {
+    if (null == timelineLoader) {
+      timelineLoader = new TimelineLoader(getYammerService().getYammerData(), YammerApp.getExecutor().database());
+    }
+    return timelineLoader;
+  }
+
+  /**
+   * Reload the timeline in the background and swap it in, keeping the
+   * rows the user is looking at in place.
+   */
   public void updateListView() {
     if (DEBUG) Log.d(getClass().getName(), ".updateListView");
     try {
-      // Reconfigure the list view
       TweetListView tweetListView = (TweetListView) findViewById(R.id.tweet_list);
       TweetListAdapter tweetListAdapter = (TweetListAdapter)tweetListView.getAdapter();
-      SQLiteCursor cursor = (SQLiteCursor)tweetListAdapter.getCursor();
-      cursor.setSelectionArguments(new String[] {String.valueOf(getYammerService().getCurrentNetworkId())});
-      cursor.requery();
-      tweetListAdapter.notifyDataSetChanged();
-      
-      // If we are at the top of the screen, then show the newest item
-      if ( tweetListView.getFirstVisiblePosition() == 0 ) {
-        if (DEBUG) Log.d(getClass().getName(), "Scrolling view to top");
-        // Scroll to top
-        tweetListView.setSelectionFromTop(0, 0);
-      } else {
-        // If looking at messages further down, show a notification                	
-        //if (DEBUG) Log.d(getClass().getName(), "Notifying user of new message");
-        //Toast.makeText(Yammer.this, "New message", Toast.LENGTH_LONG).show();
-      }
+      final String feed = getSettings().getFeed();
+      final boolean feedChanged = ! feed.equals(timelineFeed);
+      long topMessageId = feedChanged ? 0L : TimelineLoader.getTopMessageId(tweetListAdapter.getCursor());
+      timelineLoading = true;
+      getTimelineLoader().load(getYammerService().getCurrentNetworkId(), feed, topMessageId, timelineLimit, new TimelineLoader.Callback() {
+        public void onLoaded(Cursor _cursor, int _insertedAtTop) {
+          timelineLoading = false;
+          timelineFeed = feed;
+          swapTimelineCursor(_cursor, _insertedAtTop, feedChanged);
+        }
+
+        public void onFailed() {
+          timelineLoading = false;
+        }
+      });
     } catch (Exception e) {
       // Caught the cursor at the wrong time
       e.printStackTrace();
@@ -575,8 +619,108 @@ public class YammerActivity extends Activity {
     
   }
 
+  private void resetTimelineWindow() {
+    timelineLimit = TIMELINE_PAGE_SIZE;
+    timelineExhausted = false;
+  }
+
+  /**
+   * The user is near the bottom of the list: widen the window by a page,
+   * or fetch the page before the oldest stored message once every stored
+   * message is shown.
+   */
+  private void loadOlderMessages(int _shown) {
+    if (timelineLoading || loadingOlderMessages) {
+      return;
+    }
+    if (_shown >= timelineLimit) {
+      if (DEBUG) Log.d(getClass().getName(), "Widening timeline to " + (timelineLimit + TIMELINE_PAGE_SIZE));
+      timelineLimit += TIMELINE_PAGE_SIZE;
+      updateListView();
+      return;
+    }
+    final YammerService service = getYammerService();
+    if (timelineExhausted || null == service) {
+      return;
+    }
+
+    if (DEBUG) Log.d(getClass().getName(), "Fetching older messages");
+    loadingOlderMessages = true;
+    showLoadingAnimation(true);
+    boolean queued = YammerApp.getExecutor().network().offer(
+        new Runnable() {
+          public void run() {
+            int count = YammerService.SYNC_FAILED;
+            try {
+              count = service.getOlderMessages();
+            } finally {
+              final int result = count;
+              runOnUiThread(new Runnable() {
+                public void run() {
+                  olderMessagesLoaded(result);
+                }
+              });
+            }
+          }
+        });
+    if ( ! queued) {
+      // The next scroll to the bottom tries again
+      olderMessagesLoaded(YammerService.SYNC_BUSY);
+    }
+  }
+
+  private void olderMessagesLoaded(int _count) {
+    loadingOlderMessages = false;
+    showLoadingAnimation(false);
+    if (0 == _count) {
+      // The server sent an empty page: nothing older
+      timelineExhausted = true;
+    } else if (0 < _count) {
+      // The update broadcast reloads with the wider window
+      timelineLimit += TIMELINE_PAGE_SIZE;
+    }
+  }
+
+  private TweetListAdapter getTweetListAdapter() {
+    TweetListView tweetListView = (TweetListView) findViewById(R.id.tweet_list);
+    return null == tweetListView ? null : (TweetListAdapter)tweetListView.getAdapter();
+  }
+
+  /**
+   * @param _fromTop show the first row rather than keep the scroll position
+   */
+  private void swapTimelineCursor(Cursor _cursor, int _insertedAtTop, boolean _fromTop) {
+    TweetListView tweetListView = (TweetListView) findViewById(R.id.tweet_list);
+    TweetListAdapter tweetListAdapter = null == tweetListView ? null : (TweetListAdapter)tweetListView.getAdapter();
+    if (null == tweetListAdapter || isFinishing()) {
+      _cursor.close();
+      return;
+    }
+
+    // Remember where the user is before the rows shift
+    int first = tweetListView.getFirstVisiblePosition();
+    View firstView = tweetListView.getChildAt(0);
+    int offset = null == firstView ? 0 : firstView.getTop();
+
+    Cursor old = tweetListAdapter.getCursor();
+    if (null != old) {
+      stopManagingCursor(old);
+    }
+    tweetListAdapter.changeCursor(_cursor);
+    startManagingCursor(_cursor);
+
+    if (_fromTop || (0 == first && 0 == offset)) {
+      // At the top of the list, so show the newest item
+      if (DEBUG) Log.d(getClass().getName(), "Scrolling view to top");
+      tweetListView.setSelectionFromTop(0, 0);
+    } else {
+      // Keep the same message under the user's finger
+      tweetListView.setSelectionFromTop(first + _insertedAtTop, offset);
+    }
+  }
+
   private void reload() {
-    new Thread(
+    offerToNetwork(
         new Runnable() {
           public void run() {
             try {
@@ -585,15 +729,16 @@ public class YammerActivity extends Activity {
               clearMessages();
               getYammerService().clearMessages();
               getYammerService().getMessages(true);
+              getYammerService().resetSyncBackoff();
             } finally {
               showLoadingAnimation(false);									
             }
           }
-        }).start();
+        });
   }
 
   private void updateMessages() {
-    new Thread(
+    offerToNetwork(
         new Runnable() {
           public void run() {
             try {
@@ -603,7 +748,7 @@ public class YammerActivity extends Activity {
               showLoadingAnimation(false);
             }
           }
-        }).start();
+        });
   }
 
 
@@ -615,8 +760,9 @@ public class YammerActivity extends Activity {
     // TODO: Refactor this into 
     // message = YammerData().getMessage(rowinfo.id); 
     // YammerData().getUser(message.userId);
-    String sql = "select messages._id, messages.message, messages.message_id, messages.user_id, users.full_name, users.is_following, urls.url from messages join users on messages.user_id=users.user_id left join urls on messages.message_id=urls.message_id where messages." + _ID + "=" + info.id;
-    SQLiteDatabase db = getYammerService().getYammerData().getReadableDatabase();
+    String sql = "select messages._id, messages.message, messages.message_id, messages.user_id, urls.url from messages left join urls on messages.message_id=urls.message_id where messages." + _ID + "=" + info.id;
+    YammerData yd = getYammerService().getYammerData();
+    SQLiteDatabase db = yd.getReadableDatabase();
     Cursor c = null;
     try { 
       c = db.rawQuery(sql, null);
@@ -629,6 +775,12 @@ public class YammerActivity extends Activity {
       }
     
       long userId = c.getLong(c.getColumnIndex(User.FIELD_USER_ID));
+      // Usually cached by the sync that stored the message
+      User user = yd.getUser(userId);
+      if(null == user) {
+        toastUser(R.string.no_message_selected);
+        return;
+      }
       String message = c.getString(c.getColumnIndex(Message.FIELD_MESSAGE));
       //menu.setHeaderTitle(R.string.popup_title_label);
       // Is this my own message?
@@ -647,8 +799,8 @@ public class YammerActivity extends Activity {
       menu.add(0, MENU_REPLY, ContextMenu.NONE, R.string.reply_label);
       // I don't want to be able to follow myself
       if ( !myself ) {
-        String fullName = c.getString(c.getColumnIndex(User.FIELD_FULL_NAME));
-        if ( 0 == c.getInt(c.getColumnIndex(User.FIELD_IS_FOLLOWING)) ) {
+        String fullName = user.fullName;
+        if ( ! user.following ) {
           menu.add(0, MENU_FOLLOW, ContextMenu.NONE, getResources().getString(R.string.follow_label) + " " + fullName);
         } else {	            
           menu.add(0, MENU_UNFOLLOW, ContextMenu.NONE, getResources().getString(R.string.unfollow_label) + " " + fullName);
@@ -730,7 +882,7 @@ public class YammerActivity extends Activity {
           if (DEBUG) Log.d(getClass().getName(), "MENU_DELETE selected");
           // Delete the item from the database
           // Send delete request to the database
-          new Thread(
+          offerToNetwork(
               new Runnable() {
                 public void run() {
                   if (DEBUG) Log.d(getClass().getName(), "Deleting message with ID " + messageId);
@@ -745,47 +897,16 @@ public class YammerActivity extends Activity {
                   }
                   if (DEBUG) Log.d(getClass().getName(), "Message with ID " + messageId + " deleted!");
                 }
-              }).start();
+              });
           break;
         case MENU_FOLLOW:
           if (DEBUG) Log.d(getClass().getName(), "MENU_FOLLOW selected");
-          new Thread(
-              new Runnable() {
-                public void run() {
-                  // Delete it from the server
-                  if (DEBUG) Log.d(getClass().getName(), "Following user with ID " + userId);
-                  try {
-                    showLoadingAnimation(true);
-                    getYammerService().followUser(userId);
-                  } catch (YammerProxy.YammerProxyException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                  } finally {
-                    showLoadingAnimation(false);									
-                  }
-                  if (DEBUG) Log.d(getClass().getName(), "User with ID " + userId + " followed!");
-                }
-              }).start();
+          // Queued for the server, the outbox sends it when it can
+          getYammerService().followUser(userId);
           break;
         case MENU_UNFOLLOW:
           if (DEBUG) Log.d(getClass().getName(), "MENU_UNFOLLOW selected");
-          new Thread(
-              new Runnable() {
-                public void run() {
-                  // Delete it from the server
-                  if (DEBUG) Log.d(getClass().getName(), "Unfollowing user with ID " + userId);
-                  try {
-                    showLoadingAnimation(true);
-                    getYammerService().unfollowUser(userId);
-                  } catch (YammerProxy.YammerProxyException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                  } finally {
-                    showLoadingAnimation(false);									
-                  }
-                  if (DEBUG) Log.d(getClass().getName(), "User with ID " + userId + " unfollowed!");
-                }
-              }).start();
+          getYammerService().unfollowUser(userId);
           break;
         case MENU_URL:
           Intent intent = item.getIntent();
@@ -827,21 +948,8 @@ public class YammerActivity extends Activity {
         final String reply = bundle.getString("reply");
         // Get the message ID we replied upon
         final long messageId = bundle.getLong("messageId");
-        // Post the message to the network
-        new Thread(
-            new Runnable() {
-              public void run() {
-                try {
-                  getYammerService().postMessage(reply, messageId);
-                  Thread.sleep(TEMP_SLEEP);                  
-                  updateMessages();
-                } catch (YammerProxy.YammerProxyException e) {
-                  e.printStackTrace();
-                } catch (InterruptedException e) {
-                  e.printStackTrace();
-                }
-              }
-            }).start();
+        // Queue the message for the network
+        getYammerService().postMessage(reply, messageId);
       }
       break;
     case YAMMER_SETTINGS_CREATE:
@@ -854,6 +962,36 @@ public class YammerActivity extends Activity {
     }
   }
 
+  /**
+   * First sync after signing in, then show the timeline.
+   */
+  private void syncAfterAuthorization(final YammerService _service) {
+    boolean queued = offerToNetwork(
+        new Runnable() {
+          public void run() {
+            try {
+              showLoadingAnimation(true);
+              // Update the messages timeline
+//              getYammerService().updateCurrentUserData();
+              _service.getMessages(false);
+              // Initialize the tweets view
+              sendBroadcast(INTENT_TIMELINE_INITIALIZE);
+              runOnUiThread( new Runnable() {
+                public void run() {
+                  updateListView();
+                }
+              });
+            } finally {
+              showLoadingAnimation(false);
+            }
+          }
+        });
+    if ( ! queued) {
+      // Show what is stored; the next scheduled sync fetches the rest
+      sendBroadcast(INTENT_TIMELINE_INITIALIZE);
+    }
+  }
+
   private void updateAuthenticationUI() {
     if(YammerService.isAuthorized()) {
       sendBroadcast(INTENT_TIMELINE_INITIALIZE);
@@ -867,6 +1005,10 @@ public class YammerActivity extends Activity {
       if (DEBUG) Log.d(getClass().getName(), "ServiceConnection.onServiceConnected");
       mYammerService = ((YammerService.YammerBinder)service).getService();
       if (mYammerService == null) return;
+      if (syncOnServiceConnected) {
+        syncOnServiceConnected = false;
+        syncAfterAuthorization(mYammerService);
+      }
       updateAuthenticationUI();
     }
 
@@ -902,21 +1044,8 @@ public class YammerActivity extends Activity {
           if ( event.getAction() == KeyEvent.ACTION_UP ) {
             final String message = getEditorText();
             if (DEBUG) Log.d(getClass().getName(), "POST MESSAGE: " + message);
-            // Post the message to the network
-            new Thread(
-                new Runnable() {
-                  public void run() {
-                    try {
-                      getYammerService().postMessage(message, 0);
-                      Thread.sleep(TEMP_SLEEP);
-                      updateMessages();
-                    } catch (YammerProxy.YammerProxyException e) {
-                      e.printStackTrace();
-                    } catch (InterruptedException e) {
-                      e.printStackTrace();
-                    }
-                  }
-                }).start();
+            // Queue the message for the network
+            getYammerService().postMessage(message, 0);
             
             setEditorText(null);
             
@@ -1001,6 +1130,11 @@ public class YammerActivity extends Activity {
     super.onResume();
     
     sendBroadcast(YammerService.INTENT_DISABLE_NOTIFICATION);
+
+    TweetListAdapter tweetListAdapter = getTweetListAdapter();
+    if (null != tweetListAdapter) {
+      tweetListAdapter.resumeTimeRefresh();
+    }
     
     if (getYammerService() != null) {
       getYammerService().resetMessageCount();
@@ -1016,6 +1150,10 @@ public class YammerActivity extends Activity {
 
   public void onPause() {
     super.onPause();
+    TweetListAdapter tweetListAdapter = getTweetListAdapter();
+    if (null != tweetListAdapter) {
+      tweetListAdapter.pauseTimeRefresh();
+    }
     sendBroadcast(YammerService.INTENT_ENABLE_NOTIFICATION);
   }
   
@@ -9,6 +9,8 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.util.Log;
 
 import com.nullwire.trace.ExceptionHandler;
+import com.yammer.v1.metrics.Metrics;
+import com.yammer.v1.settings.SettingsEditor;
 
 public class YammerApp extends Application {
   
@@ -18,11 +20,24 @@ public class YammerApp extends Application {
   
   static Context context = null;
 
+  private static BackgroundExecutor executor = null;
+
+  /**
+   * The shared background threads. Use these instead of starting threads.
+   */
+  public static synchronized BackgroundExecutor getExecutor() {
+    if (null == executor) {
+      executor = new BackgroundExecutor();
+    }
+    return executor;
+  }
+
   @Override
   public void onCreate() {
     super.onCreate();
     if (DEBUG) Log.d(TAG, "YammerApp::onCreate");
-    ExceptionHandler.register(this, "http://www.stdmn.com/ss/android/report_exception.php");
+    ExceptionHandler.register(this, "http://www.stdmn.com/ss/android/report_exception.php", getExecutor().network());
+    Metrics.setEnabled(new SettingsEditor(this).isRecordingMetrics());
     // Get the files path
     G.FILES_PATH = getFilesDir().getAbsolutePath();
     // Get version of application
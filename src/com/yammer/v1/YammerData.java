@@ -1,15 +1,29 @@
 package com.yammer.v1;
 
+import com.yammer.v1.metrics.Gauge;
+import com.yammer.v1.metrics.Histogram;
+import com.yammer.v1.metrics.Metrics;
 import com.yammer.v1.models.Feed;
+import com.yammer.v1.models.FeedMessage;
 import com.yammer.v1.models.Network;
+import com.yammer.v1.models.OutboxItem;
+import com.yammer.v1.models.PageWriter;
 import com.yammer.v1.models.URL;
 import com.yammer.v1.models.User;
+import com.yammer.v1.models.UserCache;
 import com.yammer.v1.models.Message;
+import com.yammer.v1.models.MessageSearch;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.CursorIndexOutOfBoundsException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -30,7 +44,28 @@ public class YammerData extends SQLiteOpenHelper {
   }
 
   private static final String DATABASE_NAME = "yammer.db";
-  private static final int DATABASE_VERSION = 30;
+  private static final int DATABASE_VERSION = 35;
+  // Upgrades from anything older than this rebuild the schema from scratch
+  private static final int OLDEST_MIGRATABLE_VERSION = 30;
+
+  // Shared by every instance, since they all write the same file
+  private static final int USER_CACHE_SIZE = 512;
+  private static final UserCache USERS = new UserCache(USER_CACHE_SIZE);
+
+  // Reading one user or message off the stream
+  private static final Histogram PARSE_TIME = Metrics.timer("data.parse");
+  // Ending a page's transaction
+  private static final Histogram COMMIT_TIME = Metrics.timer("data.commit");
+  // Users and messages in one page; the API sends a few dozen
+  private static final int MAX_PAGE_ELEMENTS = 2000;
+
+  static {
+    Metrics.gauge("data.user_cache_size", new Gauge() {
+      public long getValue() {
+        return USERS.size();
+      }
+    });
+  }
 
   public YammerData(Context ctx) {
     super(ctx, DATABASE_NAME, null, DATABASE_VERSION);
@@ -38,20 +73,73 @@ public class YammerData extends SQLiteOpenHelper {
 
   public void onCreate(SQLiteDatabase db) {
     if (DEBUG) Log.d(getClass().getName(), ".onCreate");
+    USERS.clear();
     Message.onCreateDB(db);
     User.onCreateDB(db);
     Network.onCreateDB(db);
     URL.onCreateDB(db);
     Feed.onCreateDB(db);
+    OutboxItem.onCreateDB(db);
+    FeedMessage.onCreateDB(db);
+    MessageSearch.onCreateDB(db);
+
+    Message.createIndexes(db);
+    URL.createIndexes(db);
   }
 
   public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-    if (DEBUG) Log.i(getClass().getName(), ".onUpgrade");
-    Message.onUpgradeDB(db, oldVersion, newVersion);
-    User.onUpgradeDB(db, oldVersion, newVersion);
-    Network.onUpgradeDB(db, oldVersion, newVersion);
-    URL.onUpgradeDB(db, oldVersion, newVersion);
-    Feed.onUpgradeDB(db, oldVersion, newVersion);
+    if (DEBUG) Log.i(getClass().getName(), ".onUpgrade: " + oldVersion + " -> " + newVersion);
+    if(oldVersion < OLDEST_MIGRATABLE_VERSION) {
+      // Too old to migrate: start over with the current schema, since
+      // later steps such as ALTER TABLE can't run on rebuilt tables
+      String[] tables = {
+          Message.TABLE_NAME, User.TABLE_NAME, Network.TABLE_NAME, URL.TABLE_NAME,
+          Feed.TABLE_NAME, OutboxItem.TABLE_NAME, FeedMessage.TABLE_NAME,
+          MessageSearch.MESSAGES_TABLE_NAME, MessageSearch.USERS_TABLE_NAME
+      };
+      for(int ii=0; ii < tables.length ;ii++) {
+        db.execSQL("DROP TABLE IF EXISTS " + tables[ii]);
+      }
+      onCreate(db);
+      return;
+    }
+
+    for(int version = oldVersion + 1; version <= newVersion; version++) {
+      migrate(db, version);
+    }
+  }
+
+  /**
+   * Bring the schema from <code>_version - 1</code> up to <code>_version</code>.
+   * 
+   * Steps run inside the upgrade transaction and must keep existing rows.
+   * Add a case here whenever DATABASE_VERSION is bumped.
+   */
+  private void migrate(SQLiteDatabase _db, int _version) {
+    if (DEBUG) Log.i(getClass().getName(), ".migrate: " + _version);
+    switch(_version) {
+      case 31:
+        Message.createIndexes(_db);
+        URL.createIndexes(_db);
+        break;
+      case 32:
+        OutboxItem.onCreateDB(_db);
+        break;
+      case 33:
+        // Messages stored so far belong to no feed; each feed fills up again on its next sync
+        FeedMessage.onCreateDB(_db);
+        break;
+      case 34:
+        Network.addSyncState(_db);
+        break;
+      case 35:
+        Message.createIndexes(_db);
+        MessageSearch.onCreateDB(_db);
+        MessageSearch.rebuild(_db);
+        break;
+      default:
+        throw new IllegalStateException("No migration to database version " + _version);
+    }
   }
 
   public void resetData(long networkId) {
@@ -59,6 +147,7 @@ public class YammerData extends SQLiteOpenHelper {
     SQLiteDatabase db = this.getWritableDatabase();
     Message.deleteByNetworkId(db, networkId);
     Feed.deleteByNetworkId(db, networkId);
+    OutboxItem.deleteByNetworkId(db, networkId);
     Network.delete(db, networkId);
     clearFeeds();
   }
@@ -90,25 +179,47 @@ public class YammerData extends SQLiteOpenHelper {
     _value.save(getWritableDatabase());
   }
 
+  public void recordSync(long _networkId, int _unread, long _syncedAt) {
+    Network.recordSync(getWritableDatabase(), _networkId, _unread, _syncedAt);
+  }
+
+  public void clearUnread(long _networkId) {
+    Network.clearUnread(getWritableDatabase(), _networkId);
+  }
+
+  public Cursor getTimeline(long _networkId, String _feed, int _limit) {
+    return Message.findTimeline(getReadableDatabase(), _networkId, _feed, _limit);
+  }
+
+  /**
+   * @return the network's messages matching _query, best first, or null if _query has no words
+   * @see MessageSearch#search
+   */
+  public Cursor search(String _query, long _networkId, int _limit) {
+    return MessageSearch.search(getReadableDatabase(), _query, _networkId, _limit);
+  }
+
   public Message getMessage(long _id) {
     return Message.findById(getReadableDatabase(), _id);
   }
   /**
-   * Get the highest message ID in the messages table
+   * Get the highest message ID stored for a feed
    * @param networkId
-   * @returns the highest message ID in the messages table
+   * @param feed
+   * @returns the feed's high-water mark, 0 if nothing is stored for it
    */
-  public long getLastMessageId(long networkId) {
-    return Message.getLastMessageId(getReadableDatabase(), networkId);
+  public long getLastMessageId(long networkId, String feed) {
+    return FeedMessage.getLastMessageId(getReadableDatabase(), networkId, feed);
   }
 
   /**
-   * Get the lowest message ID in the messages table
+   * Get the lowest message ID stored for a feed
    * @param networkId
-   * @returns the lowest message ID in the messages table
+   * @param feed
+   * @returns the lowest message ID stored for the feed
    */
-  public long getFirstMessageId(long networkId) {
-    return Message.getFirstMessageId(getReadableDatabase(), networkId);
+  public long getFirstMessageId(long networkId, String feed) {
+    return FeedMessage.getFirstMessageId(getReadableDatabase(), networkId, feed);
   }
 
   public Message addMessage(JSONObject _json, long _networkId) throws YammerDataException {
@@ -118,6 +229,109 @@ public class YammerData extends SQLiteOpenHelper {
       throw new YammerDataException(e);
     }
   }
+
+  /**
+   * Write a page from the messages API in a single transaction: the users
+   * listed under "references", then the messages and their URLs.
+   *
+   * The page is parsed element by element into memory first, so the
+   * transaction is never held open across reads from the network: a
+   * stalled download does not lock the UI out of the database, and a page
+   * that fails part way stores nothing, which keeps the feed's newer_than
+   * cursor from skipping the messages that were not read.
+   *
+   * @param _feed name of the feed the page came from
+   * @param _block called with every message once the page is committed, may be null
+   * @returns the number of messages written
+   */
+  public int ingestStream(Reader _in, long _networkId, String _feed, Block<Message, Void> _block) throws YammerDataException {
+    ArrayList<JSONObject> users = new ArrayList<JSONObject>();
+    ArrayList<JSONObject> entries = new ArrayList<JSONObject>();
+    try {
+      JSONStreamReader json = new JSONStreamReader(_in);
+      json.beginObject();
+      while(json.hasNext()) {
+        String name = json.nextName();
+        if("references".equals(name)) {
+          json.beginArray();
+          while(json.hasNext()) {
+            JSONObject reference = nextElement(json, users.size() + entries.size());
+            if("user".equals(reference.optString("type"))) {
+              users.add(reference);
+            }
+          }
+          json.endArray();
+        } else if("messages".equals(name)) {
+          json.beginArray();
+          while(json.hasNext()) {
+            entries.add(nextElement(json, users.size() + entries.size()));
+          }
+          json.endArray();
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    } catch(JSONException e) {
+      throw new YammerDataException(e);
+    } catch(IOException e) {
+      throw new YammerDataException(e);
+    }
+
+    SQLiteDatabase db = getWritableDatabase();
+    PageWriter writer = new PageWriter(db, _networkId, _feed, USERS);
+    ArrayList<Message> messages = new ArrayList<Message>(entries.size());
+    boolean committed = false;
+    db.beginTransaction();
+    try {
+      for(int ii=0; ii < users.size() ;ii++) {
+        try {
+          writer.addUser(users.get(ii));
+        } catch(JSONException e) {
+          if (DEBUG) Log.w(getClass().getName(), e.getMessage());
+        }
+      }
+      for(int ii=0; ii < entries.size() ;ii++) {
+        try {
+          messages.add(writer.addMessage(entries.get(ii)));
+        } catch(JSONException e) {
+          if (DEBUG) Log.w(getClass().getName(), e.getMessage());
+        }
+      }
+      db.setTransactionSuccessful();
+      committed = true;
+      if (DEBUG) Log.d(getClass().getName(), ".ingestStream: " + writer.getRowsWritten() + " rows");
+    } finally {
+      long started = Metrics.start();
+      db.endTransaction();
+      COMMIT_TIME.recordSince(started);
+      if(committed) {
+        writer.publishUsers();
+      }
+      writer.close();
+    }
+
+    if(null != _block) {
+      for(int ii=0; ii < messages.size() ;ii++) {
+        _block.call(messages.get(ii));
+      }
+    }
+    return messages.size();
+  }
+
+  /**
+   * Read one user or message of a page, refusing pages too large to hold in memory.
+   */
+  private static JSONObject nextElement(JSONStreamReader _json, int _read) throws IOException, JSONException {
+    if(_read >= MAX_PAGE_ELEMENTS) {
+      throw new JSONException("Page has more than " + MAX_PAGE_ELEMENTS + " elements");
+    }
+    long started = Metrics.start();
+    JSONObject element = _json.nextObject();
+    PARSE_TIME.recordSince(started);
+    return element;
+  }
+
   public void deleteMessage(long messageId) {
     Message.deleteByMessageId(getWritableDatabase(), messageId);
   }
@@ -128,13 +342,92 @@ public class YammerData extends SQLiteOpenHelper {
   }
 
 
+  public FeedMessage.FeedKey[] getFeedsWithMessages() {
+    return FeedMessage.findFeeds(getReadableDatabase());
+  }
+
+  /**
+   * @return the id of the newest message beyond the first _keep of the feed, 0 if none
+   */
+  public long getFeedCutoff(long _networkId, String _feed, int _keep) {
+    return FeedMessage.getCutoffMessageId(getReadableDatabase(), _networkId, _feed, _keep);
+  }
+
+  public long getLastMessageIdBefore(long _time) {
+    return Message.getLastMessageIdBefore(getReadableDatabase(), _time);
+  }
+
+  /**
+   * Batched deletes for the compactor. Each one is its own short
+   * transaction so syncs and the UI can get at the database in between.
+   *
+   * @return rows deleted
+   */
+  public int deleteFeedMessagesUpTo(long _networkId, String _feed, long _messageId, int _limit) {
+    return FeedMessage.deleteUpTo(getWritableDatabase(), _networkId, _feed, _messageId, _limit);
+  }
+
+  public int deleteOrphanMessages(int _limit) {
+    return Message.deleteOrphans(getWritableDatabase(), _limit);
+  }
+
+  public int deleteOrphanURLs() {
+    return URL.deleteOrphans(getWritableDatabase());
+  }
+
+  public int deleteOrphanUsers() {
+    int deleted = User.deleteOrphans(getWritableDatabase());
+    USERS.clear();
+    return deleted;
+  }
+
+  /**
+   * @return the avatar file names referenced by stored users
+   */
+  public HashSet<String> getMugshotMd5s() {
+    return User.findMugshotMd5s(getReadableDatabase());
+  }
+
+  /**
+   * Rebuild the database file if too much of it is free pages.
+   * SQLite never shrinks the file by itself.
+   *
+   * @return whether the database was vacuumed
+   */
+  public boolean vacuumIfFragmented(float _maxFreeRatio, long _minFreePages) {
+    SQLiteDatabase db = getWritableDatabase();
+    long free = pragma(db, "freelist_count");
+    long pages = pragma(db, "page_count");
+    if (DEBUG) Log.d(getClass().getName(), ".vacuumIfFragmented: " + free + " of " + pages + " pages free");
+    if(free < _minFreePages || free < pages * _maxFreeRatio) {
+      return false;
+    }
+    db.execSQL("VACUUM");
+    return true;
+  }
+
+  private static long pragma(SQLiteDatabase _db, String _name) {
+    Cursor c = null;
+    try {
+      c = _db.rawQuery("PRAGMA " + _name, null);
+      return c.moveToFirst() ? c.getLong(0) : 0L;
+    } finally {
+      if(null != c) {
+        c.close();
+      }
+    }
+  }
+
   public void clearUsers() {
     User.deleteAll(getWritableDatabase());
+    USERS.clear();
   }
   
   public User addUser(JSONObject _json) throws YammerDataException {
     try {
-      return User.create(getWritableDatabase(), _json, false);
+      User user = User.create(getWritableDatabase(), _json, false);
+      USERS.put(user);
+      return user;
     } catch(JSONException e) {
       throw new YammerDataException(e);
     }
@@ -143,7 +436,69 @@ public class YammerData extends SQLiteOpenHelper {
   public void saveUsers(User[] _users) {
     for(int ii=0; ii < _users.length ;ii++) {
       _users[ii].save(getWritableDatabase());
+      USERS.put(_users[ii]);
+    }
+  }
+
+  /**
+   * @return the stored user, or null if there is none; do not modify it
+   */
+  public User getUser(long _userId) {
+    User user = USERS.get(_userId);
+    if(null == user) {
+      user = User.findByUserId(getReadableDatabase(), _userId);
+      if(null != user) {
+        USERS.put(user);
+      }
     }
+    return user;
+  }
+
+  /**
+   * Add an item to the outbox.
+   *
+   * Follow toggles for the same user are coalesced: a pending toggle in the
+   * opposite direction is withdrawn (the two cancel out) and a repeated one
+   * is dropped. The item currently being sent can no longer be withdrawn.
+   *
+   * @param _sendingId id of the item being sent, or 0
+   */
+  public void enqueue(OutboxItem _item, long _sendingId) {
+    SQLiteDatabase db = getWritableDatabase();
+    db.beginTransaction();
+    try {
+      OutboxItem pending = null;
+      if(_item.isFollowToggle()) {
+        OutboxItem[] toggles = OutboxItem.findFollowToggles(db, _item.networkId, _item.targetId);
+        for(int ii=0; ii < toggles.length ;ii++) {
+          if(toggles[ii].id != _sendingId) {
+            pending = toggles[ii];
+          }
+        }
+      }
+
+      if(null == pending) {
+        _item.save(db);
+      } else if( ! pending.action.equals(_item.action)) {
+        if (DEBUG) Log.d(getClass().getName(), ".enqueue: " + _item.action + " cancels " + pending.id);
+        OutboxItem.delete(db, pending.id);
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  public OutboxItem getFirstOutboxItem(long _networkId) {
+    return OutboxItem.findFirst(getReadableDatabase(), _networkId);
+  }
+
+  public void deleteOutboxItem(long _id) {
+    OutboxItem.delete(getWritableDatabase(), _id);
+  }
+
+  public void save(OutboxItem _value) {
+    _value.save(getWritableDatabase());
   }
 
   public void clearFeeds() {
@@ -1,13 +1,14 @@
 package com.yammer.v1;
 
 import java.lang.IllegalArgumentException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -18,6 +19,10 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.yammer.v1.metrics.Counter;
+import com.yammer.v1.metrics.CountingInputStream;
+import com.yammer.v1.metrics.Histogram;
+import com.yammer.v1.metrics.Metrics;
 import com.yammer.v1.models.Feed;
 import com.yammer.v1.models.Network;
 import com.yammer.v1.models.User;
@@ -44,6 +49,8 @@ public class YammerProxy {
   private static final boolean DEBUG = G.DEBUG;
 
   public static final String DEFAULT_FEED = "My Feed";
+  // Where DEFAULT_FEED lives, for networks whose feeds haven't been loaded
+  public static final String DEFAULT_FEED_URL = "/api/v1/messages/following";
   
   //TODO: I suspect we can get rid of these since we're using OAuth+WRAP
   private static final String PATH_CALLBACK = "/android/callback";
@@ -58,6 +65,27 @@ public class YammerProxy {
   private static final String PATH_CURRENT_NETWORKS = "/api/v1/networks/current.json";
   private static final String PATH_TOKENS           = "/api/v1/oauth/tokens.json";
 
+  private static final String HEADER_ETAG               = "ETag";
+  private static final String HEADER_LAST_MODIFIED      = "Last-Modified";
+  private static final String HEADER_IF_NONE_MATCH      = "If-None-Match";
+  private static final String HEADER_IF_MODIFIED_SINCE  = "If-Modified-Since";
+
+  private static final long RESPONSE_CACHE_BYTES = 512 * 1024;
+
+  // Signing the request and waiting for the response headers
+  private static final Histogram REQUEST_TIME = Metrics.timer("proxy.request");
+  private static final Counter REQUESTS = Metrics.counter("proxy.requests");
+  private static final Counter REQUEST_ERRORS = Metrics.counter("proxy.errors");
+  // Response bodies; buffered ones are counted in characters
+  private static final Counter BYTES_IN = Metrics.counter("proxy.bytes_in");
+  // Conditional GETs answered from the response cache
+  private static final Counter CACHE_HITS = Metrics.counter("proxy.cache_hits");
+  private static final Counter CACHE_MISSES = Metrics.counter("proxy.cache_misses");
+
+  static {
+    Metrics.ratio("proxy.cache_hit_percent", CACHE_HITS, CACHE_MISSES);
+  }
+
   private String baseURL = null;
 
   private String requestToken = null;
@@ -68,6 +96,7 @@ public class YammerProxy {
   private OAuthClient client = null;
   private OAuthServiceProvider provider = null;
 
+  private ResponseCache responseCache = null;
 
   @SuppressWarnings("serial")
   public static class YammerProxyException extends Exception {
@@ -94,6 +123,17 @@ public class YammerProxy {
     }
   }
 
+  /**
+   * The server refused the request itself; sending it again cannot succeed.
+   */
+  @SuppressWarnings("serial")
+  public static class RequestRejected extends YammerProxyException {
+    public RequestRejected(Throwable _cause) {
+      super();
+      initCause(_cause);
+    }
+  }
+
   static class WRAPResponse extends OAuthMessage {
     private final HttpMessage http;
 
@@ -141,14 +181,29 @@ public class YammerProxy {
 
 
   private static YammerProxy proxy;
-  public static YammerProxy getYammerProxy(Context _ctx) {
+  // Synchronized as sync, the outbox and the activity all ask for it
+  public static synchronized YammerProxy getYammerProxy(Context _ctx) {
     String newURL = new SettingsEditor(_ctx).getUrl();
     if(null == proxy || ! newURL.equals(proxy.baseURL)) {
       proxy = new YammerProxy(newURL);
+      proxy.responseCache = new ResponseCache(new File(_ctx.getCacheDir(), "http"), RESPONSE_CACHE_BYTES);
     }
     return proxy;
   }
 
+  /**
+   * A proxy of its own for one network, so other networks can be synced
+   * without switching the shared proxy's tokens back and forth.
+   */
+  public static YammerProxy forNetwork(Context _ctx, Network _network) {
+    YammerProxy shared = getYammerProxy(_ctx);
+    YammerProxy network = new YammerProxy(new SettingsEditor(_ctx).getUrl());
+    // Cache entries are keyed by token, so networks can't see each other's
+    network.responseCache = shared.responseCache;
+    network.setCurrentNetwork(_network);
+    return network;
+  }
+
   protected YammerProxy(String _baseURL) {
     this.baseURL = _baseURL;
     reset();
@@ -173,6 +228,9 @@ public class YammerProxy {
     this.client = new OAuthClient(getHttpClient());
     this.requestToken = null;
     this.tokenSecret = null;
+    if(null != this.responseCache) {
+      this.responseCache.clear();
+    }
   }
 
   /**
@@ -224,18 +282,20 @@ public class YammerProxy {
       return;
     }
 
-    try {
-      client.getRequestToken(accessor);
-    } catch (java.io.IOException e) {
-      throw new ConnectionProblem(e);
-    } catch (OAuthException e) {
-      throw new AccessDeniedException(e);
-    } catch (Exception e) {
-      throw new ConnectionProblem(e);
+    synchronized(accessor) {
+      try {
+        client.getRequestToken(accessor);
+      } catch (java.io.IOException e) {
+        throw new ConnectionProblem(e);
+      } catch (OAuthException e) {
+        throw new AccessDeniedException(e);
+      } catch (Exception e) {
+        throw new ConnectionProblem(e);
+      }
+      // We should now have a request token and a token secret
+      this.requestToken = accessor.requestToken;
+      this.tokenSecret = accessor.tokenSecret;
     }
-    // We should now have a request token and a token secret
-    this.requestToken = accessor.requestToken;
-    this.tokenSecret = accessor.tokenSecret;
 
     if (DEBUG) Log.d(getClass().getName(), "Request token: " + this.requestToken);
     if (DEBUG) Log.d(getClass().getName(), "Request token secret: " + this.tokenSecret);
@@ -344,7 +404,7 @@ public class YammerProxy {
         if(_includeFollowed) {
           url += "?include_followed_users=1";
         }
-        currentUserData = accessResource(url);
+        currentUserData = accessCachedResource(url);
       }
       return new JSONObject(currentUserData);
     } catch(JSONException cause) {
@@ -361,7 +421,7 @@ public class YammerProxy {
     try {
       
       // get base information
-      JSONArray jsonArray = new JSONArray(accessResource(this.baseURL + PATH_CURRENT_NETWORKS));
+      JSONArray jsonArray = new JSONArray(accessCachedResource(this.baseURL + PATH_CURRENT_NETWORKS));
       Map<Long, Network> networks = new java.util.HashMap<Long,Network>();
       for( int ii=0; ii < jsonArray.length(); ii++ ) {
         JSONObject obj = jsonArray.getJSONObject(ii);
@@ -369,7 +429,7 @@ public class YammerProxy {
       }
       
       // fill in tokens
-      jsonArray = new JSONArray(accessResource(this.baseURL + PATH_TOKENS));
+      jsonArray = new JSONArray(accessCachedResource(this.baseURL + PATH_TOKENS));
       for( int ii=0; ii < jsonArray.length(); ii++ ) {
         JSONObject obj = jsonArray.getJSONObject(ii);
         networks.get(obj.getLong("network_id")).update(obj);
@@ -396,6 +456,14 @@ public class YammerProxy {
     currentUserData = null;
   }
   
+  /**
+   * @return whether requests go to the network with its current token
+   */
+  public boolean isFor(Network _network) {
+    return null != _network.webURL && _network.webURL.equals(baseURL)
+        && null != _network.accessToken && _network.accessToken.equals(requestToken);
+  }
+
   public Feed[] getFeeds() throws YammerProxyException {
     try {
       JSONObject currentUserJSON = getCurrentUserJSON(false);
@@ -422,6 +490,7 @@ public class YammerProxy {
    * @param messageId - Message being replied to
    *
    * @throws YammerProxy.AccessDeniedException
+   * @throws YammerProxy.RequestRejected
    * @throws YammerProxy.ConnectionProblem
    */
   public void postMessage(final String message, final long messageId) throws YammerProxyException {
@@ -436,6 +505,7 @@ public class YammerProxy {
       sendRequest(paramProps, this.baseURL + "/api/v1/messages/", OAuthMessage.POST);
     } catch (IllegalArgumentException ex) {
       // happens when there is a % in the body of the message
+      throw new RequestRejected(ex);
     } catch (NullPointerException e) {
       throw new ConnectionProblem(e);
     } catch (IOException e) {
@@ -443,7 +513,7 @@ public class YammerProxy {
     } catch (URISyntaxException e) {
       throw new ConnectionProblem(e);
     } catch (OAuthException e) {
-      throw new AccessDeniedException(e);
+      throw toWriteException(e);
     }
   }
 
@@ -454,6 +524,7 @@ public class YammerProxy {
    * @return
    *
    * @throws AccessDeniedException
+   * @throws RequestRejected
    * @throws ConnectionProblem
    */
   public void followUser(long userId) throws YammerProxyException {
@@ -469,7 +540,7 @@ public class YammerProxy {
     } catch (URISyntaxException e) {
       throw new ConnectionProblem(e);
     } catch (OAuthException e) {
-      throw new AccessDeniedException(e);
+      throw toWriteException(e);
     }
   }
 
@@ -487,12 +558,52 @@ public class YammerProxy {
     } catch (URISyntaxException e) {
       throw new ConnectionProblem(e);
     } catch (OAuthException e) {
-      throw new AccessDeniedException(e);
+      throw toWriteException(e);
+    }
+  }
+
+  /**
+   * Sort a failed write by whether sending it again could help: a 401 is
+   * about the account, other 4xx are about the request, and anything else
+   * (5xx, throttling, a response we could not read) may pass later.
+   */
+  private static YammerProxyException toWriteException(OAuthException _e) {
+    if(_e instanceof OAuthProblemException) {
+      int statusCode = ((OAuthProblemException) _e).getHttpStatusCode();
+      if(401 == statusCode) {
+        return new AccessDeniedException(_e);
+      }
+      if(400 <= statusCode && statusCode < 500 && 408 != statusCode && 429 != statusCode) {
+        return new RequestRejected(_e);
+      }
     }
+    return new ConnectionProblem(_e);
+  }
+
+  /**
+   * Open the feed page newer than the given message for incremental reading.
+   * 
+   * The caller must close the returned reader.
+   */
+  public Reader openMessagesNewerThan(String _feedURL, long _messageId) throws YammerProxyException {
+    return openResource(messagesNewerThanURL(_feedURL, _messageId));
   }
 
-  public String getMessagesNewerThan(String _feedURL, long _messageId) throws YammerProxyException {
-    return accessResource(this.baseURL + _feedURL.substring(_feedURL.indexOf("/api/")) + ".json?newer_than=" + _messageId);
+  /**
+   * Open the feed page just older than the given message, for loading history.
+   * 
+   * The caller must close the returned reader.
+   */
+  public Reader openMessagesOlderThan(String _feedURL, long _messageId) throws YammerProxyException {
+    return openResource(feedURL(_feedURL) + ".json?older_than=" + _messageId);
+  }
+
+  private String messagesNewerThanURL(String _feedURL, long _messageId) {
+    return feedURL(_feedURL) + ".json?newer_than=" + _messageId;
+  }
+
+  private String feedURL(String _feedURL) {
+    return this.baseURL + _feedURL.substring(_feedURL.indexOf("/api/"));
   }
 
 
@@ -526,6 +637,9 @@ public class YammerProxy {
       Properties paramProps = new Properties();
       paramProps.setProperty("oauth_token", this.requestToken);
       responseBody = sendRequest(paramProps, url, "GET").readBodyAsString();
+      if (null != responseBody) {
+        BYTES_IN.add(responseBody.length());
+      }
       if (DEBUG) Log.d(getClass().getName(), "responseBody: " + responseBody);
     } catch (NullPointerException e) {
       throw new ConnectionProblem(e);
@@ -540,8 +654,100 @@ public class YammerProxy {
     return responseBody;
   }
 
+  /**
+   * GET a resource through the on-disk response cache.
+   * 
+   * Revalidates any cached copy with If-None-Match / If-Modified-Since and
+   * serves the cached body when the server answers 304 Not Modified.
+   * Entries are keyed by token as well as URL since resources such as
+   * users/current.json differ per network.
+   */
+  String accessCachedResource(String url) throws YammerProxyException {
+    if(null == this.responseCache) {
+      return accessResource(url);
+    }
+    if (DEBUG) Log.d(getClass().getName(), "accessCachedResource: " + url);
+
+    String key = this.requestToken + ' ' + url;
+    ResponseCache.Entry cached = this.responseCache.get(key);
+    List<Map.Entry<String, String>> headers = new ArrayList<Map.Entry<String, String>>();
+    if(null != cached) {
+      if(null != cached.etag) {
+        headers.add(new OAuth.Parameter(HEADER_IF_NONE_MATCH, cached.etag));
+      }
+      if(null != cached.lastModified) {
+        headers.add(new OAuth.Parameter(HEADER_IF_MODIFIED_SINCE, cached.lastModified));
+      }
+    }
+
+    try {
+      Properties paramProps = new Properties();
+      paramProps.setProperty("oauth_token", this.requestToken);
+      OAuthMessage response = sendRequest(paramProps, url, "GET", headers);
+      if(null == response) {
+        if(null == cached) {
+          throw new ConnectionProblem(new IOException("Unexpected empty response for " + url));
+        }
+        if (DEBUG) Log.d(getClass().getName(), "Not modified, serving cached copy: " + url);
+        CACHE_HITS.inc();
+        return cached.body;
+      }
+
+      CACHE_MISSES.inc();
+      String responseBody = response.readBodyAsString();
+      if (null != responseBody) {
+        BYTES_IN.add(responseBody.length());
+      }
+      String etag = response.getHeader(HEADER_ETAG);
+      String lastModified = response.getHeader(HEADER_LAST_MODIFIED);
+      if(null != etag || null != lastModified) {
+        this.responseCache.put(key, etag, lastModified, responseBody);
+      }
+      return responseBody;
+    } catch (NullPointerException e) {
+      throw new ConnectionProblem(e);
+    } catch (IOException e) {
+      throw new ConnectionProblem(e);
+    } catch (URISyntaxException e) {
+      throw new ConnectionProblem(e);
+    } catch (OAuthException e) {
+      throw new AccessDeniedException(e);
+    }
+  }
+
+  /**
+   * GET a resource without buffering its body.
+   */
+  private Reader openResource(String url) throws YammerProxyException {
+    if (DEBUG) Log.d(getClass().getName(), "openResource: " + url);
+    try {
+      Properties paramProps = new Properties();
+      paramProps.setProperty("oauth_token", this.requestToken);
+      OAuthMessage response = sendRequest(paramProps, url, "GET");
+      String encoding = response.getBodyEncoding();
+      return new InputStreamReader(new CountingInputStream(response.getBodyAsStream(), BYTES_IN), null == encoding ? "UTF-8" : encoding);
+    } catch (NullPointerException e) {
+      throw new ConnectionProblem(e);
+    } catch (IOException e) {
+      throw new ConnectionProblem(e);
+    } catch (URISyntaxException e) {
+      throw new ConnectionProblem(e);
+    } catch (OAuthException e) {
+      throw new AccessDeniedException(e);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private OAuthMessage sendRequest(Map map, String url, String method) throws IOException, URISyntaxException, OAuthException, AccessDeniedException {
+    return sendRequest(map, url, method, null);
+  }
+
+  /**
+   * @param headers extra request headers, may be null
+   * @return the response, or null for 201 Created and 304 Not Modified
+   */
+  @SuppressWarnings("unchecked")
+  private OAuthMessage sendRequest(Map map, String url, String method, List<Map.Entry<String, String>> headers) throws IOException, URISyntaxException, OAuthException, AccessDeniedException {
     if (DEBUG) Log.d(getClass().getName(), ".sendRequest");
 
     List<Map.Entry> params = new ArrayList<Map.Entry>();
@@ -551,18 +757,30 @@ public class YammerProxy {
       params.add(new OAuth.Parameter((String)p.getKey(), (String)p.getValue()));
     }
 
+    REQUESTS.inc();
+    long started = Metrics.start();
     try {
-      accessor.tokenSecret = this.tokenSecret;
-
-      // It seems that we need to send the auth header for Yammer at least, when submitting POST requests
-      if ( method == OAuthMessage.POST ) {
-        accessor.consumer.setProperty(OAuthClient.PARAMETER_STYLE, "AUTHORIZATION_HEADER");
-      } else {
-        accessor.consumer.setProperty(OAuthClient.PARAMETER_STYLE, "QUERY_STRING");
+      OAuthMessage request;
+      OAuthClient.ParameterStyle style;
+      // The accessor is shared by all threads; only signing needs it
+      synchronized(accessor) {
+        accessor.tokenSecret = this.tokenSecret;
+
+        // It seems that we need to send the auth header for Yammer at least, when submitting POST requests
+        if ( method == OAuthMessage.POST ) {
+          style = OAuthClient.ParameterStyle.AUTHORIZATION_HEADER;
+        } else {
+          style = OAuthClient.ParameterStyle.QUERY_STRING;
+        }
+        accessor.consumer.setProperty(OAuthClient.PARAMETER_STYLE, style.name());
+        request = accessor.newRequestMessage(method, url, params);
       }
       
       if (DEBUG) Log.d(getClass().getName(), "Invoking: " + url + " params: "+params.toString());
-      return client.invoke(accessor, method, url, params);
+      if(null != headers) {
+        request.getHeaders().addAll(headers);
+      }
+      return client.invoke(request, style);
     } catch (OAuthProblemException e) {
       int statusCode = e.getHttpStatusCode();
       if (DEBUG) Log.d(getClass().getName(), "HTTP status code: " + statusCode);
@@ -572,23 +790,23 @@ public class YammerProxy {
         return null;
       }
 
+      // answer to a conditional GET, the caller holds the body
+      if (304 == statusCode) {
+        return null;
+      }
+
+      REQUEST_ERRORS.inc();
       if (401 == statusCode) {
         throw new AccessDeniedException(e);
       }
 
       throw e;
+    } catch (IOException e) {
+      REQUEST_ERRORS.inc();
+      throw e;
+    } finally {
+      REQUEST_TIME.recordSince(started);
     }
   }
 
-  private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss ZZZZZ");
-
-  public static long parseTime(String _date) {
-    try {
-      return dateFormat.parse(_date).getTime();
-    } catch (ParseException e) {
-      if(DEBUG) Log.e(YammerProxy.class.getName(), "Could not parse date", e);
-    }
-    return System.currentTimeMillis();
-  }
-
 }
@@ -2,21 +2,23 @@ package com.yammer.v1;
 
 import com.yammer.v1.YammerData.YammerDataException;
 import com.yammer.v1.YammerProxy.YammerProxyException;
+import com.yammer.v1.metrics.Counter;
+import com.yammer.v1.metrics.Histogram;
+import com.yammer.v1.metrics.Metrics;
 import com.yammer.v1.models.Feed;
 import com.yammer.v1.models.Message;
 import com.yammer.v1.models.Network;
+import com.yammer.v1.models.OutboxItem;
 import com.yammer.v1.models.User;
 import com.yammer.v1.settings.SettingsEditor;
 import com.yammer.v1.YammerProxy;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Semaphore;
 
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
@@ -25,6 +27,8 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
@@ -55,6 +59,9 @@ public class YammerService extends Service {
   public static final String INTENT_CHANGE_FEED = "com.yammer.v1:CHANGE_FEED";
   public static final String EXTRA_FEED_NAME = "feed_name";
 
+  // Debug builds only, see SyncLoadDriver
+  public static final String INTENT_LOAD_TEST = "com.yammer.v1:LOAD_TEST";
+
   /** Client states **/
   private static int STATE_RAW = -1;
   private static int STATE_INITIALIZED = 0;		
@@ -65,11 +72,26 @@ public class YammerService extends Service {
 
   // Are we authorized?
   private static boolean authorized = false;
-  // Check if an update should be made every 10.5 seconds
-  private final long GLOBAL_UPDATE_INTERVAL = 10500;
-  private static long lastUpdateTime = 0;
-  // Check for application updates once a day
+  // Runs one sync at a time, whenever the scheduler says it is due
   private Timer timer = new Timer();
+  private final SyncScheduler syncScheduler = new SyncScheduler(SyncScheduler.SYSTEM_CLOCK);
+  private TimerTask syncTask = null;
+  // Returned by getMessages() when the server could not be reached
+  static final int SYNC_FAILED = -1;
+  // Returned by getOlderMessages() when another fetch holds the database
+  static final int SYNC_BUSY = -2;
+  // How often old messages are dropped
+  static final long COMPACT_INTERVAL = 24 * 60 * 60 * 1000L;
+
+  // Stages of getMessages(): the request, reading and writing the page,
+  // saving the network's sync state and telling the timeline
+  private static final Histogram SYNC_TIME = Metrics.timer("sync.total");
+  private static final Histogram FETCH_TIME = Metrics.timer("sync.fetch");
+  private static final Histogram INGEST_TIME = Metrics.timer("sync.ingest");
+  private static final Histogram SAVE_TIME = Metrics.timer("sync.save");
+  private static final Histogram BROADCAST_TIME = Metrics.timer("sync.broadcast");
+  private static final Counter SYNC_MESSAGES = Metrics.counter("sync.messages");
+  private static final Counter SYNC_FAILURES = Metrics.counter("sync.failures");
   
   // Properties of the current network
   int newMessageCount = 0;
@@ -126,40 +148,54 @@ public class YammerService extends Service {
          * when a user tries to share something.
          */
         String message = intent.getExtras().getString(EXTRA_MESSAGE);
-        try {
-          // message ID is 0 since this is not a reply
-          getYammerProxy().postMessage(message, 0);
-        } catch (YammerProxy.AccessDeniedException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
-        } catch (YammerProxy.ConnectionProblem e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
+        // message ID is 0 since this is not a reply
+        postMessage(message, 0);
+      } else if (ConnectivityManager.CONNECTIVITY_ACTION.equals(intent.getAction())) {
+        getOutbox().kick();
       } else if(INTENT_AUTHENTICATION_COMPLETE.equals(intent.getAction())) {
           authenticationComplete();
           updateCurrentUserData();
           
       } else if(INTENT_ENABLE_NOTIFICATION.equals(intent.getAction())) {
+          // Activity went to the background
           YammerService.this.notificationEnabled = true;
+          syncScheduler.setForeground(false);
+          scheduleSync();
           
       } else if(INTENT_DISABLE_NOTIFICATION.equals(intent.getAction())) {
+        // Activity came to the foreground
         YammerService.this.notificationEnabled = false;
+        syncScheduler.setForeground(true);
+        scheduleSync();
 
       } else if(INTENT_CHANGE_NETWORK.equals(intent.getAction())) {
-        new Thread() {
+        final long id = intent.getLongExtra(EXTRA_NETWORK_ID, 0L);
+        boolean queued = YammerApp.getExecutor().network().offer(new Runnable() {
           public void run() {
-            changeNetwork(intent.getLongExtra(EXTRA_NETWORK_ID, 0L));
+            changeNetwork(id);
           }
-        }.start();
+        });
+        if( ! queued) {
+          // Keep the user's choice; the next sync fetches for it
+          setCurrentNetworkId(id);
+          toastUser(R.string.busy_sync_later);
+        }
       } else if(INTENT_CHANGE_FEED.equals(intent.getAction())) {
-        new Thread() {
+        final String name = intent.getStringExtra(EXTRA_FEED_NAME);
+        boolean queued = YammerApp.getExecutor().network().offer(new Runnable() {
           public void run() {
-            changeFeed(intent.getStringExtra(EXTRA_FEED_NAME));
+            changeFeed(name);
           }
-        }.start();
+        });
+        if( ! queued) {
+          // Keep the user's choice and show what is stored for it
+          getSettings().setFeed(name);
+          sendBroadcast(YammerActivity.INTENT_PUBLIC_TIMELINE_UPDATED);
+          toastUser(R.string.busy_sync_later);
+        }
+      } else if(DEBUG && INTENT_LOAD_TEST.equals(intent.getAction())) {
+        // Runs for minutes, so on a thread of its own rather than a lane
+        new Thread(new SyncLoadDriver(YammerService.this, intent), SyncLoadDriver.class.getSimpleName()).start();
       }
     }
 
@@ -167,15 +203,64 @@ public class YammerService extends Service {
       if (DEBUG) Log.d(getClass().getName(), ".authenticationComplete");
       setAuthorized(true);
       sendBroadcast(new Intent(YammerActivity.INTENT_AUTHORIZATION_DONE));
+      getOutbox().kick();
    }
+  };
 
-    private void resetAccount() {
-      getYammerData().resetData(getCurrentNetworkId());
-      setCurrentNetworkId(0L);
-      resetYammerProxy();
-      YammerService.setAuthorized(false);
+  private void resetAccount() {
+    getYammerData().resetData(getCurrentNetworkId());
+    setCurrentNetworkId(0L);
+    resetYammerProxy();
+    getNetworkSync().reset();
+    YammerService.setAuthorized(false);
+  }
+
+  /**
+   * Drop the current account and sign in to the server at _baseURL, as
+   * the authentication dialog would. For SyncLoadDriver.
+   *
+   * If the login fails the service is left signed out of the current
+   * account but pointed at its server again.
+   *
+   * @return the login's status code, as YammerProxy.login() gives it
+   */
+  int signIn(String _baseURL, String _email, String _password) {
+    if ( !jsonUpdateSemaphore.tryAcquire() ) {
+      if (DEBUG) Log.d(getClass().getName(), "Could not acquire permit to update semaphore - aborting");
+      return 500;
     }
-  };
+    String previousURL = getSettings().getUrl();
+    int status = 0;
+    try {
+      resetAccount();
+      getSettings().setUrl(_baseURL);
+      status = getYammerProxy().login(_email, _password);
+    } finally {
+      if (200 != status) {
+        getSettings().setUrl(previousURL);
+        resetYammerProxy();
+      }
+      jsonUpdateSemaphore.release();
+    }
+    if (200 == status) {
+      setAuthorized(true);
+      updateCurrentUserData();
+    }
+    return status;
+  }
+
+  /**
+   * Drop the current account and go back to the server at _baseURL.
+   */
+  void signOut(String _baseURL) {
+    jsonUpdateSemaphore.acquireUninterruptibly();
+    try {
+      resetAccount();
+      getSettings().setUrl(_baseURL);
+    } finally {
+      jsonUpdateSemaphore.release();
+    }
+  }
 
   @Override
   public void onCreate() {
@@ -209,34 +294,75 @@ public class YammerService extends Service {
       }
 
       registerIntents();
+      getOutbox().start();
       
-      // Start the update timer
-      timer.scheduleAtFixedRate(
-          new TimerTask() {
-            public void run() {
-              try {
-                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
-                // How long to wait
-                long updateTimeout = getSettings().getUpdateTimeout();
-                //if (DEBUG) Log.d(getClass().getName(), "updateTimeout: " + (lastUpdateTime + updateTimeout) + ", currentTime: " + System.currentTimeMillis());
-                // Is it time to update?
-                if (updateTimeout != 0 && (System.currentTimeMillis() > lastUpdateTime + updateTimeout) ) {
-                  if (DEBUG) Log.d(getClass().getName(), "Acquiring wakelock");
-                  wakelock.acquire();
-                  // Time to update
-                  getMessages(false);
-                  lastUpdateTime = System.currentTimeMillis();		        					
-                  wakelock.release();
-                  if (DEBUG) Log.d(getClass().getName(), "Wakelock released");
-                }
-              } catch (RuntimeException e) {
-                if (DEBUG) Log.d(getClass().getName(), "An exception occured during updatePublicMessage()");
-                e.printStackTrace();
-              }
-            }
-          }, 0, GLOBAL_UPDATE_INTERVAL
-      );
+      // Start syncing
+      scheduleSync();
+    }
+  }
+
+  /**
+   * (Re)arm the timer for the next sync the scheduler asks for.
+   */
+  private synchronized void scheduleSync() {
+    if (null != syncTask) {
+      syncTask.cancel();
+      syncTask = null;
+    }
+    syncScheduler.setInterval(getSettings().getUpdateTimeout());
+    long delay = syncScheduler.getDelay();
+    if (SyncScheduler.NEVER == delay) {
+      if (DEBUG) Log.d(getClass().getName(), "Syncing disabled");
+      return;
+    }
+    if (DEBUG) Log.d(getClass().getName(), "Next sync in " + delay + "ms");
+    syncTask = new TimerTask() {
+      public void run() {
+        sync();
+      }
+    };
+    timer.schedule(syncTask, delay);
+  }
 
+  /**
+   * The user asked for a reload: go back to the configured interval
+   * instead of waiting out any back-off from idle or failed syncs.
+   */
+  public void resetSyncBackoff() {
+    syncScheduler.reset();
+    scheduleSync();
+  }
+
+  /**
+   * Stop or restart the sync timer, for SyncLoadDriver, which makes the
+   * sync calls itself.
+   */
+  void setSyncSuspended(boolean _suspended) {
+    syncScheduler.setSuspended(_suspended);
+    scheduleSync();
+  }
+
+  /**
+   * One sync pass. All background work due at this point is done under a
+   * single wakelock, so the device is woken once per pass.
+   */
+  private void sync() {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    if (DEBUG) Log.d(getClass().getName(), "Acquiring wakelock");
+    wakelock.acquire();
+    try {
+      int found = getMessages(false);
+      int elsewhere = syncOtherNetworks();
+      syncScheduler.onSyncFinished(Math.max(0, found) + Math.max(0, elsewhere), SYNC_FAILED == found);
+      compactIfDue();
+    } catch (RuntimeException e) {
+      if (DEBUG) Log.d(getClass().getName(), "An exception occured during sync()");
+      e.printStackTrace();
+      syncScheduler.onSyncFinished(0, true);
+    } finally {
+      wakelock.release();
+      if (DEBUG) Log.d(getClass().getName(), "Wakelock released");
+      scheduleSync();
     }
   }
 
@@ -250,6 +376,10 @@ public class YammerService extends Service {
     filter.addAction(INTENT_DISABLE_NOTIFICATION);
     filter.addAction(INTENT_CHANGE_NETWORK);
     filter.addAction(INTENT_CHANGE_FEED);
+    filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+    if (DEBUG) {
+      filter.addAction(INTENT_LOAD_TEST);
+    }
 
     registerReceiver(new YammerIntentReceiver(), filter);
   }
@@ -272,23 +402,7 @@ public class YammerService extends Service {
     }
 
     NotificationManager nm = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-    // Default icon
-    int icon = R.drawable.yammer_notification_icon;
-
-    Notification notification = new Notification(icon,
-        getResources().getString(_message_id), 
-        System.currentTimeMillis()
-    ); 
-    notification.ledARGB = 0xff035c99; 
-    notification.ledOnMS = 200; 
-    notification.ledOffMS = 200; 
-    notification.defaults = Notification.DEFAULT_SOUND;        
-    notification.flags = Notification.FLAG_SHOW_LIGHTS | Notification.FLAG_AUTO_CANCEL; 
-
-    // Vibrate enabled?
-    if(getSettings().getVibrate()) {
-      notification.vibrate = new long[] {0, 100, 100, 100, 100, 100};	        	
-    }
+    Notification notification = newNotification(_message_id);
 
     if(NOTIFICATION_NEW_MESSAGE == type) {
       // Intent of this notification - launch yammer activity
@@ -311,16 +425,62 @@ public class YammerService extends Service {
   }
 
   /**
-   * Post a message or a reply to the current Yammer Network
+   * Notify user about the unread messages of a network other than the
+   * current one, in a notification of the network's own.
+   */
+  private void notifyNetwork(Network _network) {
+    // Only notify when we are not bound to the activity
+    if(!notificationEnabled) {
+      return;
+    }
+
+    NotificationManager nm = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+    Notification notification = newNotification(R.string.new_yammer_message);
+    int count = _network.unreadCount;
+    PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, new Intent(this, YammerActivity.class), 0);
+    if ( count > 1 ) {
+      notification.number = count;
+    }
+    notification.setLatestEventInfo(this,
+        getResources().getString(R.string.new_yammer_message),
+        getResources().getQuantityString(R.plurals.new_messages_in_network, count, count, _network.name),
+        pendingIntent
+    );
+
+    if (DEBUG) Log.d(getClass().getName(), "Displaying notification - " + count + " new messages in " + _network.name);
+    // One per network, keyed by its id
+    nm.notify((int)(_network.networkId ^ (_network.networkId >>> 32)), notification);
+  }
+
+  private Notification newNotification(int _message_id) {
+    // Default icon
+    int icon = R.drawable.yammer_notification_icon;
+
+    Notification notification = new Notification(icon,
+        getResources().getString(_message_id), 
+        System.currentTimeMillis()
+    ); 
+    notification.ledARGB = 0xff035c99; 
+    notification.ledOnMS = 200; 
+    notification.ledOffMS = 200; 
+    notification.defaults = Notification.DEFAULT_SOUND;        
+    notification.flags = Notification.FLAG_SHOW_LIGHTS | Notification.FLAG_AUTO_CANCEL; 
+
+    // Vibrate enabled?
+    if(getSettings().getVibrate()) {
+      notification.vibrate = new long[] {0, 100, 100, 100, 100, 100};	        	
+    }
+    return notification;
+  }
+
+  /**
+   * Queue a message or a reply to the current Yammer Network
    * 
    * @param message - message to post
    * @param messageId - Message being replied to
-   * 
-   * @throws YammerProxy.AccessDeniedException
-   * @throws YammerProxy.ConnectionProblem 
    */
-  public void postMessage(final String message, final long messageId) throws YammerProxy.YammerProxyException {
-    getYammerProxy().postMessage(message, messageId);
+  public void postMessage(final String message, final long messageId) {
+    getOutbox().post(getCurrentNetworkId(), message, messageId);
   }
 
   /**
@@ -338,20 +498,67 @@ public class YammerService extends Service {
     sendBroadcast(YammerActivity.INTENT_PUBLIC_TIMELINE_UPDATED);
   }
 
-  public void followUser(long userId) throws YammerProxy.YammerProxyException {
+  public void followUser(long userId) {
     if (DEBUG) Log.d(getClass().getName(), ".followUser: " + userId);
-    getYammerProxy().followUser(userId);
+    getOutbox().follow(getCurrentNetworkId(), userId, true);
   }
 
-  public void unfollowUser(long userId) throws YammerProxy.YammerProxyException {
+  public void unfollowUser(long userId) {
     if (DEBUG) Log.d(getClass().getName(), ".unfollowUser: " + userId);
-    getYammerProxy().unfollowUser(userId);
+    getOutbox().follow(getCurrentNetworkId(), userId, false);
+  }
+
+  private Outbox mOutbox;
+  private synchronized Outbox getOutbox() {
+    if (null == mOutbox) {
+      mOutbox = new Outbox(getYammerData(), new Outbox.Delegate() {
+        public long getNetworkId() {
+          return isAuthorized() ? getCurrentNetworkId() : 0L;
+        }
+
+        public boolean isOnline() {
+          ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+          NetworkInfo info = cm.getActiveNetworkInfo();
+          return null != info && info.isConnected();
+        }
+
+        public void send(long _networkId, OutboxItem _item) throws YammerProxyException {
+          // Not the shared proxy, which follows the current network
+          Network network = getYammerData().getNetwork(_networkId);
+          if (null == network) {
+            throw new YammerProxyException("No network " + _networkId, null);
+          }
+          YammerProxy proxy = getNetworkSync().getProxy(network);
+          if (OutboxItem.ACTION_POST.equals(_item.action)) {
+            proxy.postMessage(_item.body, _item.targetId);
+          } else if (OutboxItem.ACTION_FOLLOW.equals(_item.action)) {
+            proxy.followUser(_item.targetId);
+          } else if (OutboxItem.ACTION_UNFOLLOW.equals(_item.action)) {
+            proxy.unfollowUser(_item.targetId);
+          }
+        }
+
+        public void onSent(OutboxItem _item) {
+          if (OutboxItem.ACTION_POST.equals(_item.action) && _item.networkId == getCurrentNetworkId()) {
+            // Bring our own message into the timeline
+            getMessages(true);
+          }
+        }
+
+        public void onRejected(OutboxItem _item) {
+          toastUser(R.string.outbox_rejected);
+        }
+      });
+    }
+    return mOutbox;
   }
 
   private void changeNetwork(long _id) {
     if (DEBUG) Log.d(getClass().getName(), "changeNetwork: " + _id);
     setCurrentNetworkId(_id);
+    getYammerData().clearUnread(_id);
     toastUser(R.string.changing_network_text, getCurrentNetwork().name);
+    getOutbox().kick();
     updateCurrentUserData();
 // handled by intent fired from updateCurrentUserData => reloadNetworks => reloadFeeds     
 //    clearMessages();
@@ -362,7 +569,8 @@ public class YammerService extends Service {
     if (DEBUG) Log.d(getClass().getName(), "changeFeed: " + _name);
     toastUser(R.string.changing_feed_text, _name);
     getSettings().setFeed(_name);
-    clearMessages();
+    // Show what is already stored for the feed, then fetch only what is newer
+    sendBroadcast(YammerActivity.INTENT_PUBLIC_TIMELINE_UPDATED);
     getMessages(true);
   }
 
@@ -380,8 +588,19 @@ public class YammerService extends Service {
   private void reloadNetworks() {
     if (DEBUG) Log.i(getClass().getName(), ".reloadNetworks");
     try {
-      getYammerData().clearNetworks();
       Network[] networks = getYammerProxy().getNetworks();
+      // The server knows nothing of our sync state, so carry it over
+      Network[] known = getYammerData().getNetworks();
+      for(int ii=0; ii < networks.length ;ii++) {
+        for(int jj=0; jj < known.length ;jj++) {
+          if(networks[ii].networkId == known[jj].networkId) {
+            networks[ii].lastMessageId = known[jj].lastMessageId;
+            networks[ii].unreadCount = known[jj].unreadCount;
+            networks[ii].syncedAt = known[jj].syncedAt;
+          }
+        }
+      }
+      getYammerData().clearNetworks();
       if(0L == getCurrentNetworkId()) {
         setCurrentNetworkId(networks[0].networkId);
       }
@@ -412,115 +631,214 @@ public class YammerService extends Service {
     getYammerData().clearMessages();
   }
   
-  public void getMessages(boolean reloading) {
+  /**
+   * @return the number of messages fetched, or SYNC_FAILED
+   */
+  public int getMessages(boolean reloading) {
     if (DEBUG) Log.i(getClass().getName(), ".getMessages");
     
     if ( ! isAuthorized() ) {
       if (DEBUG) Log.i(getClass().getName(), "User not authorized - skipping update");
-      return;
+      return 0;
     }
     
-    boolean notificationRequired = false;
-    boolean messagesFound = false;
+    MessageTally tally = new MessageTally();
     
-    try {
-      if ( !jsonUpdateSemaphore.tryAcquire() ) {
-        if (DEBUG) Log.d(getClass().getName(), "Could not acquire permit to update semaphore - aborting");
-        return;
-      }
-      
-      String messages = getYammerProxy().getMessagesNewerThan(getFeedURL(), getYammerData().getLastMessageId(getCurrentNetworkId()));
-
-      if (DEBUG) Log.d(getClass().getName(), "Messages JSON: " + messages);
-      JSONObject jsonMessages = new JSONObject(messages);
+    if ( !jsonUpdateSemaphore.tryAcquire() ) {
+      if (DEBUG) Log.d(getClass().getName(), "Could not acquire permit to update semaphore - aborting");
+      return 0;
+    }
 
-      try {
-        if (DEBUG) Log.d(getClass().getName(), "Updating users from references");
-        JSONArray references = jsonMessages.getJSONArray("references");
-        for( int ii=0; ii < references.length(); ii++ ) {
-          try {
-            JSONObject reference = references.getJSONObject(ii);
-            if(reference.getString("type").equals("user")) {
-              getYammerData().addUser(reference);
-            }
-          } catch( JSONException e ) {
-            if (DEBUG) Log.w(getClass().getName(), e.getMessage());
-          }
-        }
-      } catch (JSONException e) {
-        if (DEBUG) Log.w(getClass().getName(), e.getMessage());
-      } catch (YammerDataException e) {
-        if (DEBUG) Log.w(getClass().getName(), e.getMessage());
-      }
-      
-//      try {
-//        if (DEBUG) Log.d(getClass().getName(), "Trying to fetch last_seen_message_id");
-//        JSONObject meta = jsonMessages.getJSONObject("meta");
-//        getSettings().setLastSeenMessageId(meta.getLong("last_seen_message_id"));
-//      } catch (JSONException e) {
-//        if (DEBUG) Log.w(getClass().getName(), e.getMessage());
-//      }     
+    long started = Metrics.start();
+    try {
+      String feed = getSettings().getFeed();
+      long stage = Metrics.start();
+      Reader messages = getYammerProxy().openMessagesNewerThan(getFeedURL(feed), getYammerData().getLastMessageId(getCurrentNetworkId(), feed));
+      FETCH_TIME.recordSince(stage);
 
       try {
-        if (DEBUG) Log.d(getClass().getName(), "Updating messages");
+        if (DEBUG) Log.d(getClass().getName(), "Updating users and messages");
         Network network = getCurrentNetwork();
-        JSONArray jsonArray = jsonMessages.getJSONArray("messages");
-        for( int ii=0; ii < jsonArray.length(); ii++ ) {
-          Message message = getYammerData().addMessage(jsonArray.getJSONObject(ii), getCurrentNetworkId());
+        tally.lastMessageId = network.lastMessageId;
+        stage = Metrics.start();
+        getYammerData().ingestStream(messages, getCurrentNetworkId(), feed, tally);
+        INGEST_TIME.recordSince(stage);
+        // Only now is the page stored
+        newMessageCount += tally.unread;
+        network.lastMessageId = tally.lastMessageId;
       
-          if(message.messageId > network.lastMessageId) {
-            network.lastMessageId = message.messageId;
-          }
-          
-          // Is this my own message?
-          boolean ownMessage = getCurrentUserId() == message.userId;
-          // Only ask if notification is required if none of
-          // the previous messages had notification requirement
-          if(!notificationRequired) {
-            notificationRequired = !ownMessage;
-            if (DEBUG) Log.d(getClass().getName(), "Notification required: " + notificationRequired);
-          }
-          // Only increment message counter if this is not one of our own messages
-          if ( !ownMessage ) {
-            // If we reach this point, a new message has been received - increment new message counter
-            newMessageCount ++;	        				
-          }
-          messagesFound = true;
-        }
-        
+        stage = Metrics.start();
         getSettings().setUpdatedAt();
         getYammerData().save(network);
-        
-      } catch (JSONException e) {
+        SAVE_TIME.recordSince(stage);
+      } catch (YammerDataException e) {
+        // Nothing of the page was stored and the tally saw none of it
         if (DEBUG) Log.w(getClass().getName(), e.getMessage());
-      }			
+        SYNC_FAILURES.inc();
+        return SYNC_FAILED;
+      } finally {
+        try {
+          messages.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
 
     } catch (YammerProxyException e) {
       if (DEBUG) Log.w(getClass().getName(), e.getMessage());
-      return;
-    } catch (JSONException e) {
-      if (DEBUG) Log.w(getClass().getName(), e.getMessage());
-      return;
+      SYNC_FAILURES.inc();
+      return SYNC_FAILED;
     } catch (YammerDataException e) {
       if (DEBUG) Log.w(getClass().getName(), e.getMessage());
+      SYNC_FAILURES.inc();
       setCurrentNetworkId(0L);
       reloadNetworks();
+      return SYNC_FAILED;
     } finally {
       // Release the semaphore
       jsonUpdateSemaphore.release();
     }
 
+    boolean notificationRequired = tally.notificationRequired;
+    boolean messagesFound = tally.messagesFound;
+
     if (messagesFound) {
       if (notificationRequired && !reloading) {
         notifyUser(R.string.new_yammer_message, NOTIFICATION_NEW_MESSAGE);				
       }
       
+      long stage = Metrics.start();
       sendBroadcast(YammerActivity.INTENT_PUBLIC_TIMELINE_UPDATED);
+      BROADCAST_TIME.recordSince(stage);
+    }
+    SYNC_MESSAGES.add(tally.count);
+    SYNC_TIME.recordSince(started);
+    return tally.count;
+  }
+
+  /**
+   * Bring every network other than the current one up to date.
+   *
+   * @return the number of unread messages found, or SYNC_FAILED
+   */
+  private int syncOtherNetworks() {
+    if ( ! isAuthorized() ) {
+      return 0;
+    }
+    return getNetworkSync().syncAll(getCurrentNetworkId(), new Block<Network, Void>() {
+      public Void call(Network _network) {
+        notifyNetwork(_network);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Apply the retention policy, at most once every COMPACT_INTERVAL.
+   */
+  private void compactIfDue() {
+    long now = System.currentTimeMillis();
+    if (now - getSettings().getCompactedAt() < COMPACT_INTERVAL) {
+      return;
+    }
+    new Compactor(getYammerData(), getFilesDir(), getSettings().getKeepMessages(), getSettings().getKeepDays()).run();
+    getSettings().setCompactedAt(now);
+  }
+
+  private NetworkSync networkSync;
+  private synchronized NetworkSync getNetworkSync() {
+    if (null == networkSync) {
+      networkSync = new NetworkSync(getApplicationContext(), getYammerData(), YammerApp.getExecutor().network());
+    }
+    return networkSync;
+  }
+
+  /**
+   * Fetch the page of messages just older than the oldest one stored.
+   * 
+   * @return the number of messages fetched, 0 only if the server has
+   *   nothing older, or SYNC_FAILED or SYNC_BUSY if nothing was asked for
+   */
+  public int getOlderMessages() {
+    if (DEBUG) Log.i(getClass().getName(), ".getOlderMessages");
+
+    String feed = getSettings().getFeed();
+    long firstMessageId = getYammerData().getFirstMessageId(getCurrentNetworkId(), feed);
+    if ( ! isAuthorized() || 0L == firstMessageId ) {
+      return SYNC_FAILED;
+    }
+
+    if ( !jsonUpdateSemaphore.tryAcquire() ) {
+      if (DEBUG) Log.d(getClass().getName(), "Could not acquire permit to update semaphore - aborting");
+      return SYNC_BUSY;
+    }
+
+    int count = 0;
+    try {
+      Reader messages = getYammerProxy().openMessagesOlderThan(getFeedURL(feed), firstMessageId);
+      try {
+        count = getYammerData().ingestStream(messages, getCurrentNetworkId(), feed, null);
+      } finally {
+        try {
+          messages.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    } catch (YammerProxyException e) {
+      if (DEBUG) Log.w(getClass().getName(), e.getMessage());
+      return SYNC_FAILED;
+    } catch (YammerDataException e) {
+      if (DEBUG) Log.w(getClass().getName(), e.getMessage());
+      return SYNC_FAILED;
+    } finally {
+      jsonUpdateSemaphore.release();
+    }
+
+    if (0 < count) {
+      sendBroadcast(YammerActivity.INTENT_PUBLIC_TIMELINE_UPDATED);
+    }
+    return count;
+  }
+
+  /**
+   * Keeps count of the messages written while a page is being streamed in.
+   * Nothing here counts until the page's transaction has committed.
+   */
+  private class MessageTally implements Block<Message, Void> {
+    boolean notificationRequired = false;
+    boolean messagesFound = false;
+    int count = 0;
+    // Messages from other people
+    int unread = 0;
+    long lastMessageId = 0L;
+
+    public Void call(Message message) {
+      if(message.messageId > lastMessageId) {
+        lastMessageId = message.messageId;
+      }
+    
+      // Is this my own message?
+      boolean ownMessage = getCurrentUserId() == message.userId;
+      // Only ask if notification is required if none of
+      // the previous messages had notification requirement
+      if(!notificationRequired) {
+        notificationRequired = !ownMessage;
+        if (DEBUG) Log.d(getClass().getName(), "Notification required: " + notificationRequired);
+      }
+      // Only increment message counter if this is not one of our own messages
+      if ( !ownMessage ) {
+        // If we reach this point, a new message has been received - increment new message counter
+        unread++;
+      }
+      messagesFound = true;
+      count++;
+      return null;
     }
   }
 
-  private String getFeedURL() throws YammerData.YammerDataException {
-    return getYammerData().getURLForFeed(getCurrentNetworkId(), getSettings().getFeed());
+  private String getFeedURL(String _feed) throws YammerData.YammerDataException {
+    return getYammerData().getURLForFeed(getCurrentNetworkId(), _feed);
   }
   
   private String getURLBase() {
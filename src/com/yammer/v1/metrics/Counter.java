@@ -0,0 +1,40 @@
+package com.yammer.v1.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A running total, such as bytes read or rows written.
+ */
+public class Counter {
+
+  private final String name;
+  private final AtomicLong value = new AtomicLong();
+
+  Counter(String _name) {
+    this.name = _name;
+  }
+
+  public void inc() {
+    add(1L);
+  }
+
+  public void add(long _delta) {
+    if( ! Metrics.isEnabled()) {
+      return;
+    }
+    value.addAndGet(_delta);
+  }
+
+  public long get() {
+    return value.get();
+  }
+
+  void reset() {
+    value.set(0L);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+}
@@ -0,0 +1,41 @@
+package com.yammer.v1.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Adds the bytes read through it to a counter.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+  private final Counter counter;
+
+  public CountingInputStream(InputStream _in, Counter _counter) {
+    super(_in);
+    this.counter = _counter;
+  }
+
+  public int read() throws IOException {
+    int b = super.read();
+    if(-1 != b) {
+      counter.inc();
+    }
+    return b;
+  }
+
+  public int read(byte[] _buffer, int _offset, int _length) throws IOException {
+    int count = super.read(_buffer, _offset, _length);
+    if(0 < count) {
+      counter.add(count);
+    }
+    return count;
+  }
+
+  public long skip(long _count) throws IOException {
+    long skipped = super.skip(_count);
+    counter.add(skipped);
+    return skipped;
+  }
+
+}
@@ -0,0 +1,13 @@
+package com.yammer.v1.metrics;
+
+/**
+ * A value read when the metrics are shown, such as a queue depth.
+ */
+public interface Gauge {
+
+  /**
+   * Called on whatever thread shows or exports the metrics.
+   */
+  public long getValue();
+
+}
@@ -0,0 +1,128 @@
+package com.yammer.v1.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The distribution of a value, such as a stage's latency or a page's size.
+ *
+ * Values are counted in power-of-two buckets, so percentiles are only
+ * accurate to within a factor of two but recording costs no allocation.
+ * Values must not be negative.
+ */
+public class Histogram {
+
+  public static final String UNIT_MICROS = "us";
+
+  // Bucket ii counts the values with ii significant bits
+  private static final int BUCKETS = 64;
+
+  private final String name;
+  private final String unit;
+
+  // Guarded by this
+  private final long[] buckets = new long[BUCKETS];
+  private long count = 0L;
+  private long sum = 0L;
+  private long min = Long.MAX_VALUE;
+  private long max = 0L;
+
+  Histogram(String _name, String _unit) {
+    this.name = _name;
+    this.unit = _unit;
+  }
+
+  public void record(long _value) {
+    if( ! Metrics.isEnabled()) {
+      return;
+    }
+    long value = Math.max(0L, _value);
+    synchronized(this) {
+      buckets[BUCKETS - Long.numberOfLeadingZeros(value)]++;
+      count++;
+      sum += value;
+      if(value < min) {
+        min = value;
+      }
+      if(value > max) {
+        max = value;
+      }
+    }
+  }
+
+  /**
+   * Record the microseconds since _started.
+   *
+   * @param _started what Metrics.start() returned
+   */
+  public void recordSince(long _started) {
+    if(0L == _started) {
+      return;
+    }
+    record((System.nanoTime() - _started) / 1000L);
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getMean() {
+    return 0L == count ? 0L : sum / count;
+  }
+
+  /**
+   * @param _fraction e.g. 0.9 for the 90th percentile
+   * @return the top of the bucket the percentile falls in, at most the largest value seen
+   */
+  public synchronized long getPercentile(double _fraction) {
+    if(0L == count) {
+      return 0L;
+    }
+    long rank = (long)Math.ceil(_fraction * count);
+    long seen = 0L;
+    for(int ii=0; ii < BUCKETS ;ii++) {
+      seen += buckets[ii];
+      if(seen >= rank) {
+        return Math.min(max, 0 == ii ? 0L : (1L << ii) - 1);
+      }
+    }
+    return max;
+  }
+
+  synchronized void reset() {
+    for(int ii=0; ii < BUCKETS ;ii++) {
+      buckets[ii] = 0L;
+    }
+    count = 0L;
+    sum = 0L;
+    min = Long.MAX_VALUE;
+    max = 0L;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getUnit() {
+    return unit;
+  }
+
+  synchronized JSONObject toJSON() throws JSONException {
+    return new JSONObject()
+        .put("unit", unit)
+        .put("count", count)
+        .put("sum", sum)
+        .put("min", 0L == count ? 0L : min)
+        .put("max", max)
+        .put("mean", getMean())
+        .put("p50", getPercentile(0.5))
+        .put("p90", getPercentile(0.9))
+        .put("p99", getPercentile(0.99));
+  }
+
+  public synchronized String toString() {
+    return "n=" + count + " mean=" + getMean() + " p50=" + getPercentile(0.5) + " p90=" + getPercentile(0.9)
+        + " p99=" + getPercentile(0.99) + " max=" + max + unit;
+  }
+
+}
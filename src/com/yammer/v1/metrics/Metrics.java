@@ -0,0 +1,158 @@
+package com.yammer.v1.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The process-wide registry of counters, histograms and gauges.
+ *
+ * Classes take their metrics once, into static fields, and record into
+ * them as they work. Recording is off unless the user turns it on in the
+ * settings; while off, a counter or histogram costs one volatile read and
+ * start() hands out 0, which recordSince() ignores, so no clock is read.
+ *
+ * Names are dotted, the part before the first dot naming the component.
+ */
+public class Metrics {
+
+  private static volatile boolean enabled = false;
+
+  // Guarded by Metrics.class
+  private static final Map<String, Counter> counters = new TreeMap<String, Counter>();
+  private static final Map<String, Histogram> histograms = new TreeMap<String, Histogram>();
+  private static final Map<String, Gauge> gauges = new TreeMap<String, Gauge>();
+  private static long since = System.currentTimeMillis();
+
+  private Metrics() {
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setEnabled(boolean _enabled) {
+    enabled = _enabled;
+  }
+
+  public static synchronized Counter counter(String _name) {
+    Counter counter = counters.get(_name);
+    if(null == counter) {
+      counter = new Counter(_name);
+      counters.put(_name, counter);
+    }
+    return counter;
+  }
+
+  public static synchronized Histogram histogram(String _name, String _unit) {
+    Histogram histogram = histograms.get(_name);
+    if(null == histogram) {
+      histogram = new Histogram(_name, _unit);
+      histograms.put(_name, histogram);
+    }
+    return histogram;
+  }
+
+  /**
+   * A histogram of durations in microseconds, fed by start() and recordSince().
+   */
+  public static Histogram timer(String _name) {
+    return histogram(_name, Histogram.UNIT_MICROS);
+  }
+
+  /**
+   * Register _gauge under _name, replacing any gauge already there.
+   */
+  public static synchronized void gauge(String _name, Gauge _gauge) {
+    gauges.put(_name, _gauge);
+  }
+
+  /**
+   * Register a gauge of the share of lookups that hit, in percent.
+   */
+  public static void ratio(String _name, final Counter _hits, final Counter _misses) {
+    gauge(_name, new Gauge() {
+      public long getValue() {
+        long hits = _hits.get();
+        long total = hits + _misses.get();
+        return 0L == total ? 0L : hits * 100 / total;
+      }
+    });
+  }
+
+  /**
+   * @return a start time for Histogram.recordSince(), or 0 while recording is off
+   */
+  public static long start() {
+    return enabled ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Zero every counter and histogram. Gauges read live values and are kept.
+   */
+  public static synchronized void reset() {
+    for(Counter counter : counters.values()) {
+      counter.reset();
+    }
+    for(Histogram histogram : histograms.values()) {
+      histogram.reset();
+    }
+    since = System.currentTimeMillis();
+  }
+
+  /**
+   * @return when recording began or the metrics were last reset
+   */
+  public static synchronized long getSince() {
+    return since;
+  }
+
+  /**
+   * Everything recorded, for export.
+   */
+  public static synchronized JSONObject toJSON() throws JSONException {
+    JSONObject json = new JSONObject()
+        .put("enabled", enabled)
+        .put("since", since)
+        .put("at", System.currentTimeMillis());
+
+    JSONObject values = new JSONObject();
+    for(Counter counter : counters.values()) {
+      values.put(counter.getName(), counter.get());
+    }
+    json.put("counters", values);
+
+    values = new JSONObject();
+    for(Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+      values.put(gauge.getKey(), gauge.getValue().getValue());
+    }
+    json.put("gauges", values);
+
+    values = new JSONObject();
+    for(Histogram histogram : histograms.values()) {
+      values.put(histogram.getName(), histogram.toJSON());
+    }
+    json.put("histograms", values);
+    return json;
+  }
+
+  /**
+   * Everything recorded, one metric a line, for reading on screen.
+   */
+  public static synchronized String toText() {
+    StringBuilder text = new StringBuilder();
+    for(Counter counter : counters.values()) {
+      text.append(counter.getName()).append(": ").append(counter.get()).append('\n');
+    }
+    for(Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+      text.append(gauge.getKey()).append(": ").append(gauge.getValue().getValue()).append('\n');
+    }
+    for(Histogram histogram : histograms.values()) {
+      text.append(histogram.getName()).append(": ").append(histogram).append('\n');
+    }
+    return text.toString();
+  }
+
+}
@@ -1,5 +1,8 @@
 package com.yammer.v1.models;
 
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 
 abstract class Base implements BaseColumns {
@@ -7,9 +10,57 @@ abstract class Base implements BaseColumns {
   static final String equalClause(String _field, String _value) {
     return _field + "=\"" + _value + '"';
   }
-  
+
   static final String equalClause(String _field, long _value) {
     return _field + "= " + _value;
   }
-  
+
+  static final void bind(SQLiteStatement _stmt, int _index, String _value) {
+    if(null == _value) {
+      _stmt.bindNull(_index);
+    } else {
+      _stmt.bindString(_index, _value);
+    }
+  }
+
+  /**
+   * @return rows changed by the last INSERT, UPDATE or DELETE on this connection
+   */
+  static final int changes(SQLiteDatabase _db) {
+    Cursor c = null;
+    try {
+      c = _db.rawQuery("SELECT changes()", null);
+      c.moveToFirst();
+      return c.getInt(0);
+    } finally {
+      if(null != c) {
+        c.close();
+      }
+    }
+  }
+
+  /**
+   * @return the single number a query such as SELECT COUNT(*) returns, 0 for NULL
+   */
+  static final long queryLong(SQLiteDatabase _db, String _sql, String[] _args) {
+    Cursor c = null;
+    try {
+      c = _db.rawQuery(_sql, _args);
+      c.moveToFirst();
+      return c.getLong(0);
+    } finally {
+      if(null != c) {
+        c.close();
+      }
+    }
+  }
+
+  static final void bind(SQLiteStatement _stmt, int _index, Long _value) {
+    if(null == _value) {
+      _stmt.bindNull(_index);
+    } else {
+      _stmt.bindLong(_index, _value);
+    }
+  }
+
 }
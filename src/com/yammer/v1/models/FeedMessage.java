@@ -0,0 +1,161 @@
+package com.yammer.v1.models;
+
+import com.yammer.v1.G;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+/**
+ * Which stored messages belong to which feed of a network.
+ *
+ * Messages are stored once however many feeds they appear in; a feed's
+ * timeline is its rows here joined to the messages table. The highest
+ * message id per feed is that feed's high-water mark for newer_than.
+ */
+public class FeedMessage extends Base {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  public static final String TABLE_NAME = "feed_messages";
+
+  public static final String FIELD_NETWORK_ID   = "network_id";
+  public static final String FIELD_FEED         = "feed";
+  public static final String FIELD_MESSAGE_ID   = "message_id";
+
+  static SQLiteStatement compileInsert(SQLiteDatabase _db) {
+    return _db.compileStatement(
+        "INSERT OR IGNORE INTO " + TABLE_NAME + " ("
+        + FIELD_NETWORK_ID + ", "
+        + FIELD_FEED + ", "
+        + FIELD_MESSAGE_ID
+        + ") VALUES (?, ?, ?)"
+    );
+  }
+
+  /**
+   * @return the highest message id stored for the feed, 0 if none
+   */
+  public static long getLastMessageId(SQLiteDatabase _db, long _networkId, String _feed) {
+    return getMessageId(_db, "MAX", _networkId, _feed);
+  }
+
+  /**
+   * @return the lowest message id stored for the feed, 0 if none
+   */
+  public static long getFirstMessageId(SQLiteDatabase _db, long _networkId, String _feed) {
+    return getMessageId(_db, "MIN", _networkId, _feed);
+  }
+
+  private static long getMessageId(SQLiteDatabase _db, String _aggregate, long _networkId, String _feed) {
+    Cursor c = null;
+    try {
+      c = _db.query(
+            TABLE_NAME,
+            new String[] {_aggregate + "(" + FIELD_MESSAGE_ID + ")"},
+            FIELD_NETWORK_ID + "=" + _networkId + " AND " + FIELD_FEED + "=?",
+            new String[] {_feed},
+            null, null, null
+          );
+      c.moveToFirst();
+      return c.getLong(0);
+    } finally {
+      if(null != c) {
+        c.close();
+      }
+    }
+  }
+
+  /**
+   * @return every (network id, feed name) pair with stored messages
+   */
+  public static FeedKey[] findFeeds(SQLiteDatabase _db) {
+    Cursor cur = null;
+    try {
+      cur = _db.query(true, TABLE_NAME, new String[] {FIELD_NETWORK_ID, FIELD_FEED}, null, null, null, null, null, null);
+      FeedKey[] feeds = new FeedKey[cur.getCount()];
+      cur.moveToFirst();
+      for (int ii=0 ; ii < feeds.length ; ii++) {
+        feeds[ii] = new FeedKey(cur.getLong(0), cur.getString(1));
+        cur.moveToNext();
+      }
+      return feeds;
+    } finally {
+      if(null != cur) {
+        cur.close();
+      }
+    }
+  }
+
+  public static class FeedKey {
+    public final long networkId;
+    public final String feed;
+
+    FeedKey(long _networkId, String _feed) {
+      this.networkId = _networkId;
+      this.feed = _feed;
+    }
+  }
+
+  /**
+   * @return the message id of the newest message past the first _keep of the feed, 0 if it has no more
+   */
+  public static long getCutoffMessageId(SQLiteDatabase _db, long _networkId, String _feed, int _keep) {
+    Cursor c = null;
+    try {
+      c = _db.rawQuery(
+          "SELECT " + FIELD_MESSAGE_ID + " FROM " + TABLE_NAME
+          + " WHERE " + FIELD_NETWORK_ID + "=" + _networkId + " AND " + FIELD_FEED + "=?"
+          + " ORDER BY " + FIELD_MESSAGE_ID + " DESC LIMIT 1 OFFSET " + _keep,
+          new String[] {_feed}
+        );
+      return c.moveToFirst() ? c.getLong(0) : 0L;
+    } finally {
+      if(null != c) {
+        c.close();
+      }
+    }
+  }
+
+  /**
+   * Drop up to _limit of the feed's messages with ids up to _messageId.
+   *
+   * @return the number dropped
+   */
+  public static int deleteUpTo(SQLiteDatabase _db, long _networkId, String _feed, long _messageId, int _limit) {
+    _db.execSQL(
+        "DELETE FROM " + TABLE_NAME + " WHERE rowid IN (SELECT rowid FROM " + TABLE_NAME
+        + " WHERE " + FIELD_NETWORK_ID + "=" + _networkId + " AND " + FIELD_FEED + "=?"
+        + " AND " + FIELD_MESSAGE_ID + "<=" + _messageId + " LIMIT " + _limit + ")",
+        new Object[] {_feed}
+      );
+    return changes(_db);
+  }
+
+  public static void deleteAll(SQLiteDatabase _db) {
+    if(DEBUG) Log.d(FeedMessage.class.getName(), ".deleteAll()");
+    _db.execSQL("DELETE FROM " + TABLE_NAME);
+  }
+
+  public static void deleteByNetworkId(SQLiteDatabase _db, long _networkId) {
+    _db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + equalClause(FIELD_NETWORK_ID, _networkId));
+  }
+
+  public static void deleteByMessageId(SQLiteDatabase _db, long _messageId) {
+    _db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + equalClause(FIELD_MESSAGE_ID, _messageId));
+  }
+
+  public static void onCreateDB(SQLiteDatabase _db) {
+    if(DEBUG) Log.d(FeedMessage.class.getName(), ".onCreateDB()");
+
+    _db.execSQL( "CREATE TABLE " + TABLE_NAME + " ("
+        + FIELD_NETWORK_ID + " BIGINT NOT NULL, "
+        + FIELD_FEED + " TEXT NOT NULL, "
+        + FIELD_MESSAGE_ID + " BIGINT NOT NULL, "
+        + "PRIMARY KEY (" + FIELD_NETWORK_ID + ", " + FIELD_FEED + ", " + FIELD_MESSAGE_ID + ")"
+        + ");"
+    );
+  }
+
+}
@@ -9,12 +9,13 @@ import org.json.JSONObject;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
+import com.yammer.v1.CreatedAtParser;
 import com.yammer.v1.G;
-import com.yammer.v1.YammerProxy;
 
-public class Message extends Base {
+public class Message extends Base implements Upsert.Row {
 
   private static final boolean DEBUG = G.DEBUG;
 
@@ -73,7 +74,7 @@ public class Message extends Base {
       this.repliedToId = _obj.getLong("replied_to_id");
     }
     this.createdAt = _obj.getString("created_at");
-    this.timestamp = new Date(YammerProxy.parseTime(this.createdAt));
+    this.timestamp = new Date(CreatedAtParser.parseOrNow(this.createdAt));
 
     if(body.has("urls")) {
       JSONArray jsonArray = body.getJSONArray("urls");
@@ -146,6 +147,53 @@ public class Message extends Base {
     return equalClause(FIELD_MESSAGE_ID, messageId);
   }
 
+  /**
+   * Binds in the order of {@link #columns}.
+   */
+  public void bindColumns(SQLiteStatement _stmt) {
+    _stmt.bindLong(1, userId);
+    _stmt.bindLong(2, messageId);
+    bind(_stmt, 3, message);
+    _stmt.bindLong(4, timestamp.getTime());
+    bind(_stmt, 5, senderType);
+    _stmt.bindLong(6, threadId);
+    bind(_stmt, 7, clientType);
+    bind(_stmt, 8, repliedToId);
+    bind(_stmt, 9, createdAt);
+    _stmt.bindLong(10, networkId);
+    _stmt.bindLong(11, deleted ? 1 : 0);
+  }
+
+  public long uniqueKey() {
+    return messageId;
+  }
+
+  static Upsert compileUpsert(SQLiteDatabase _db) {
+    return new Upsert(_db, TABLE_NAME, columns, FIELD_MESSAGE_ID);
+  }
+
+  // What a timeline row shows, selected from messages joined with TIMELINE_JOINS
+  static final String TIMELINE_COLUMNS =
+    "messages._id, messages.message, messages.message_id, messages.timestamp, users.mugshot_url, users.mugshot_md5, users.full_name, users.is_following, users.email, u1.full_name as replyee_full_name, u1.email as replyee_email";
+  static final String TIMELINE_JOINS =
+    "left join users on users.user_id=messages.user_id " +
+    "left join messages as m1 on messages.replied_to_id=m1.message_id " + 
+    "left join users as u1 on u1.user_id=m1.user_id";
+
+  /**
+   * The newest messages of a feed, newest first, with the poster's and
+   * the replyee's names and the poster's avatar.
+   *
+   * @param _limit number of rows to return
+   */
+  public static Cursor findTimeline(SQLiteDatabase _db, long _networkId, String _feed, int _limit) {
+    String sql = 
+      "select " + TIMELINE_COLUMNS + " from feed_messages " + 
+      "join messages on messages.message_id=feed_messages.message_id " +
+      TIMELINE_JOINS + " where feed_messages.network_id=? AND feed_messages.feed=? AND messages.deleted='0' order by feed_messages.message_id desc limit " + _limit;
+    return _db.rawQuery(sql, new String[] {String.valueOf(_networkId), _feed});
+  }
+
   public static long getFirstMessageId(SQLiteDatabase _db, long _networkId) {
     Cursor c = null;
     try {
@@ -182,6 +230,28 @@ public class Message extends Base {
     }
   } 
 
+  /**
+   * @return the newest message id posted before _time, 0 if there is none
+   */
+  public static long getLastMessageIdBefore(SQLiteDatabase _db, long _time) {
+    return queryLong(_db, "SELECT MAX(" + FIELD_MESSAGE_ID + ") FROM " + TABLE_NAME + " WHERE " + FIELD_TIMESTAMP + "<" + _time, null);
+  }
+
+  /**
+   * Delete up to _limit messages that belong to no feed and that no
+   * stored message replies to. Their URLs are left for URL.deleteOrphans().
+   *
+   * @return the number deleted
+   */
+  public static int deleteOrphans(SQLiteDatabase _db, int _limit) {
+    String orphans = "SELECT " + FIELD_MESSAGE_ID + " FROM " + TABLE_NAME
+        + " WHERE " + FIELD_MESSAGE_ID + " NOT IN (SELECT " + FeedMessage.FIELD_MESSAGE_ID + " FROM " + FeedMessage.TABLE_NAME + ")"
+        + " AND " + FIELD_MESSAGE_ID + " NOT IN (SELECT " + FIELD_REPLIED_TO_ID + " FROM " + TABLE_NAME + " WHERE " + FIELD_REPLIED_TO_ID + " IS NOT NULL)"
+        + " LIMIT " + _limit;
+    _db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + FIELD_MESSAGE_ID + " IN (" + orphans + ")");
+    return changes(_db);
+  }
+
   public static Message findById(SQLiteDatabase _db, long _id) {
     Cursor c = null;
     try {
@@ -207,14 +277,17 @@ public class Message extends Base {
     if(DEBUG) Log.d(Message.class.getName(), ".deleteAll()");
     _db.execSQL("DELETE FROM " + TABLE_NAME);
     URL.deleteAll(_db);
+    FeedMessage.deleteAll(_db);
   }
 
   public static void deleteByMessageId(SQLiteDatabase _db, long _messageId) {
     delete(_db, equalClause(FIELD_MESSAGE_ID, _messageId));
+    FeedMessage.deleteByMessageId(_db, _messageId);
   }
 
   public static void deleteByNetworkId(SQLiteDatabase _db, long _networkId) {
     delete(_db, equalClause(FIELD_NETWORK_ID, _networkId));
+    FeedMessage.deleteByNetworkId(_db, _networkId);
   }
   
   public static void delete(SQLiteDatabase _db, String _clauseWithoutWhere) {
@@ -241,6 +314,21 @@ public class Message extends Base {
     
   }
   
+  /**
+   * (network_id, message_id) serves the per-network MIN/MAX lookups and the
+   * timeline's network filter and message_id ordering. user_id serves
+   * searches by sender and the orphaned user check.
+   */
+  public static void createIndexes(SQLiteDatabase _db) {
+    if(DEBUG) Log.d(Message.class.getName(), ".createIndexes()");
+    _db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_network_message ON " 
+        + TABLE_NAME + " (" + FIELD_NETWORK_ID + ", " + FIELD_MESSAGE_ID + ");"
+    );
+    _db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_user ON " 
+        + TABLE_NAME + " (" + FIELD_USER_ID + ");"
+    );
+  }
+  
   public static void onUpgradeDB(SQLiteDatabase _db, int _oldVersion, int _newVersion) {
     if(DEBUG) Log.d(Message.class.getName(), ".onUpgradeDB()");
     _db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
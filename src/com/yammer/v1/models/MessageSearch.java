@@ -0,0 +1,187 @@
+package com.yammer.v1.models;
+
+import java.util.ArrayList;
+
+import com.yammer.v1.G;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Full-text index over the stored messages and their senders' names.
+ *
+ * Two FTS3 tables shadow messages.message and users.full_name, keyed by
+ * message id and user id. Triggers on the base tables keep them current,
+ * so Message.save(), the Upsert used by PageWriter and every delete path
+ * maintain the index without knowing about it.
+ *
+ * Every search term is a prefix, and each must be found either in the
+ * message or in its sender's name.
+ */
+public class MessageSearch extends Base {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  public static final String MESSAGES_TABLE_NAME = "message_search";
+  public static final String USERS_TABLE_NAME = "user_search";
+
+  static final String FIELD_BODY = "body";
+  static final String FIELD_NAME = "name";
+
+  // Further terms add little and each one adds two subqueries
+  static final int MAX_TERMS = 6;
+
+  /**
+   * Search the stored messages of a network, best matches first: messages
+   * whose own text holds every term, then the ones matched partly through
+   * the sender's name, each newest first.
+   *
+   * @return timeline rows as Message.findTimeline() gives them, or null if _query has no terms
+   */
+  public static Cursor search(SQLiteDatabase _db, String _query, long _networkId, int _limit) {
+    String[] terms = toTerms(_query);
+    if(0 == terms.length) {
+      return null;
+    }
+    if( ! isAvailable(_db)) {
+      return searchWithoutIndex(_db, terms, _networkId, _limit);
+    }
+
+    StringBuilder all = new StringBuilder();
+    for(int ii=0; ii < terms.length ;ii++) {
+      all.append(0 == ii ? "" : " ").append(terms[ii]).append('*');
+    }
+
+    ArrayList<String> args = new ArrayList<String>();
+    StringBuilder sql = new StringBuilder();
+    sql.append("select ").append(Message.TIMELINE_COLUMNS)
+       .append(", messages.message_id in (select docid from " + MESSAGES_TABLE_NAME + " where " + MESSAGES_TABLE_NAME + " match ?) as in_body")
+       .append(" from messages ").append(Message.TIMELINE_JOINS)
+       .append(" where messages.network_id=? AND messages.deleted='0'");
+    args.add(all.toString());
+    args.add(String.valueOf(_networkId));
+
+    // The first term picks the candidates through the indexes, the rest filter them
+    sql.append(" AND messages.message_id in (select docid from " + MESSAGES_TABLE_NAME + " where " + MESSAGES_TABLE_NAME + " match ?"
+        + " union select message_id from messages where user_id in (select docid from " + USERS_TABLE_NAME + " where " + USERS_TABLE_NAME + " match ?))");
+    args.add(terms[0] + '*');
+    args.add(terms[0] + '*');
+    for(int ii=1; ii < terms.length ;ii++) {
+      sql.append(" AND (messages.message_id in (select docid from " + MESSAGES_TABLE_NAME + " where " + MESSAGES_TABLE_NAME + " match ?)"
+          + " OR messages.user_id in (select docid from " + USERS_TABLE_NAME + " where " + USERS_TABLE_NAME + " match ?))");
+      args.add(terms[ii] + '*');
+      args.add(terms[ii] + '*');
+    }
+    sql.append(" order by in_body desc, messages.message_id desc limit ").append(_limit);
+
+    return _db.rawQuery(sql.toString(), args.toArray(new String[args.size()]));
+  }
+
+  /**
+   * Same matching by LIKE, for a platform SQLite built without FTS3.
+   */
+  private static Cursor searchWithoutIndex(SQLiteDatabase _db, String[] _terms, long _networkId, int _limit) {
+    ArrayList<String> args = new ArrayList<String>();
+    StringBuilder sql = new StringBuilder();
+    sql.append("select ").append(Message.TIMELINE_COLUMNS)
+       .append(" from messages ").append(Message.TIMELINE_JOINS)
+       .append(" where messages.network_id=? AND messages.deleted='0'");
+    args.add(String.valueOf(_networkId));
+    for(int ii=0; ii < _terms.length ;ii++) {
+      sql.append(" AND (messages.message like ? OR users.full_name like ?)");
+      args.add('%' + _terms[ii] + '%');
+      args.add('%' + _terms[ii] + '%');
+    }
+    sql.append(" order by messages.message_id desc limit ").append(_limit);
+    return _db.rawQuery(sql.toString(), args.toArray(new String[args.size()]));
+  }
+
+  /**
+   * Split what the user typed into bare words. Anything FTS would read as
+   * syntax (quotes, *, -, :, parentheses) separates words, and the words
+   * are lower case so AND, OR and NEAR are never operators.
+   */
+  static String[] toTerms(String _query) {
+    ArrayList<String> terms = new ArrayList<String>();
+    if(null == _query) {
+      return new String[0];
+    }
+    String query = _query.toLowerCase();
+    int start = -1;
+    for(int ii=0; ii <= query.length() && terms.size() < MAX_TERMS ;ii++) {
+      boolean word = ii < query.length() && Character.isLetterOrDigit(query.charAt(ii));
+      if(word && -1 == start) {
+        start = ii;
+      } else if( ! word && -1 != start) {
+        terms.add(query.substring(start, ii));
+        start = -1;
+      }
+    }
+    return terms.toArray(new String[terms.size()]);
+  }
+
+  /**
+   * @return whether the index tables exist
+   */
+  static boolean isAvailable(SQLiteDatabase _db) {
+    return 0 < queryLong(_db, "SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name=?", new String[] {MESSAGES_TABLE_NAME});
+  }
+
+  /**
+   * Create the index tables and the triggers maintaining them. Rows
+   * already stored are not indexed; see rebuild().
+   */
+  public static void onCreateDB(SQLiteDatabase _db) {
+    if(DEBUG) Log.d(MessageSearch.class.getName(), ".onCreateDB()");
+    try {
+      _db.execSQL("CREATE VIRTUAL TABLE " + MESSAGES_TABLE_NAME + " USING fts3(" + FIELD_BODY + ")");
+      _db.execSQL("CREATE VIRTUAL TABLE " + USERS_TABLE_NAME + " USING fts3(" + FIELD_NAME + ")");
+    } catch(SQLException e) {
+      if(DEBUG) Log.w(MessageSearch.class.getName(), "No full-text search: " + e.getMessage());
+      _db.execSQL("DROP TABLE IF EXISTS " + MESSAGES_TABLE_NAME);
+      _db.execSQL("DROP TABLE IF EXISTS " + USERS_TABLE_NAME);
+      return;
+    }
+
+    createTriggers(_db, Message.TABLE_NAME, Message.FIELD_MESSAGE_ID, Message.FIELD_MESSAGE, MESSAGES_TABLE_NAME, FIELD_BODY);
+    createTriggers(_db, User.TABLE_NAME, User.FIELD_USER_ID, User.FIELD_FULL_NAME, USERS_TABLE_NAME, FIELD_NAME);
+  }
+
+  /**
+   * Keep _index (docid, _indexField) a copy of _table (_key, _field).
+   * Upserts rewrite every column, so updates only touch the index when
+   * the text actually changed.
+   */
+  private static void createTriggers(SQLiteDatabase _db, String _table, String _key, String _field, String _index, String _indexField) {
+    _db.execSQL("CREATE TRIGGER " + _index + "_insert AFTER INSERT ON " + _table + " BEGIN"
+        + " INSERT INTO " + _index + " (docid, " + _indexField + ") VALUES (NEW." + _key + ", coalesce(NEW." + _field + ", ''));"
+        + " END");
+    _db.execSQL("CREATE TRIGGER " + _index + "_update AFTER UPDATE OF " + _field + " ON " + _table
+        + " WHEN coalesce(OLD." + _field + ", '') <> coalesce(NEW." + _field + ", '') BEGIN"
+        + " UPDATE " + _index + " SET " + _indexField + "=coalesce(NEW." + _field + ", '') WHERE docid=NEW." + _key + ";"
+        + " END");
+    _db.execSQL("CREATE TRIGGER " + _index + "_delete AFTER DELETE ON " + _table + " BEGIN"
+        + " DELETE FROM " + _index + " WHERE docid=OLD." + _key + ";"
+        + " END");
+  }
+
+  /**
+   * Index every stored message and user from scratch.
+   */
+  public static void rebuild(SQLiteDatabase _db) {
+    if( ! isAvailable(_db)) {
+      return;
+    }
+    long started = System.currentTimeMillis();
+    _db.execSQL("DELETE FROM " + MESSAGES_TABLE_NAME);
+    _db.execSQL("DELETE FROM " + USERS_TABLE_NAME);
+    _db.execSQL("INSERT INTO " + MESSAGES_TABLE_NAME + " (docid, " + FIELD_BODY + ")"
+        + " SELECT " + Message.FIELD_MESSAGE_ID + ", " + Message.FIELD_MESSAGE + " FROM " + Message.TABLE_NAME);
+    _db.execSQL("INSERT INTO " + USERS_TABLE_NAME + " (docid, " + FIELD_NAME + ")"
+        + " SELECT " + User.FIELD_USER_ID + ", coalesce(" + User.FIELD_FULL_NAME + ", '') FROM " + User.TABLE_NAME);
+    if(DEBUG) Log.d(MessageSearch.class.getName(), ".rebuild() took " + (System.currentTimeMillis() - started) + "ms");
+  }
+
+}
@@ -23,6 +23,8 @@ public class Network extends Base {
   public static final String FIELD_ACCESS_TOKEN         = "access_token";
   public static final String FIELD_ACCESS_TOKEN_SECRET  = "access_token_secret";
   public static final String FIELD_LAST_MESSAGE_ID      = "last_message_id";
+  public static final String FIELD_UNREAD_COUNT         = "unread_count";
+  public static final String FIELD_SYNCED_AT            = "synced_at";
 
   private static final String[] columns = new String[] {
                                             FIELD_NETWORK_ID,
@@ -32,6 +34,8 @@ public class Network extends Base {
                                             FIELD_ACCESS_TOKEN,
                                             FIELD_ACCESS_TOKEN_SECRET,
                                             FIELD_LAST_MESSAGE_ID,
+                                            FIELD_UNREAD_COUNT,
+                                            FIELD_SYNCED_AT,
                                           };
     
 
@@ -42,6 +46,10 @@ public class Network extends Base {
   public String accessToken;
   public String accessTokenSecret;
   public long lastMessageId = 0L;
+  // Messages from others that arrived while the user was in another network
+  public int unreadCount = 0;
+  // When the network was last synced, 0 for never
+  public long syncedAt = 0L;
 
   public Network(Cursor _cur) {
     this.networkId = _cur.getLong(_cur.getColumnIndex(FIELD_NETWORK_ID));
@@ -51,6 +59,8 @@ public class Network extends Base {
     this.accessToken = _cur.getString(_cur.getColumnIndex(FIELD_ACCESS_TOKEN));
     this.accessTokenSecret = _cur.getString(_cur.getColumnIndex(FIELD_ACCESS_TOKEN_SECRET));
     this.lastMessageId = _cur.getLong(_cur.getColumnIndex(FIELD_LAST_MESSAGE_ID));
+    this.unreadCount = _cur.getInt(_cur.getColumnIndex(FIELD_UNREAD_COUNT));
+    this.syncedAt = _cur.getLong(_cur.getColumnIndex(FIELD_SYNCED_AT));
   }
 
   public Network(JSONObject _json) throws JSONException {
@@ -93,6 +103,8 @@ public class Network extends Base {
     values.put(FIELD_ACCESS_TOKEN, accessToken);
     values.put(FIELD_ACCESS_TOKEN_SECRET, accessTokenSecret);
     values.put(FIELD_LAST_MESSAGE_ID, lastMessageId);
+    values.put(FIELD_UNREAD_COUNT, unreadCount);
+    values.put(FIELD_SYNCED_AT, syncedAt);
 
     return values;
   }
@@ -132,6 +144,23 @@ public class Network extends Base {
   }
   
 
+  /**
+   * Record a finished background sync. The count is added in SQL so
+   * concurrent syncs can't overwrite each other.
+   */
+  public static void recordSync(SQLiteDatabase _db, long _networkId, int _unread, long _syncedAt) {
+    _db.execSQL(
+        "UPDATE " + TABLE_NAME + " SET "
+        + FIELD_UNREAD_COUNT + "=" + FIELD_UNREAD_COUNT + "+" + _unread + ", "
+        + FIELD_SYNCED_AT + "=" + _syncedAt
+        + " WHERE " + equalClause(FIELD_NETWORK_ID, _networkId)
+    );
+  }
+
+  public static void clearUnread(SQLiteDatabase _db, long _networkId) {
+    _db.execSQL("UPDATE " + TABLE_NAME + " SET " + FIELD_UNREAD_COUNT + "=0 WHERE " + equalClause(FIELD_NETWORK_ID, _networkId));
+  }
+
   public static void deleteAll(SQLiteDatabase _db) {
     if(DEBUG) Log.d(Network.class.getName(), ".deleteAll()");
     _db.execSQL("DELETE FROM " + TABLE_NAME);
@@ -152,10 +181,18 @@ public class Network extends Base {
         + FIELD_WEB_URL + " TEXT, "
         + FIELD_ACCESS_TOKEN + " TEXT, "
         + FIELD_ACCESS_TOKEN_SECRET + " TEXT, "
-        + FIELD_LAST_MESSAGE_ID + " BIGINT"
+        + FIELD_LAST_MESSAGE_ID + " BIGINT, "
+        + FIELD_UNREAD_COUNT + " INTEGER DEFAULT 0, "
+        + FIELD_SYNCED_AT + " BIGINT DEFAULT 0"
         + ");"
     );
   }
+
+  public static void addSyncState(SQLiteDatabase _db) {
+    if(DEBUG) Log.d(Network.class.getName(), ".addSyncState()");
+    _db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + FIELD_UNREAD_COUNT + " INTEGER DEFAULT 0");
+    _db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + FIELD_SYNCED_AT + " BIGINT DEFAULT 0");
+  }
   
   public static void onUpgradeDB(SQLiteDatabase _db, int _oldVersion, int _newVersion) {
     if(DEBUG) Log.d(Network.class.getName(), ".onUpgradeDB()");
@@ -0,0 +1,182 @@
+package com.yammer.v1.models;
+
+import com.yammer.v1.G;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * A change waiting to be sent to the server: a post, a reply or a follow
+ * toggle. Items are sent strictly in insertion order.
+ */
+public class OutboxItem extends Base {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  public static final String TABLE_NAME = "outbox";
+
+  public static final String ACTION_POST     = "post";
+  public static final String ACTION_FOLLOW   = "follow";
+  public static final String ACTION_UNFOLLOW = "unfollow";
+
+  public static final String FIELD_NETWORK_ID       = "network_id";
+  public static final String FIELD_ACTION           = "action";
+  public static final String FIELD_BODY             = "body";
+  public static final String FIELD_TARGET_ID        = "target_id";
+  public static final String FIELD_ATTEMPTS         = "attempts";
+  public static final String FIELD_NEXT_ATTEMPT_AT  = "next_attempt_at";
+
+  private static final String[] columns = new String[] {
+                                            _ID,
+                                            FIELD_NETWORK_ID,
+                                            FIELD_ACTION,
+                                            FIELD_BODY,
+                                            FIELD_TARGET_ID,
+                                            FIELD_ATTEMPTS,
+                                            FIELD_NEXT_ATTEMPT_AT,
+                                          };
+
+  public long id = 0L;
+  public long networkId;
+  public String action;
+  // Message text for posts
+  public String body;
+  // Replied-to message for posts (0 for none), user for follow toggles
+  public long targetId;
+  public int attempts = 0;
+  public long nextAttemptAt = 0L;
+
+  public OutboxItem(long _networkId, String _action, String _body, long _targetId) {
+    this.networkId = _networkId;
+    this.action = _action;
+    this.body = _body;
+    this.targetId = _targetId;
+  }
+
+  public OutboxItem(Cursor _cur) {
+    this.id = _cur.getLong(_cur.getColumnIndex(_ID));
+    this.networkId = _cur.getLong(_cur.getColumnIndex(FIELD_NETWORK_ID));
+    this.action = _cur.getString(_cur.getColumnIndex(FIELD_ACTION));
+    this.body = _cur.getString(_cur.getColumnIndex(FIELD_BODY));
+    this.targetId = _cur.getLong(_cur.getColumnIndex(FIELD_TARGET_ID));
+    this.attempts = _cur.getInt(_cur.getColumnIndex(FIELD_ATTEMPTS));
+    this.nextAttemptAt = _cur.getLong(_cur.getColumnIndex(FIELD_NEXT_ATTEMPT_AT));
+  }
+
+  public boolean isFollowToggle() {
+    return ACTION_FOLLOW.equals(action) || ACTION_UNFOLLOW.equals(action);
+  }
+
+  private ContentValues toValues() {
+    ContentValues values = new ContentValues();
+
+    values.put(FIELD_NETWORK_ID, networkId);
+    values.put(FIELD_ACTION, action);
+    values.put(FIELD_BODY, body);
+    values.put(FIELD_TARGET_ID, targetId);
+    values.put(FIELD_ATTEMPTS, attempts);
+    values.put(FIELD_NEXT_ATTEMPT_AT, nextAttemptAt);
+
+    return values;
+  }
+
+  public OutboxItem save(SQLiteDatabase _db) {
+    ContentValues values = toValues();
+
+    if(0 != id && 0 != _db.update(TABLE_NAME, values, equalClause(_ID, id), null)) {
+      if(DEBUG) Log.d(getClass().getName(), "Updated OutboxItem: " + id);
+    } else {
+      this.id = _db.insert(TABLE_NAME, null, values);
+      if(DEBUG) Log.d(getClass().getName(), "Added OutboxItem: " + id + " " + action);
+    }
+
+    return this;
+  }
+
+  /**
+   * @return the oldest item for the network, or null when there is nothing to send
+   */
+  public static OutboxItem findFirst(SQLiteDatabase _db, long _networkId) {
+    Cursor cur = null;
+    try {
+      cur = _db.query(TABLE_NAME, columns, equalClause(FIELD_NETWORK_ID, _networkId), null, null, null, _ID, "1");
+      if(0 == cur.getCount()) return null;
+      cur.moveToFirst();
+
+      return new OutboxItem(cur);
+    } finally {
+      if(null != cur) {
+        cur.close();
+      }
+    }
+  }
+
+  /**
+   * @return the pending follow toggles for a user, oldest first
+   */
+  public static OutboxItem[] findFollowToggles(SQLiteDatabase _db, long _networkId, long _userId) {
+    Cursor cur = null;
+    try {
+      cur = _db.query(
+                      TABLE_NAME,
+                      columns,
+                      equalClause(FIELD_NETWORK_ID, _networkId)
+                        + " AND " + equalClause(FIELD_TARGET_ID, _userId)
+                        + " AND " + FIELD_ACTION + " IN (\"" + ACTION_FOLLOW + "\", \"" + ACTION_UNFOLLOW + "\")",
+                      null, null, null,
+                      _ID
+                   );
+      OutboxItem[] items = new OutboxItem[cur.getCount()];
+      cur.moveToFirst();
+      for (int ii=0 ; ii < items.length ; ii++) {
+        items[ii] = new OutboxItem(cur);
+        cur.moveToNext();
+      }
+
+      return items;
+    } finally {
+      if(null != cur) {
+        cur.close();
+      }
+    }
+  }
+
+  public static int count(SQLiteDatabase _db) {
+    Cursor cur = null;
+    try {
+      cur = _db.rawQuery("SELECT COUNT(*) FROM " + TABLE_NAME, null);
+      cur.moveToFirst();
+      return cur.getInt(0);
+    } finally {
+      if(null != cur) {
+        cur.close();
+      }
+    }
+  }
+
+  public static void delete(SQLiteDatabase _db, long _id) {
+    _db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + equalClause(_ID, _id));
+  }
+
+  public static void deleteByNetworkId(SQLiteDatabase _db, long _networkId) {
+    _db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + equalClause(FIELD_NETWORK_ID, _networkId));
+  }
+
+  public static void onCreateDB(SQLiteDatabase _db) {
+    if(DEBUG) Log.d(OutboxItem.class.getName(), ".onCreateDB()");
+
+    _db.execSQL( "CREATE TABLE " + TABLE_NAME +" ("
+        + _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+        + FIELD_NETWORK_ID + " BIGINT NOT NULL, "
+        + FIELD_ACTION + " TEXT NOT NULL, "
+        + FIELD_BODY + " TEXT, "
+        + FIELD_TARGET_ID + " BIGINT, "
+        + FIELD_ATTEMPTS + " INTEGER DEFAULT 0, "
+        + FIELD_NEXT_ATTEMPT_AT + " BIGINT DEFAULT 0"
+        + ");"
+    );
+  }
+
+}
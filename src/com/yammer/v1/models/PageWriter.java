@@ -0,0 +1,139 @@
+package com.yammer.v1.models;
+
+import java.util.ArrayList;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.yammer.v1.G;
+import com.yammer.v1.metrics.Counter;
+import com.yammer.v1.metrics.Histogram;
+import com.yammer.v1.metrics.Metrics;
+
+/**
+ * Writes users, messages and their URLs through precompiled statements.
+ *
+ * The caller owns the transaction; a PageWriter only saves the per-row
+ * SQL compilation that Model.save() pays on every call.
+ *
+ * Messages written for a feed are also recorded as members of that feed.
+ *
+ * Users already in the UserCache with the same content are not written
+ * again. Users that were written go into the cache on publishUsers(),
+ * which the caller makes once the transaction has succeeded.
+ */
+public class PageWriter {
+
+  private static final boolean DEBUG = G.DEBUG;
+
+  private static final Histogram USER_WRITE_TIME = Metrics.timer("data.user_write");
+  // A message with its URLs and feed membership
+  private static final Histogram MESSAGE_WRITE_TIME = Metrics.timer("data.message_write");
+  private static final Counter ROWS_WRITTEN = Metrics.counter("data.rows_written");
+  private static final Counter USERS_UNCHANGED = Metrics.counter("data.users_unchanged");
+
+  private final long networkId;
+  private final String feed;
+  private final UserCache userCache;
+  private final ArrayList<User> usersWritten = new ArrayList<User>();
+
+  private final Upsert users;
+  private final Upsert messages;
+  private final SQLiteStatement deleteURLs;
+  private final SQLiteStatement insertURL;
+  private final SQLiteStatement insertFeedMessage;
+
+  private int rowsWritten = 0;
+
+  /**
+   * @param _feed name of the feed the page was fetched from, or null
+   */
+  public PageWriter(SQLiteDatabase _db, long _networkId, String _feed, UserCache _userCache) {
+    this.networkId = _networkId;
+    this.feed = _feed;
+    this.userCache = _userCache;
+    this.users = User.compileUpsert(_db);
+    this.messages = Message.compileUpsert(_db);
+    this.deleteURLs = URL.compileDeleteByMessage(_db);
+    this.insertURL = URL.compileInsert(_db);
+    this.insertFeedMessage = null == _feed ? null : FeedMessage.compileInsert(_db);
+  }
+
+  public User addUser(JSONObject _json) throws JSONException {
+    User user = userCache.getIfCurrent(_json.getLong("id"), User.contentHash(_json, false));
+    if(null != user) {
+      USERS_UNCHANGED.inc();
+      return user;
+    }
+    long started = Metrics.start();
+    user = new User(_json, false);
+    users.execute(user);
+    usersWritten.add(user);
+    rowsWritten++;
+    ROWS_WRITTEN.inc();
+    USER_WRITE_TIME.recordSince(started);
+    return user;
+  }
+
+  /**
+   * Add the users written so far to the cache. Only call once they are committed.
+   */
+  public void publishUsers() {
+    for(int ii=0; ii < usersWritten.size() ;ii++) {
+      userCache.put(usersWritten.get(ii));
+    }
+    usersWritten.clear();
+  }
+
+  public Message addMessage(JSONObject _json) throws JSONException {
+    long started = Metrics.start();
+    int rowsBefore = rowsWritten;
+    Message message = new Message(_json, networkId);
+    messages.execute(message);
+    rowsWritten++;
+
+    // A message's URL list is replaced as a whole; there is no per-URL key.
+    deleteURLs.bindLong(1, message.messageId);
+    deleteURLs.bindLong(2, message.networkId);
+    deleteURLs.execute();
+    if(null != message.urls) {
+      for(int ii=0; ii < message.urls.length ;ii++) {
+        message.urls[ii].bindColumns(insertURL);
+        insertURL.execute();
+        rowsWritten++;
+      }
+    }
+
+    if(null != insertFeedMessage) {
+      insertFeedMessage.bindLong(1, networkId);
+      insertFeedMessage.bindString(2, feed);
+      insertFeedMessage.bindLong(3, message.messageId);
+      insertFeedMessage.execute();
+      rowsWritten++;
+    }
+
+    ROWS_WRITTEN.add(rowsWritten - rowsBefore);
+    MESSAGE_WRITE_TIME.recordSince(started);
+    if(DEBUG) Log.d(getClass().getName(), "Wrote message: " + message.messageId);
+    return message;
+  }
+
+  public int getRowsWritten() {
+    return rowsWritten;
+  }
+
+  public void close() {
+    users.close();
+    messages.close();
+    deleteURLs.close();
+    insertURL.close();
+    if(null != insertFeedMessage) {
+      insertFeedMessage.close();
+    }
+  }
+
+}
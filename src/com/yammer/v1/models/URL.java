@@ -2,6 +2,7 @@ package com.yammer.v1.models;
 
 import android.content.ContentValues;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.yammer.v1.G;
@@ -60,6 +61,43 @@ public class URL extends Base {
     return values;
   }
   
+  static SQLiteStatement compileDeleteByMessage(SQLiteDatabase _db) {
+    return _db.compileStatement(
+        "DELETE FROM " + TABLE_NAME + " WHERE " + FIELD_MESSAGE_ID + "=? AND " + FIELD_NETWORK_ID + "=?"
+    );
+  }
+
+  static SQLiteStatement compileInsert(SQLiteDatabase _db) {
+    return _db.compileStatement(
+        "INSERT INTO " + TABLE_NAME + " (" 
+        + FIELD_MESSAGE_ID + ", " 
+        + FIELD_NETWORK_ID + ", " 
+        + FIELD_URL + ", " 
+        + FIELD_TITLE + ", " 
+        + FIELD_FAVICON_ID 
+        + ") VALUES (?, ?, ?, ?, ?)"
+    );
+  }
+
+  void bindColumns(SQLiteStatement _stmt) {
+    _stmt.bindLong(1, messageId);
+    _stmt.bindLong(2, networkId);
+    bind(_stmt, 3, url);
+    bind(_stmt, 4, title);
+    bind(_stmt, 5, faviconId);
+  }
+  
+  /**
+   * Delete URLs whose message is gone.
+   *
+   * @return the number deleted
+   */
+  public static int deleteOrphans(SQLiteDatabase _db) {
+    _db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + FIELD_MESSAGE_ID
+        + " NOT IN (SELECT " + Message.FIELD_MESSAGE_ID + " FROM " + Message.TABLE_NAME + ")");
+    return changes(_db);
+  }
+
   public static void deleteAll(SQLiteDatabase _db) {
     if(DEBUG) Log.d(URL.class.getName(), ".deleteAll()");
     _db.execSQL("DELETE FROM " + TABLE_NAME);
@@ -79,6 +117,13 @@ public class URL extends Base {
     );
   }
   
+  public static void createIndexes(SQLiteDatabase _db) {
+    if(DEBUG) Log.d(URL.class.getName(), ".createIndexes()");
+    _db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_message ON " 
+        + TABLE_NAME + " (" + FIELD_MESSAGE_ID + ", " + FIELD_NETWORK_ID + ");"
+    );
+  }
+  
   public static void onUpgradeDB(SQLiteDatabase _db, int _oldVersion, int _newVersion) {
     if(DEBUG) Log.d(URL.class.getName(), ".onUpgradeDB()");
     _db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
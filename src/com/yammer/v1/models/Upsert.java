@@ -0,0 +1,60 @@
+package com.yammer.v1.models;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Precompiled "UPDATE, then INSERT OR IGNORE" pair for a table with a unique key.
+ *
+ * The SQLite shipped with the platform predates ON CONFLICT DO UPDATE, and
+ * INSERT OR REPLACE would hand out a new _id for every rewritten row.
+ */
+class Upsert {
+
+  interface Row {
+    /**
+     * Bind the row's values to parameters 1..n, in the column order the Upsert was built with.
+     */
+    void bindColumns(SQLiteStatement _stmt);
+    long uniqueKey();
+  }
+
+  private final SQLiteStatement update;
+  private final SQLiteStatement insert;
+  private final int keyIndex;
+
+  Upsert(SQLiteDatabase _db, String _table, String[] _columns, String _key) {
+    StringBuilder assignments = new StringBuilder();
+    StringBuilder names = new StringBuilder();
+    StringBuilder params = new StringBuilder();
+    for(int ii=0; ii < _columns.length ;ii++) {
+      if(0 < ii) {
+        assignments.append(", ");
+        names.append(", ");
+        params.append(", ");
+      }
+      assignments.append(_columns[ii]).append("=?");
+      names.append(_columns[ii]);
+      params.append('?');
+    }
+
+    this.update = _db.compileStatement("UPDATE " + _table + " SET " + assignments + " WHERE " + _key + "=?");
+    this.insert = _db.compileStatement("INSERT OR IGNORE INTO " + _table + " (" + names + ") VALUES (" + params + ")");
+    this.keyIndex = _columns.length + 1;
+  }
+
+  void execute(Row _row) {
+    _row.bindColumns(update);
+    update.bindLong(keyIndex, _row.uniqueKey());
+    update.execute();
+
+    _row.bindColumns(insert);
+    insert.execute();
+  }
+
+  void close() {
+    update.close();
+    insert.close();
+  }
+
+}
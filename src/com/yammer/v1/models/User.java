@@ -1,5 +1,7 @@
 package com.yammer.v1.models;
 
+import java.util.HashSet;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -12,6 +14,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 /**
@@ -19,7 +22,7 @@ import android.util.Log;
  * 
  * @author ss
  */
-public class User extends Base {
+public class User extends Base implements Upsert.Row {
   
   private static final boolean DEBUG = G.DEBUG;
 
@@ -38,6 +41,20 @@ public class User extends Base {
   public static final String FIELD_URL                = "url";
   public static final String FIELD_WEB_URL            = "web_url";
   public static final String FIELD_IS_FOLLOWING       = "is_following";
+
+  private static final String[] columns = new String[] {
+    FIELD_NETWORK_ID,
+    FIELD_USER_ID,
+    FIELD_NAME,
+    FIELD_FULL_NAME,
+    FIELD_TITLE,
+    FIELD_MUGSHOT_URL,
+    FIELD_MUGSHOT_MD5,
+    FIELD_WEB_URL,
+    FIELD_URL,
+    FIELD_EMAIL,
+    FIELD_IS_FOLLOWING,
+  };
   
   public long networkId;
   public long userId;
@@ -98,7 +115,7 @@ public class User extends Base {
     }
   }
 
-  private String getEmailAddress(JSONObject _user, String _type) {
+  private static String getEmailAddress(JSONObject _user, String _type) {
     try {
       JSONArray addresses = _user.getJSONObject("contact").getJSONArray("email_addresses");
       for(int ii=0; ii < addresses.length() ;ii++) {
@@ -111,6 +128,72 @@ public class User extends Base {
     return null;
   }
   
+  /**
+   * @return a hash of everything save() writes for the user
+   */
+  long contentHash() {
+    return contentHash(networkId, userId, name, fullName, title, mugshotURL, webURL, url, email, following);
+  }
+
+  /**
+   * The contentHash() a User built from _json would have, without building
+   * it. The avatar's md5 is left out as it follows from its URL.
+   */
+  static long contentHash(JSONObject _json, boolean _following) throws JSONException {
+    return contentHash(
+        _json.optLong("network_id"),
+        _json.getLong("id"),
+        _json.getString("name"),
+        _json.getString("full_name"),
+        _json.getString("job_title"),
+        _json.getString("mugshot_url"),
+        _json.getString("web_url"),
+        _json.getString("url"),
+        getEmailAddress(_json, "primary"),
+        _following
+      );
+  }
+
+  private static long contentHash(long _networkId, long _userId, String _name, String _fullName, String _title,
+      String _mugshotURL, String _webURL, String _url, String _email, boolean _following) {
+    long hash = FNV_OFFSET;
+    hash = hash(hash, _networkId);
+    hash = hash(hash, _userId);
+    hash = hash(hash, _name);
+    hash = hash(hash, _fullName);
+    hash = hash(hash, _title);
+    hash = hash(hash, _mugshotURL);
+    hash = hash(hash, _webURL);
+    hash = hash(hash, _url);
+    hash = hash(hash, _email);
+    return hash(hash, _following ? 1 : 0);
+  }
+
+  // 64-bit FNV-1a
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private static long hash(long _hash, long _value) {
+    for(int ii=0; ii < 8 ;ii++) {
+      _hash = (_hash ^ (_value & 0xff)) * FNV_PRIME;
+      _value >>>= 8;
+    }
+    return _hash;
+  }
+
+  private static long hash(long _hash, String _value) {
+    if(null == _value) {
+      return hash(_hash, -1L);
+    }
+    for(int ii=0; ii < _value.length() ;ii++) {
+      char c = _value.charAt(ii);
+      _hash = (_hash ^ (c & 0xff)) * FNV_PRIME;
+      _hash = (_hash ^ (c >>> 8)) * FNV_PRIME;
+    }
+    // Ends the field, so "ab","c" and "a","bc" differ
+    return hash(_hash, (long)_value.length());
+  }
+
   private ContentValues toValues() {
     ContentValues values = new ContentValues();
     
@@ -145,11 +228,83 @@ public class User extends Base {
   private String keyClause() {
     return equalClause(FIELD_USER_ID, userId);
   }
+
+  /**
+   * Binds in the order of {@link #columns}.
+   */
+  public void bindColumns(SQLiteStatement _stmt) {
+    _stmt.bindLong(1, this.networkId);
+    _stmt.bindLong(2, this.userId);
+    bind(_stmt, 3, this.name);
+    bind(_stmt, 4, this.fullName);
+    bind(_stmt, 5, this.title);
+    bind(_stmt, 6, this.mugshotURL);
+    bind(_stmt, 7, this.mugshotMD5);
+    bind(_stmt, 8, this.webURL);
+    bind(_stmt, 9, this.url);
+    bind(_stmt, 10, this.email);
+    _stmt.bindLong(11, this.following ? 1 : 0);
+  }
+
+  public long uniqueKey() {
+    return this.userId;
+  }
+
+  static Upsert compileUpsert(SQLiteDatabase _db) {
+    return new Upsert(_db, TABLE_NAME, columns, FIELD_USER_ID);
+  }
   
+  /**
+   * @return the stored user, or null if there is none
+   */
+  public static User findByUserId(SQLiteDatabase _db, long _userId) {
+    Cursor cur = null;
+    try {
+      cur = _db.query(TABLE_NAME, null, equalClause(FIELD_USER_ID, _userId), null, null, null, null);
+      return cur.moveToFirst() ? new User(cur) : null;
+    } finally {
+      if(null != cur) {
+        cur.close();
+      }
+    }
+  }
+
   public static User create(SQLiteDatabase _db, JSONObject _obj, boolean _following) throws JSONException, SQLiteConstraintException {
     return new User(_obj, _following).save(_db);
   }
   
+  /**
+   * Delete users who posted none of the stored messages, unless followed
+   * or signed in to one of the networks.
+   *
+   * @return the number deleted
+   */
+  public static int deleteOrphans(SQLiteDatabase _db) {
+    _db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE " + FIELD_IS_FOLLOWING + "=0"
+        + " AND " + FIELD_USER_ID + " NOT IN (SELECT " + Message.FIELD_USER_ID + " FROM " + Message.TABLE_NAME + " WHERE " + Message.FIELD_USER_ID + " IS NOT NULL)"
+        + " AND " + FIELD_USER_ID + " NOT IN (SELECT " + Network.FIELD_USER_ID + " FROM " + Network.TABLE_NAME + ")");
+    return changes(_db);
+  }
+
+  /**
+   * @return the avatar file names still in use
+   */
+  public static HashSet<String> findMugshotMd5s(SQLiteDatabase _db) {
+    Cursor cur = null;
+    try {
+      cur = _db.query(true, TABLE_NAME, new String[] {FIELD_MUGSHOT_MD5}, FIELD_MUGSHOT_MD5 + " IS NOT NULL", null, null, null, null, null);
+      HashSet<String> md5s = new HashSet<String>(cur.getCount() * 2);
+      for(boolean more = cur.moveToFirst(); more ;more = cur.moveToNext()) {
+        md5s.add(cur.getString(0));
+      }
+      return md5s;
+    } finally {
+      if(null != cur) {
+        cur.close();
+      }
+    }
+  }
+
   public static void deleteAll(SQLiteDatabase _db) {
     if(DEBUG) Log.d(User.class.getName(), ".deleteAll()");
     _db.execSQL("DELETE FROM " + TABLE_NAME);
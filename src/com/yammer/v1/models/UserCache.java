@@ -0,0 +1,84 @@
+package com.yammer.v1.models;
+
+import com.yammer.v1.LongLruCache;
+import com.yammer.v1.metrics.Counter;
+import com.yammer.v1.metrics.Metrics;
+
+/**
+ * The most recently used users by user id, each with the contentHash() of
+ * what is stored for it.
+ *
+ * A reference to a user whose hash matches needs no database write, and a
+ * lookup that hits needs no query. An entry is only added once its row is
+ * committed, and anything that changes users other than by id must clear
+ * the cache. Cached Users are shared and must not be modified.
+ */
+public class UserCache {
+
+  // Shared by every cache; there is only the one in YammerData
+  private static final Counter HITS = Metrics.counter("data.user_cache_hits");
+  private static final Counter MISSES = Metrics.counter("data.user_cache_misses");
+
+  static {
+    Metrics.ratio("data.user_cache_hit_percent", HITS, MISSES);
+  }
+
+  private static class Entry {
+    final User user;
+    final long hash;
+
+    Entry(User _user, long _hash) {
+      this.user = _user;
+      this.hash = _hash;
+    }
+  }
+
+  // Guarded by this
+  private final LongLruCache<Entry> entries;
+
+  public UserCache(int _capacity) {
+    this.entries = new LongLruCache<Entry>(_capacity);
+  }
+
+  /**
+   * @return the cached user, or null
+   */
+  public synchronized User get(long _userId) {
+    Entry entry = entries.get(_userId);
+    if(null == entry) {
+      MISSES.inc();
+      return null;
+    }
+    HITS.inc();
+    return entry.user;
+  }
+
+  /**
+   * @return the cached user if what is stored for it has _hash, else null
+   */
+  synchronized User getIfCurrent(long _userId, long _hash) {
+    Entry entry = entries.get(_userId);
+    if(null == entry || _hash != entry.hash) {
+      MISSES.inc();
+      return null;
+    }
+    HITS.inc();
+    return entry.user;
+  }
+
+  /**
+   * Record _user as stored.
+   */
+  public synchronized void put(User _user) {
+    entries.put(_user.userId, new Entry(_user, _user.contentHash()));
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+}
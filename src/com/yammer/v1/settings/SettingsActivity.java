@@ -5,9 +5,11 @@
 package com.yammer.v1.settings;
 
 import com.yammer.v1.AboutActivity;
+import com.yammer.v1.DiagnosticsActivity;
 import com.yammer.v1.G;
 import com.yammer.v1.R;
 import com.yammer.v1.YammerService;
+import com.yammer.v1.metrics.Metrics;
 
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -47,10 +49,12 @@ public class SettingsActivity extends PreferenceActivity
   }
 
   private final int MENU_ABOUT = 2;
+  private final int MENU_DIAGNOSTICS = 3;
 
   @Override
   public boolean onCreateOptionsMenu(Menu menu) {
     menu.add(0, MENU_ABOUT, Menu.NONE, R.string.about).setIcon(R.drawable.menu_info_details);
+    menu.add(0, MENU_DIAGNOSTICS, Menu.NONE, R.string.menu_diagnostics).setIcon(android.R.drawable.ic_menu_info_details);
     return (super.onCreateOptionsMenu(menu));
   }
 
@@ -61,6 +65,10 @@ public class SettingsActivity extends PreferenceActivity
         if(DEBUG) Log.d(getClass().getName(), "MENU_ABOUT");
         startActivity(new Intent(this, AboutActivity.class));
         break;
+      case MENU_DIAGNOSTICS:
+        if(DEBUG) Log.d(getClass().getName(), "MENU_DIAGNOSTICS");
+        startActivity(new Intent(this, DiagnosticsActivity.class));
+        break;
     }
     return super.onOptionsItemSelected(item);
   }
@@ -69,6 +77,8 @@ public class SettingsActivity extends PreferenceActivity
     if(DEBUG) Log.d(getClass().getName(), "onSharedPreferenceChange: " + _key);
     if("key_url".equals(_key)) {
       getApplicationContext().sendBroadcast(new Intent(YammerService.INTENT_RESET_ACCOUNT));
+    } else if("key_record_metrics".equals(_key)) {
+      Metrics.setEnabled(_prefs.getBoolean(_key, false));
     }
   }
 
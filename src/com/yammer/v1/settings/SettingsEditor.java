@@ -1,32 +1,253 @@
 package com.yammer.v1.settings;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import com.yammer.v1.G;
 import com.yammer.v1.R;
+import com.yammer.v1.YammerApp;
 import com.yammer.v1.YammerProxy;
+import com.yammer.v1.metrics.Histogram;
+import com.yammer.v1.metrics.Metrics;
 
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
+/**
+ * Typed access to the user's settings.
+ *
+ * Reads come from an immutable snapshot shared by every SettingsEditor in
+ * the process, rebuilt whenever the preferences change, so a getter is a
+ * field read. Writes update the snapshot at once and reach the disk in
+ * the background; writes made while one is pending go out in the same
+ * commit.
+ */
 public class SettingsEditor {
   
   private static final boolean DEBUG = G.DEBUG;
 
-  private Context context;
-  
-  public SettingsEditor(Context _ctx) {
-    this.context = _ctx;
+  public static final String KEY_DISPLAY_NAME = "key_names";
+
+  private static final String KEY_CURRENT_NETWORK_ID = "CurrentNetworkId";
+  private static final String KEY_BACKGROUND = "key_background";
+  private static final String KEY_UPDATE_ON_RESUME = "key_update_on_resume";
+  private static final String KEY_FEED = "key_feed";
+  private static final String KEY_UPDATED_AT = "key_updated_at";
+  private static final String KEY_URL = "key_url";
+  private static final String KEY_UPDATE = "key_update";
+  private static final String KEY_MESSAGE_CLICK = "key_message_click";
+  private static final String KEY_VIBRATE = "key_vibrate";
+  private static final String KEY_KEEP_MESSAGES = "key_keep_messages";
+  private static final String KEY_KEEP_DAYS = "key_keep_days";
+  private static final String KEY_COMPACTED_AT = "key_compacted_at";
+  private static final String KEY_RECORD_METRICS = "key_record_metrics";
+
+  // Writing pending settings to disk
+  private static final Histogram COMMIT_TIME = Metrics.timer("settings.commit");
+
+  /**
+   * The settings as of one moment.
+   */
+  public static class Snapshot {
+    public final long currentNetworkId;
+    public final boolean startServiceAtBoot;
+    public final boolean updateOnResume;
+    public final String feed;
+    // 0 if never updated
+    public final long updatedAt;
+    public final String url;
+    public final long updateTimeout;
+    public final String messageClick;
+    public final String displayName;
+    public final boolean vibrate;
+    // Retention: messages kept per feed, and the age past which they go
+    public final int keepMessages;
+    public final int keepDays;
+    // When the store was last compacted, 0 for never
+    public final long compactedAt;
+    public final boolean recordMetrics;
+
+    Snapshot(Context _ctx, SharedPreferences _prefs, Map<String, Object> _pending) {
+      Source source = new Source(_prefs, _pending);
+      this.currentNetworkId = source.getLong(KEY_CURRENT_NETWORK_ID, 0L);
+      this.startServiceAtBoot = source.getBoolean(KEY_BACKGROUND, true);
+      this.updateOnResume = source.getBoolean(KEY_UPDATE_ON_RESUME, true);
+      this.feed = source.getString(KEY_FEED, YammerProxy.DEFAULT_FEED);
+      this.updatedAt = source.getLong(KEY_UPDATED_AT, 0L);
+      this.url = source.getString(KEY_URL, _ctx.getString(R.string.pref_url_default));
+      this.updateTimeout = parseLong(source.getString(KEY_UPDATE, "120"), 120) * 1000;
+      this.messageClick = source.getString(KEY_MESSAGE_CLICK, "reply");
+      this.displayName = source.getString(KEY_DISPLAY_NAME, "firstname");
+      this.vibrate = source.getBoolean(KEY_VIBRATE, true);
+      this.keepMessages = (int)parseLong(source.getString(KEY_KEEP_MESSAGES, "500"), 500);
+      this.keepDays = (int)parseLong(source.getString(KEY_KEEP_DAYS, "30"), 30);
+      this.compactedAt = source.getLong(KEY_COMPACTED_AT, 0L);
+      this.recordMetrics = source.getBoolean(KEY_RECORD_METRICS, false);
+    }
+
+    private static long parseLong(String _value, long _default) {
+      try {
+        return Long.parseLong(_value.trim());
+      } catch(NumberFormatException e) {
+        if(DEBUG) Log.w(SettingsEditor.class.getName(), "Bad number: " + _value);
+        return _default;
+      }
+    }
   }
-  
-  private SharedPreferences getPreferences() {
-    return PreferenceManager.getDefaultSharedPreferences(this.context);
+
+  /**
+   * Stored preferences overlaid with the writes not yet committed.
+   */
+  private static class Source {
+    private final SharedPreferences prefs;
+    private final Map<String, Object> pending;
+
+    Source(SharedPreferences _prefs, Map<String, Object> _pending) {
+      this.prefs = _prefs;
+      this.pending = _pending;
+    }
+
+    long getLong(String _key, long _default) {
+      Object value = pending.get(_key);
+      return value instanceof Long ? ((Long)value).longValue() : prefs.getLong(_key, _default);
+    }
+
+    String getString(String _key, String _default) {
+      Object value = pending.get(_key);
+      return value instanceof String ? (String)value : prefs.getString(_key, _default);
+    }
+
+    boolean getBoolean(String _key, boolean _default) {
+      Object value = pending.get(_key);
+      return value instanceof Boolean ? ((Boolean)value).booleanValue() : prefs.getBoolean(_key, _default);
+    }
+  }
+
+  /**
+   * The process-wide snapshot and write-back queue.
+   */
+  private static class Store implements SharedPreferences.OnSharedPreferenceChangeListener {
+    private final Context context;
+    private final SharedPreferences prefs;
+    private volatile Snapshot snapshot;
+
+    // Guarded by this
+    private final Map<String, Object> pending = new HashMap<String, Object>();
+    private boolean writeScheduled = false;
+
+    // Weak like the preferences' own listeners, so nobody has to unregister
+    private final Map<SharedPreferences.OnSharedPreferenceChangeListener, Boolean> listeners =
+      new WeakHashMap<SharedPreferences.OnSharedPreferenceChangeListener, Boolean>();
+
+    Store(Context _ctx) {
+      this.context = _ctx;
+      this.prefs = PreferenceManager.getDefaultSharedPreferences(_ctx);
+      this.snapshot = new Snapshot(_ctx, prefs, pending);
+      prefs.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    Snapshot getSnapshot() {
+      return snapshot;
+    }
+
+    void put(String _key, Object _value) {
+      boolean schedule;
+      synchronized(this) {
+        pending.put(_key, _value);
+        snapshot = new Snapshot(context, prefs, pending);
+        schedule = ! writeScheduled;
+        writeScheduled = true;
+      }
+
+      if(schedule) {
+        Runnable write = new Runnable() {
+          public void run() {
+            write();
+          }
+        };
+        if( ! YammerApp.getExecutor().database().offer(write)) {
+          // Never lose a setting to a full queue
+          write.run();
+        }
+      }
+    }
+
+    private void write() {
+      Map<String, Object> writing;
+      synchronized(this) {
+        writing = new HashMap<String, Object>(pending);
+        writeScheduled = false;
+      }
+
+      if(DEBUG) Log.d(SettingsEditor.class.getName(), "Writing " + writing.size() + " settings");
+      long started = Metrics.start();
+      SharedPreferences.Editor editor = prefs.edit();
+      for(Map.Entry<String, Object> entry : writing.entrySet()) {
+        Object value = entry.getValue();
+        if(value instanceof Long) {
+          editor.putLong(entry.getKey(), ((Long)value).longValue());
+        } else if(value instanceof Boolean) {
+          editor.putBoolean(entry.getKey(), ((Boolean)value).booleanValue());
+        } else {
+          editor.putString(entry.getKey(), (String)value);
+        }
+      }
+      editor.commit();
+      COMMIT_TIME.recordSince(started);
+
+      // Values stay pending until they are on disk, so the snapshot never
+      // goes back to an older value in between. Ones changed meanwhile go
+      // out with the next write.
+      synchronized(this) {
+        for(Map.Entry<String, Object> entry : writing.entrySet()) {
+          if(pending.get(entry.getKey()) == entry.getValue()) {
+            pending.remove(entry.getKey());
+          }
+        }
+      }
+    }
+
+    public void onSharedPreferenceChanged(SharedPreferences _prefs, String _key) {
+      SharedPreferences.OnSharedPreferenceChangeListener[] toNotify;
+      synchronized(this) {
+        snapshot = new Snapshot(context, prefs, pending);
+        toNotify = listeners.keySet().toArray(new SharedPreferences.OnSharedPreferenceChangeListener[listeners.size()]);
+      }
+      for(int ii=0; ii < toNotify.length ;ii++) {
+        toNotify[ii].onSharedPreferenceChanged(_prefs, _key);
+      }
+    }
+
+    synchronized void register(SharedPreferences.OnSharedPreferenceChangeListener _listener) {
+      listeners.put(_listener, Boolean.TRUE);
+    }
+
+    synchronized void unregister(SharedPreferences.OnSharedPreferenceChangeListener _listener) {
+      listeners.remove(_listener);
+    }
   }
+
+  private static Store store = null;
+
+  private static synchronized Store getStore(Context _ctx) {
+    if(null == store) {
+      store = new Store(_ctx.getApplicationContext());
+    }
+    return store;
+  }
+
+  private final Store settings;
   
-  private SharedPreferences.Editor getEditor() {
-    return getPreferences().edit();
+  public SettingsEditor(Context _ctx) {
+    this.settings = getStore(_ctx);
+  }
+
+  public Snapshot getSnapshot() {
+    return settings.getSnapshot();
   }
   
 //  public void setUserId(long _id) {
@@ -43,14 +264,11 @@ public class SettingsEditor {
   
   public void setCurrentNetworkId(long _id) {
     if(DEBUG) Log.d(getClass().getName(), ".setCurrentNetworkId: " + _id);
-    SharedPreferences.Editor editor = getEditor();
-    editor.putLong("CurrentNetworkId", _id);
-    editor.commit();      
+    settings.put(KEY_CURRENT_NETWORK_ID, Long.valueOf(_id));
   }
   
   public long getCurrentNetworkId() {
-    if(DEBUG) Log.d(getClass().getName(), ".getCurrentNetworkId");
-    return getPreferences().getLong("CurrentNetworkId", 0L);
+    return getSnapshot().currentNetworkId;
   }
 
 //  public void setRequestToken(String _value) {
@@ -90,27 +308,21 @@ public class SettingsEditor {
 //  }
 
   public boolean startServiceAtBoot() {
-    if(DEBUG) Log.d(getClass().getName(), ".startServiceAtBoot");
-    return getPreferences().getBoolean("key_background", true);
+    return getSnapshot().startServiceAtBoot;
   }
   
   public boolean updateOnResume() {
-    if(DEBUG) Log.d(getClass().getName(), ".updateOnResume");
-    return getPreferences().getBoolean("key_update_on_resume", true);
+    return getSnapshot().updateOnResume;
   }
 
   public void setFeed(String feedName) {
     if(DEBUG) Log.d(getClass().getName(), ".setFeed: " + feedName);
-    SharedPreferences.Editor editor = getEditor();
-    editor.putString("key_feed", feedName);
-    editor.commit();      
+    settings.put(KEY_FEED, feedName);
   }
 
 
   public String getFeed() {
-    String ret = getPreferences().getString("key_feed", YammerProxy.DEFAULT_FEED);
-    if(DEBUG) Log.d(SettingsActivity.class.getName(), ".getFeed: " + ret);
-    return ret;
+    return getSnapshot().feed;
   }
 
   public void setUpdatedAt() {
@@ -118,54 +330,73 @@ public class SettingsEditor {
   }
   
   public void setUpdatedAt(Date time) {
-    if(DEBUG) Log.d(getClass().getName(), ".setUpdatedAt: " + time.toString());
-    SharedPreferences.Editor editor = getEditor();
-    editor.putLong("key_updated_at", time.getTime());
-    editor.commit();      
+    settings.put(KEY_UPDATED_AT, Long.valueOf(time.getTime()));
   }
 
   public Date getUpdatedAt() {
-    Date time = new Date(getPreferences().getLong("key_updated_at", System.currentTimeMillis()));
-    if(DEBUG) Log.d(getClass().getName(), ".getUpdatedAt: " + time.toString());
-    return time;
+    long updatedAt = getSnapshot().updatedAt;
+    return new Date(0L == updatedAt ? System.currentTimeMillis() : updatedAt);
   }
 
   public String getUrl() {
-    String ret = getPreferences().getString("key_url", context.getString(R.string.pref_url_default)); 
-    if(DEBUG) Log.d(SettingsActivity.class.getName(), ".getUrl:" + ret);      
-    return ret; 
+    return getSnapshot().url;
+  }
+
+  public void setUrl(String _url) {
+    if(DEBUG) Log.d(getClass().getName(), ".setUrl: " + _url);
+    settings.put(KEY_URL, _url);
   }
 
   public long getUpdateTimeout() {
-    long ret = Long.parseLong(getPreferences().getString("key_update", "120"))*1000; 
-    if(DEBUG) Log.d(getClass().getName(), ".getUpdateTimeout: " + ret);           
-    return ret;
+    return getSnapshot().updateTimeout;
   }
 
   public boolean isMessageClickReply() {
-    return "reply".equals(getMessageClick());
+    return "reply".equals(getSnapshot().messageClick);
   }
   
   public boolean isMessageClickMenu() {
-    return "menu".equals(getMessageClick());
+    return "menu".equals(getSnapshot().messageClick);
   }
-  
-  private String getMessageClick() {
-    String ret = getPreferences().getString("key_message_click", "reply");
-    if(DEBUG) Log.d(SettingsActivity.class.getName(), "getMessageClickBehavior: " + ret);
-    return ret;
+
+  /**
+   * The listener is called after the snapshot has been refreshed, and is
+   * only weakly referenced.
+   */
+  public void registerOnChangeListener(SharedPreferences.OnSharedPreferenceChangeListener _listener) {
+    settings.register(_listener);
+  }
+
+  public void unregisterOnChangeListener(SharedPreferences.OnSharedPreferenceChangeListener _listener) {
+    settings.unregister(_listener);
+  }
+
+  public int getKeepMessages() {
+    return getSnapshot().keepMessages;
+  }
+
+  public int getKeepDays() {
+    return getSnapshot().keepDays;
+  }
+
+  public long getCompactedAt() {
+    return getSnapshot().compactedAt;
+  }
+
+  public void setCompactedAt(long _time) {
+    settings.put(KEY_COMPACTED_AT, Long.valueOf(_time));
+  }
+
+  public boolean isRecordingMetrics() {
+    return getSnapshot().recordMetrics;
   }
 
   public String getDisplayName() {
-    String ret = getPreferences().getString("key_names", "firstname");
-    if(DEBUG) Log.d(SettingsActivity.class.getName(), "key_names: " + ret);
-    return ret;
+    return getSnapshot().displayName;
   }
 
   public boolean getVibrate() {
-    boolean ret = getPreferences().getBoolean("key_vibrate", true);
-    if(DEBUG) Log.d(SettingsActivity.class.getName(), "key_vibrate: " + ret);
-    return ret;
+    return getSnapshot().vibrate;
   }
 
 }
@@ -0,0 +1,120 @@
+package com.yammer.v1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Avatar downloads from a local HTTP server: ImageFetcher.fetch(), the
+ * download BitmapDownloader runs for every avatar not yet on file, against
+ * the byte-at-a-time copy through buffered streams it replaced. Both write
+ * a temporary file and rename it into place over a kept-alive connection.
+ * Scores are avatars per second.
+ *
+ * fetch() also syncs the file before the rename, which the old download
+ * never did, so on a slow disk part of its score is the disk. Decoding
+ * the file needs the framework's BitmapFactory and is left to the device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AvatarDownloadBenchmark {
+
+  // Small and large avatars
+  @Param({"2048", "16384"})
+  public int size;
+
+  private HttpServer server;
+  private URL url;
+  private File dir;
+
+  @Setup
+  public void setUp() throws IOException {
+    final byte[] image = new byte[size];
+    new Random(1).nextBytes(image);
+    // Otherwise Nagle's algorithm holds each body for a delayed ACK, about 40ms
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange _exchange) throws IOException {
+        _exchange.getResponseHeaders().set("Content-Type", "image/png");
+        _exchange.sendResponseHeaders(200, image.length);
+        OutputStream out = _exchange.getResponseBody();
+        out.write(image);
+        out.close();
+      }
+    });
+    server.start();
+    url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/mugshot.png");
+
+    dir = File.createTempFile("avatars", "");
+    dir.delete();
+    dir.mkdir();
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop(0);
+    for(File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  @Benchmark
+  public long imageFetcher() throws IOException {
+    if( ! ImageFetcher.fetch(url.toString(), dir, "avatar")) {
+      throw new IOException("Download failed");
+    }
+    return new File(dir, "avatar").length();
+  }
+
+  @Benchmark
+  public long byteAtATime() throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    BufferedInputStream bis = new BufferedInputStream(connection.getInputStream());
+    File tmp = new File(dir, "avatar.tmp");
+    BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(tmp));
+    while (true) {
+      int data = bis.read();
+      if (data == -1)
+        break;
+      bos.write(data);
+    }
+    bos.flush();
+    bis.close();
+    bos.close();
+    return publish(tmp);
+  }
+
+  private long publish(File _tmp) throws IOException {
+    File avatar = new File(dir, "avatar");
+    if( ! _tmp.renameTo(avatar)) {
+      throw new IOException("Could not rename " + _tmp);
+    }
+    return avatar.length();
+  }
+
+}
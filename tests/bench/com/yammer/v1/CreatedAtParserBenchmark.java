@@ -0,0 +1,50 @@
+package com.yammer.v1;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * created_at parsing: CreatedAtParser against the shared SimpleDateFormat
+ * YammerProxy.parseTime() used to lock, and against a SimpleDateFormat per
+ * call, which is what its slow path does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CreatedAtParserBenchmark {
+
+  private final String utc = "2009/01/04 21:57:17 +0000";
+  private final String offset = "2009/01/04 13:57:17 -0800";
+  private final SimpleDateFormat shared = new SimpleDateFormat(CreatedAtParser.PATTERN);
+
+  @Benchmark
+  public long fixedUTC() {
+    return CreatedAtParser.parse(utc);
+  }
+
+  @Benchmark
+  public long fixedOffset() {
+    return CreatedAtParser.parse(offset);
+  }
+
+  @Benchmark
+  public long sharedFormat() throws ParseException {
+    synchronized(shared) {
+      return shared.parse(utc).getTime();
+    }
+  }
+
+  @Benchmark
+  public long formatPerCall() throws ParseException {
+    return new SimpleDateFormat(CreatedAtParser.PATTERN).parse(utc).getTime();
+  }
+
+}
@@ -0,0 +1,82 @@
+package com.yammer.v1;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The row cache lookup TweetListAdapter makes on every bind: LongLruCache
+ * against a LinkedHashMap in access order, which boxes every key. The
+ * list scrolls down and back up over a few more rows than the cache
+ * holds, so most lookups hit and the rest evict.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LongLruCacheBenchmark {
+
+  private static final int CAPACITY = 64;
+  private static final int ROWS = 80;
+
+  private LongLruCache<String> cache;
+  private Map<Long, String> map;
+  private String[] rows;
+  private int next = 0;
+  private int step = 1;
+
+  @Setup
+  public void setUp() {
+    cache = new LongLruCache<String>(CAPACITY);
+    map = new LinkedHashMap<Long, String>(CAPACITY, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Long, String> _eldest) {
+        return size() > CAPACITY;
+      }
+    };
+    rows = new String[ROWS];
+    for(int ii=0; ii < ROWS ;ii++) {
+      rows[ii] = "row " + ii;
+    }
+  }
+
+  @Benchmark
+  public String longLruCache() {
+    int row = nextRow();
+    long messageId = 900000000000000L + row;
+    String cached = cache.get(messageId);
+    if(null == cached) {
+      cached = rows[row];
+      cache.put(messageId, cached);
+    }
+    return cached;
+  }
+
+  @Benchmark
+  public String linkedHashMap() {
+    int row = nextRow();
+    long messageId = 900000000000000L + row;
+    String cached = map.get(messageId);
+    if(null == cached) {
+      cached = rows[row];
+      map.put(messageId, cached);
+    }
+    return cached;
+  }
+
+  private int nextRow() {
+    int row = next;
+    if(next + step < 0 || next + step >= ROWS) {
+      step = -step;
+    }
+    next += step;
+    return row;
+  }
+
+}
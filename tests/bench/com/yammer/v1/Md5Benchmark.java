@@ -0,0 +1,86 @@
+package com.yammer.v1;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Utils.md5() and Utils.toHex() against the digest lookup per call and the
+ * string-concatenating hex loop they replaced. The input is a mugshot URL,
+ * which is hashed for every user reference in a page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Md5Benchmark {
+
+  private final String url = "https://assets.yammer.com/user_uploaded/photos/p1/0123/4567/small.jpg";
+  private byte[] digest;
+
+  @Setup
+  public void setUp() throws Exception {
+    digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+  }
+
+  @Benchmark
+  public String md5() {
+    return Utils.md5(url);
+  }
+
+  @Benchmark
+  public String md5Baseline() {
+    return baselineMd5(url);
+  }
+
+  @Benchmark
+  public String hex() {
+    return Utils.toHex(digest);
+  }
+
+  @Benchmark
+  public String hexBaseline() {
+    String res = "";
+    String tmp = "";
+    for (int i = 0; i < digest.length; i++) {
+      tmp = (Integer.toHexString(0xFF & digest[i]));
+      if (tmp.length() == 1) {
+        res += "0" + tmp;
+      } else {
+        res += tmp;
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Utils.md5() as it was.
+   */
+  private static String baselineMd5(String input) {
+    String res = "";
+    try {
+      MessageDigest algorithm = MessageDigest.getInstance("MD5");
+      algorithm.reset();
+      algorithm.update(input.getBytes());
+      byte[] md5 = algorithm.digest();
+      String tmp = "";
+      for (int i = 0; i < md5.length; i++) {
+        tmp = (Integer.toHexString(0xFF & md5[i]));
+        if (tmp.length() == 1) {
+          res += "0" + tmp;
+        } else {
+          res += tmp;
+        }
+      }
+    } catch (NoSuchAlgorithmException ex) {}
+    return res;
+  }
+
+}
@@ -0,0 +1,63 @@
+package com.yammer.v1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.yammer.v1.models.Message;
+import com.yammer.v1.models.User;
+
+/**
+ * Building the Message and User models from the JSON of one element, as
+ * ingestStream() does for every message and reference in a page: the
+ * org.json parse of the element's text and then the model's constructor,
+ * which parses created_at and hashes the avatar URL. Scores are elements
+ * per millisecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ModelParseBenchmark {
+
+  private static final int ELEMENTS = 256;
+  private static final long NETWORK_ID = 1L;
+
+  private final String[] messages = new String[ELEMENTS];
+  private final String[] users = new String[ELEMENTS];
+  private int next = 0;
+
+  @Setup
+  public void setUp() throws JSONException {
+    SamplePages pages = new SamplePages(1);
+    long now = System.currentTimeMillis();
+    for(int ii=0; ii < ELEMENTS ;ii++) {
+      long sender = SamplePages.FIRST_USER_ID + ii % SamplePages.USERS;
+      messages[ii] = pages.message(900000000000000L - ii, sender, now - ii * 60000L).toString();
+      users[ii] = pages.user(sender).toString();
+    }
+  }
+
+  @Benchmark
+  public Message message() throws JSONException {
+    return new Message(new JSONObject(messages[next()]), NETWORK_ID);
+  }
+
+  @Benchmark
+  public User user() throws JSONException {
+    return new User(new JSONObject(users[next()]));
+  }
+
+  private int next() {
+    next = (next + 1) % ELEMENTS;
+    return next;
+  }
+
+}
@@ -0,0 +1,99 @@
+package com.yammer.v1;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reading a messages page the way sync used to (the whole body as a
+ * String, then a JSONObject tree) against the way YammerData.ingestStream()
+ * does (a JSONStreamReader, one element at a time). Scores are pages per
+ * second; multiply by pageSize for messages.
+ *
+ * Writing the page's rows is PageWriteBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PageIngestBenchmark {
+
+  @Param({"20", "200"})
+  public int pageSize;
+
+  private byte[] page;
+
+  @Setup
+  public void setUp() throws Exception {
+    page = new SamplePages(1).page(900000000000000L, pageSize, System.currentTimeMillis()).toString().getBytes("UTF-8");
+  }
+
+  @Benchmark
+  public int stringThenTree() throws IOException, JSONException {
+    InputStreamReader in = new InputStreamReader(new ByteArrayInputStream(page), "UTF-8");
+    StringBuilder body = new StringBuilder();
+    char[] buffer = new char[8192];
+    int count;
+    while(-1 != (count = in.read(buffer))) {
+      body.append(buffer, 0, count);
+    }
+    JSONObject json = new JSONObject(body.toString());
+
+    int found = 0;
+    JSONArray references = json.optJSONArray("references");
+    if(null != references) {
+      for(int ii=0; ii < references.length() ;ii++) {
+        if("user".equals(references.getJSONObject(ii).getString("type"))) {
+          found++;
+        }
+      }
+    }
+    JSONArray messages = json.getJSONArray("messages");
+    for(int ii=0; ii < messages.length() ;ii++) {
+      found += messages.getJSONObject(ii).length();
+    }
+    return found;
+  }
+
+  @Benchmark
+  public int stream() throws IOException, JSONException {
+    JSONStreamReader json = new JSONStreamReader(new InputStreamReader(new ByteArrayInputStream(page), "UTF-8"));
+    int found = 0;
+    json.beginObject();
+    while(json.hasNext()) {
+      String name = json.nextName();
+      if("references".equals(name)) {
+        json.beginArray();
+        while(json.hasNext()) {
+          if("user".equals(json.nextObject().getString("type"))) {
+            found++;
+          }
+        }
+        json.endArray();
+      } else if("messages".equals(name)) {
+        json.beginArray();
+        while(json.hasNext()) {
+          found += json.nextObject().length();
+        }
+        json.endArray();
+      } else {
+        json.skipValue();
+      }
+    }
+    json.endObject();
+    return found;
+  }
+
+}
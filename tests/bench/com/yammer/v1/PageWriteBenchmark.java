@@ -0,0 +1,128 @@
+package com.yammer.v1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.yammer.v1.models.Message;
+import com.yammer.v1.models.PageWriter;
+import com.yammer.v1.models.URL;
+import com.yammer.v1.models.User;
+import com.yammer.v1.models.UserCache;
+
+/**
+ * Writing a messages page the way sync used to (User.save() and
+ * Message.save() per row, each statement committing by itself) against
+ * the way YammerData.ingestStream() does (a PageWriter inside one
+ * transaction). Scores are pages per second; multiply by pageSize for
+ * messages.
+ *
+ * Both write to a database file, so the commits pay for the journal and
+ * its syncs as on a device. The pages are cycled, so after the first pass
+ * every write is a rewrite of a stored message, as for a page fetched
+ * again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PageWriteBenchmark {
+
+  private static final long NETWORK_ID = 1L;
+  private static final int PAGES = 16;
+
+  @Param({"20", "200"})
+  public int pageSize;
+
+  private final JSONObject[] pages = new JSONObject[PAGES];
+  private int next = 0;
+
+  private File file;
+  private SQLiteDatabase db;
+  private UserCache users;
+
+  @Setup
+  public void setUp() throws IOException, JSONException {
+    file = File.createTempFile("ingest", ".db");
+    db = SQLiteDatabase.openOrCreateDatabase(file.getPath(), null);
+    Message.onCreateDB(db);
+    User.onCreateDB(db);
+    URL.onCreateDB(db);
+    Message.createIndexes(db);
+    URL.createIndexes(db);
+    users = new UserCache(SamplePages.USERS);
+
+    SamplePages samples = new SamplePages(1);
+    long now = System.currentTimeMillis();
+    for(int ii=0; ii < PAGES ;ii++) {
+      pages[ii] = samples.page(900000000000000L - ii * pageSize, pageSize, now - ii * pageSize * 60000L);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    db.close();
+    file.delete();
+  }
+
+  @Benchmark
+  public int savePerRow() throws JSONException {
+    JSONObject page = nextPage();
+    JSONArray references = page.getJSONArray("references");
+    for(int ii=0; ii < references.length() ;ii++) {
+      new User(references.getJSONObject(ii)).save(db);
+    }
+    JSONArray messages = page.getJSONArray("messages");
+    for(int ii=0; ii < messages.length() ;ii++) {
+      new Message(messages.getJSONObject(ii), NETWORK_ID).save(db);
+    }
+    return references.length() + messages.length();
+  }
+
+  @Benchmark
+  public int pageWriter() throws JSONException {
+    JSONObject page = nextPage();
+    PageWriter writer = new PageWriter(db, NETWORK_ID, null, users);
+    boolean committed = false;
+    db.beginTransaction();
+    try {
+      JSONArray references = page.getJSONArray("references");
+      for(int ii=0; ii < references.length() ;ii++) {
+        writer.addUser(references.getJSONObject(ii));
+      }
+      JSONArray messages = page.getJSONArray("messages");
+      for(int ii=0; ii < messages.length() ;ii++) {
+        writer.addMessage(messages.getJSONObject(ii));
+      }
+      db.setTransactionSuccessful();
+      committed = true;
+    } finally {
+      db.endTransaction();
+      if(committed) {
+        writer.publishUsers();
+      }
+      writer.close();
+    }
+    return writer.getRowsWritten();
+  }
+
+  private JSONObject nextPage() {
+    next = (next + 1) % PAGES;
+    return pages[next];
+  }
+
+}
@@ -0,0 +1,112 @@
+package com.yammer.v1;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.content.res.Resources;
+
+/**
+ * A timeline's worth of relative times, from a moment to over a week old:
+ * RelativeTimeFormatter against TweetListAdapter.prettyDate(), which built
+ * every label afresh. Scores are labels per microsecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RelativeTimeFormatterBenchmark {
+
+  private static final int ROWS = 200;
+
+  private final long now = 1231106237000L;
+  private final long[] timestamps = new long[ROWS];
+  private int next = 0;
+
+  private RelativeTimeFormatter formatter;
+
+  private String a_moment_ago;
+  private String one_minute_ago;
+  private String a_few_minutes_ago;
+  private String minutes_ago;
+  private String about_half_an_hour_ago;
+  private String about_an_hour_ago;
+  private String hours_ago;
+  private String days_ago;
+  private final SimpleDateFormat dateFormatter = new SimpleDateFormat("MMMMM dd yyyy, HH:mm:ss");
+
+  @Setup
+  public void setUp() {
+    for(int ii=0; ii < ROWS ;ii++) {
+      // Roughly exponential, as in a real timeline
+      timestamps[ii] = now - (long)(Math.pow(1.07, ii) * 1000);
+    }
+    Resources resources = new Resources();
+    formatter = new RelativeTimeFormatter(resources);
+    a_moment_ago = resources.getString(R.string.a_moment_ago);
+    one_minute_ago = resources.getString(R.string.one_minute_ago);
+    a_few_minutes_ago = resources.getString(R.string.a_few_minutes_ago);
+    minutes_ago = resources.getString(R.string.minutes_ago);
+    about_half_an_hour_ago = resources.getString(R.string.about_half_an_hour_ago);
+    about_an_hour_ago = resources.getString(R.string.about_an_hour_ago);
+    hours_ago = resources.getString(R.string.hours_ago);
+    days_ago = resources.getString(R.string.days_ago);
+  }
+
+  @Benchmark
+  public String formatter() {
+    return formatter.format(nextTimestamp(), now);
+  }
+
+  @Benchmark
+  public String prettyDate() {
+    return prettyDate(nextTimestamp());
+  }
+
+  private long nextTimestamp() {
+    long timestamp = timestamps[next];
+    next = (next + 1) % ROWS;
+    return timestamp;
+  }
+
+  /**
+   * TweetListAdapter.prettyDate() as it was, against a fixed now.
+   */
+  private String prettyDate(long timestamp) {
+    String prettyDate = null;
+    // Get the number of seconds ago since this message was posted
+    long seconds = ( now - timestamp ) / 1000;
+    // Convert it to a prettier date
+    if ( seconds <= 30 ) {
+      prettyDate = a_moment_ago;
+    } else if ( seconds > 30 && seconds <= 90 ) {
+      prettyDate = one_minute_ago;
+    } else if ( seconds > 90 && seconds <= 60*5 ) {
+      prettyDate = a_few_minutes_ago;
+    } else if ( seconds > 60*5 && seconds <= 60*25 ) {
+      prettyDate = seconds/60 + " " + minutes_ago;
+    } else if ( seconds > 60*25 && seconds <= 60*35 ) {
+      prettyDate = about_half_an_hour_ago;
+    } else if ( seconds > 60*35 && seconds <= 60*55 ) {
+      prettyDate = seconds/60 + " " + minutes_ago;
+    } else if ( seconds > 60*55 && seconds <= 60*65 ) {
+      prettyDate = about_an_hour_ago;
+    } else if ( seconds > 60*65 && seconds <= 60*60*24 ) {
+      prettyDate = seconds/60/60 + " " + hours_ago;
+    } else if ( seconds > 60*60*24 && seconds <= 7*60*60*24 ) {
+      prettyDate = seconds/60/60/24 + " " + days_ago;
+    } else {
+      prettyDate = dateFormatter.format(new Date(timestamp));
+    }
+
+    return prettyDate;
+  }
+
+}
@@ -0,0 +1,92 @@
+package com.yammer.v1;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Messages pages with the shape MockYammerServer serves, for the
+ * benchmarks: a "messages" array newest first and the senders under
+ * "references". One message in five is a reply to an older one and one in
+ * ten carries a URL.
+ */
+class SamplePages {
+
+  static final int USERS = 200;
+  static final long FIRST_USER_ID = 900000000000L;
+
+  private static final String[] WORDS = {"release", "build", "meeting", "customer", "deploy", "review", "lunch",
+    "office", "design", "bug", "launch", "report", "sync", "phone", "update", "team", "plan", "demo"};
+
+  private final Random random;
+  private final SimpleDateFormat format = new SimpleDateFormat(CreatedAtParser.PATTERN, Locale.US);
+
+  SamplePages(long _seed) {
+    this.random = new Random(_seed);
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+  }
+
+  /**
+   * @param _newestId id of the page's first message; the rest count down from it
+   * @param _newestTime when the first message was posted; the rest are a minute apart
+   */
+  JSONObject page(long _newestId, int _count, long _newestTime) throws JSONException {
+    JSONArray messages = new JSONArray();
+    boolean[] referenced = new boolean[USERS];
+    for(int ii=0; ii < _count ;ii++) {
+      int sender = random.nextInt(USERS);
+      referenced[sender] = true;
+      messages.put(message(_newestId - ii, FIRST_USER_ID + sender, _newestTime - ii * 60000L));
+    }
+
+    JSONArray references = new JSONArray();
+    for(int ii=0; ii < USERS ;ii++) {
+      if(referenced[ii]) {
+        references.put(user(FIRST_USER_ID + ii));
+      }
+    }
+    return new JSONObject().put("messages", messages).put("references", references);
+  }
+
+  JSONObject message(long _id, long _senderId, long _time) throws JSONException {
+    StringBuilder text = new StringBuilder();
+    while(text.length() < 140) {
+      text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+    }
+    JSONObject body = new JSONObject().put("plain", text.toString().trim());
+    if(0 == random.nextInt(10)) {
+      body.put("urls", new JSONArray().put("https://www.example.com/docs/" + _id));
+    }
+    boolean reply = 0 == random.nextInt(5);
+    return new JSONObject()
+        .put("id", _id)
+        .put("sender_id", _senderId)
+        .put("sender_type", "user")
+        .put("thread_id", _id)
+        .put("replied_to_id", reply ? (Object)Long.valueOf(_id - 1 - random.nextInt(50)) : JSONObject.NULL)
+        .put("client_type", "Web")
+        .put("created_at", format.format(_time))
+        .put("body", body);
+  }
+
+  JSONObject user(long _id) throws JSONException {
+    long n = _id - FIRST_USER_ID;
+    return new JSONObject()
+        .put("type", "user")
+        .put("id", _id)
+        .put("name", "user" + n)
+        .put("full_name", "User " + n)
+        .put("job_title", "Engineer")
+        .put("mugshot_url", "https://assets.example.com/mugshots/" + _id + ".gif")
+        .put("web_url", "https://www.example.com/users/user" + n)
+        .put("url", "https://www.example.com/api/v1/users/" + _id)
+        .put("contact", new JSONObject().put("email_addresses", new JSONArray()
+            .put(new JSONObject().put("type", "primary").put("address", "user" + n + "@example.com"))));
+  }
+
+}
@@ -0,0 +1,139 @@
+package com.yammer.v1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.yammer.v1.models.FeedMessage;
+import com.yammer.v1.models.Message;
+import com.yammer.v1.models.PageWriter;
+import com.yammer.v1.models.URL;
+import com.yammer.v1.models.User;
+import com.yammer.v1.models.UserCache;
+
+/**
+ * The timeline query, Message.findTimeline(), over a database of 50k
+ * messages written the way sync writes them, reading every column
+ * TweetListAdapter binds. Every message is in the "all" feed and one in
+ * four also in "following". The window starts at 50 rows and grows by 50
+ * each time the list is scrolled to the bottom. Scores are queries per
+ * second.
+ *
+ * The SQL and the query plan are the app's own, run by sqlite-jdbc's
+ * SQLite; per-row costs include JDBC's, so compare runs with each other
+ * rather than with a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TimelineQueryBenchmark {
+
+  private static final long NETWORK_ID = 1L;
+  private static final int MESSAGES = 50000;
+  private static final int PAGE_SIZE = 500;
+
+  @Param({"all", "following"})
+  public String feed;
+
+  @Param({"50", "500"})
+  public int limit;
+
+  private File file;
+  private SQLiteDatabase db;
+
+  @Setup
+  public void setUp() throws IOException, JSONException {
+    file = File.createTempFile("timeline", ".db");
+    db = SQLiteDatabase.openOrCreateDatabase(file.getPath(), null);
+    Message.onCreateDB(db);
+    User.onCreateDB(db);
+    URL.onCreateDB(db);
+    FeedMessage.onCreateDB(db);
+    Message.createIndexes(db);
+    URL.createIndexes(db);
+
+    SamplePages pages = new SamplePages(1);
+    UserCache users = new UserCache(SamplePages.USERS);
+    long now = System.currentTimeMillis();
+    long newestId = 900000000000000L;
+    for(int written = 0; written < MESSAGES ;written += PAGE_SIZE) {
+      JSONObject page = pages.page(newestId - written, PAGE_SIZE, now - written * 60000L);
+      PageWriter all = new PageWriter(db, NETWORK_ID, "all", users);
+      PageWriter following = new PageWriter(db, NETWORK_ID, "following", users);
+      db.beginTransaction();
+      try {
+        JSONArray references = page.getJSONArray("references");
+        for(int ii=0; ii < references.length() ;ii++) {
+          all.addUser(references.getJSONObject(ii));
+        }
+        JSONArray messages = page.getJSONArray("messages");
+        for(int ii=0; ii < messages.length() ;ii++) {
+          all.addMessage(messages.getJSONObject(ii));
+          if(0 == ii % 4) {
+            following.addMessage(messages.getJSONObject(ii));
+          }
+        }
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+        all.publishUsers();
+        all.close();
+        following.close();
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    db.close();
+    file.delete();
+  }
+
+  @Benchmark
+  public long timeline() {
+    Cursor c = Message.findTimeline(db, NETWORK_ID, feed, limit);
+    try {
+      int messageId = c.getColumnIndex(Message.FIELD_MESSAGE_ID);
+      int message = c.getColumnIndex(Message.FIELD_MESSAGE);
+      int timestamp = c.getColumnIndex(Message.FIELD_TIMESTAMP);
+      int fullName = c.getColumnIndex(User.FIELD_FULL_NAME);
+      int email = c.getColumnIndex(User.FIELD_EMAIL);
+      int replyee = c.getColumnIndex(User.FIELD_REPLYEE_FULL_NAME);
+      int replyeeEmail = c.getColumnIndex(User.FIELD_REPLYEE_EMAIL);
+      int mugshotURL = c.getColumnIndex(User.FIELD_MUGSHOT_URL);
+      int mugshotMD5 = c.getColumnIndex(User.FIELD_MUGSHOT_MD5);
+
+      long found = 0;
+      for(boolean more = c.moveToFirst(); more ;more = c.moveToNext()) {
+        found += c.getLong(messageId) + c.getLong(timestamp) + c.getString(message).length();
+        found += length(c.getString(fullName)) + length(c.getString(email));
+        found += length(c.getString(replyee)) + length(c.getString(replyeeEmail));
+        found += length(c.getString(mugshotURL)) + length(c.getString(mugshotMD5));
+      }
+      return found;
+    } finally {
+      c.close();
+    }
+  }
+
+  private static int length(String _value) {
+    return null == _value ? 0 : _value.length();
+  }
+
+}
@@ -0,0 +1,20 @@
+package com.yammer.v1;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes allocated by the calling thread, as HotSpot counts them.
+ */
+class Allocations {
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private Allocations() {
+  }
+
+  static long get() {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+}
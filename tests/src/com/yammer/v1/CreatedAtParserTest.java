@@ -0,0 +1,144 @@
+package com.yammer.v1;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/**
+ * CreatedAtParser must agree with the SimpleDateFormat it replaced on
+ * every input, well-formed or not.
+ */
+public class CreatedAtParserTest {
+
+  private static final int FUZZ_ROUNDS = 100000;
+  // Characters that can turn up in or around a created_at value
+  private static final String FUZZ_CHARS = "0123456789/: +-Zz\t";
+
+  @Test
+  public void knownAnswers() {
+    assertEquals(0L, CreatedAtParser.parse("1970/01/01 00:00:00 +0000"));
+    assertEquals(1231106237000L, CreatedAtParser.parse("2009/01/04 21:57:17 +0000"));
+    assertEquals(1231106237000L, CreatedAtParser.parse("2009/01/04 13:57:17 -0800"));
+    assertEquals(1231106237000L, CreatedAtParser.parse("2009/01/05 03:27:17 +0530"));
+    // Leap days, and the centuries that have none
+    assertEquals(951782400000L, CreatedAtParser.parse("2000/02/29 00:00:00 +0000"));
+    assertEquals(1709164800000L, CreatedAtParser.parse("2024/02/29 00:00:00 +0000"));
+    assertEquals(4107542399000L, CreatedAtParser.parse("2100/02/28 23:59:59 +0000"));
+  }
+
+  @Test
+  public void fixedLayoutOnly() {
+    assertEquals(-1L, CreatedAtParser.parseFixed(null));
+    assertEquals(-1L, CreatedAtParser.parseFixed(""));
+    assertEquals(-1L, CreatedAtParser.parseFixed("2009/01/04 21:57:17"));
+    assertEquals(-1L, CreatedAtParser.parseFixed("2009-01-04 21:57:17 +0000"));
+    assertEquals(-1L, CreatedAtParser.parseFixed("2009/1/04 21:57:17 +00000"));
+    assertEquals(-1L, CreatedAtParser.parseFixed("2009/13/04 21:57:17 +0000"));
+    assertEquals(-1L, CreatedAtParser.parseFixed("2009/02/29 21:57:17 +0000"));
+    assertEquals(-1L, CreatedAtParser.parseFixed("2009/01/04 24:00:00 +0000"));
+    assertEquals(-1L, CreatedAtParser.parseFixed("2009/01/04 21:57:17 *0000"));
+    assertEquals(-1L, CreatedAtParser.parseFixed("2009/01/04 21:57:17 +0060"));
+  }
+
+  @Test
+  public void notATimestamp() {
+    assertEquals(-1L, CreatedAtParser.parse(null));
+    assertEquals(-1L, CreatedAtParser.parse(""));
+    assertEquals(-1L, CreatedAtParser.parse("yesterday"));
+  }
+
+  /**
+   * Any second from 1970 to 2100, written in any time zone the JDK knows.
+   */
+  @Test
+  public void fuzzWellFormed() {
+    Random random = new Random(1);
+    String[] zones = TimeZone.getAvailableIDs();
+    SimpleDateFormat format = new SimpleDateFormat(CreatedAtParser.PATTERN);
+    for(int ii=0; ii < FUZZ_ROUNDS ;ii++) {
+      long time = (long)(random.nextDouble() * 4102444800L) * 1000L;
+      TimeZone zone = TimeZone.getTimeZone(zones[random.nextInt(zones.length)]);
+      format.setTimeZone(zone);
+      String date = format.format(time);
+      // "+hhmm" drops the seconds of the odd historical offset
+      if(0 == zone.getOffset(time) % 60000) {
+        assertEquals(date, time, CreatedAtParser.parse(date));
+      }
+      assertEquals(date, jdkParse(date), CreatedAtParser.parse(date));
+    }
+  }
+
+  /**
+   * Well-formed timestamps with a few characters replaced, dropped or
+   * added, including ones SimpleDateFormat leniently accepts.
+   */
+  @Test
+  public void fuzzMalformed() {
+    Random random = new Random(2);
+    SimpleDateFormat format = new SimpleDateFormat(CreatedAtParser.PATTERN);
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    for(int ii=0; ii < FUZZ_ROUNDS ;ii++) {
+      StringBuilder date = new StringBuilder(format.format((long)(random.nextDouble() * 4102444800L) * 1000L));
+      for(int edits = 1 + random.nextInt(3); edits > 0 ;edits--) {
+        int at = random.nextInt(date.length());
+        char c = FUZZ_CHARS.charAt(random.nextInt(FUZZ_CHARS.length()));
+        switch(random.nextInt(3)) {
+          case 0:
+            date.setCharAt(at, c);
+            break;
+          case 1:
+            date.deleteCharAt(at);
+            break;
+          default:
+            date.insert(at, c);
+            break;
+        }
+      }
+      String mutated = date.toString();
+      assertEquals(mutated, jdkParse(mutated), CreatedAtParser.parse(mutated));
+    }
+  }
+
+  @Test
+  public void sharedAcrossThreads() throws InterruptedException {
+    final String date = "2009/01/04 21:57:17 +0000";
+    final long expected = CreatedAtParser.parse(date);
+    final long[] wrong = new long[1];
+    Thread[] threads = new Thread[4];
+    for(int ii=0; ii < threads.length ;ii++) {
+      threads[ii] = new Thread() {
+        public void run() {
+          for(int jj=0; jj < FUZZ_ROUNDS ;jj++) {
+            if(expected != CreatedAtParser.parse(date)) {
+              synchronized(wrong) {
+                wrong[0]++;
+              }
+            }
+          }
+        }
+      };
+      threads[ii].start();
+    }
+    for(Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0L, wrong[0]);
+  }
+
+  /**
+   * What YammerProxy.parseTime() used to do, less its current-time fallback.
+   */
+  private static long jdkParse(String _date) {
+    try {
+      return new SimpleDateFormat(CreatedAtParser.PATTERN).parse(_date).getTime();
+    } catch(ParseException e) {
+      return -1L;
+    }
+  }
+
+}
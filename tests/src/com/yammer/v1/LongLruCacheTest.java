@@ -0,0 +1,116 @@
+package com.yammer.v1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongLruCacheTest {
+
+  // Allowance for the counter's own bookkeeping
+  private static final long ALLOCATION_SLACK = 1024;
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    LongLruCache<String> cache = new LongLruCache<String>(3);
+    cache.put(1L, "one");
+    cache.put(2L, "two");
+    cache.put(3L, "three");
+    assertEquals("one", cache.get(1L));
+    cache.put(4L, "four");
+    assertNull(cache.get(2L));
+    assertEquals("one", cache.get(1L));
+    assertEquals("three", cache.get(3L));
+    assertEquals("four", cache.get(4L));
+    assertEquals(3, cache.size());
+  }
+
+  @Test
+  public void removeAndClear() {
+    LongLruCache<String> cache = new LongLruCache<String>(2);
+    cache.put(1L, "one");
+    cache.put(2L, "two");
+    cache.remove(1L);
+    cache.remove(5L);
+    assertNull(cache.get(1L));
+    assertEquals(1, cache.size());
+    cache.put(3L, "three");
+    assertEquals("two", cache.get(2L));
+    assertEquals("three", cache.get(3L));
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNull(cache.get(2L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void needsRoom() {
+    new LongLruCache<String>(0);
+  }
+
+  /**
+   * Random operations against LinkedHashMap in access order, with keys
+   * that collide in the hash table.
+   */
+  @Test
+  public void matchesLinkedHashMap() {
+    final int capacity = 16;
+    Random random = new Random(1);
+    LongLruCache<Long> cache = new LongLruCache<Long>(capacity);
+    Map<Long, Long> model = new LinkedHashMap<Long, Long>(capacity, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Long, Long> _eldest) {
+        return size() > capacity;
+      }
+    };
+    for(int ii=0; ii < 100000 ;ii++) {
+      long key = random.nextInt(40) * 64L - 1000;
+      switch(random.nextInt(4)) {
+        case 0:
+          cache.remove(key);
+          model.remove(key);
+          break;
+        case 1:
+          assertEquals(model.get(key), cache.get(key));
+          break;
+        default:
+          cache.put(key, (long)ii);
+          model.put(key, (long)ii);
+          break;
+      }
+      assertEquals(model.size(), cache.size());
+    }
+  }
+
+  /**
+   * Hits and replacing puts, which is all the timeline does once the rows
+   * on screen are cached, must not allocate.
+   */
+  @Test
+  public void allocationFree() {
+    LongLruCache<String> cache = new LongLruCache<String>(64);
+    String[] values = new String[128];
+    for(int ii=0; ii < values.length ;ii++) {
+      values[ii] = "row " + ii;
+    }
+    exercise(cache, values);
+
+    long before = Allocations.get();
+    exercise(cache, values);
+    long allocated = Allocations.get() - before;
+    assertTrue(allocated + " bytes allocated", allocated < ALLOCATION_SLACK);
+  }
+
+  private static void exercise(LongLruCache<String> _cache, String[] _values) {
+    for(int ii=0; ii < 100000 ;ii++) {
+      long key = ii % _values.length;
+      if(null == _cache.get(key)) {
+        _cache.put(key, _values[ii % _values.length]);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,81 @@
+package com.yammer.v1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import android.content.res.Resources;
+
+public class RelativeTimeFormatterTest {
+
+  private static final long SECOND = 1000L;
+  private static final long DAY = 24 * 60 * 60 * SECOND;
+  // Allowance for the counter's own bookkeeping
+  private static final long ALLOCATION_SLACK = 1024;
+
+  private final long now = 1231106237000L;
+
+  @Test
+  public void buckets() {
+    RelativeTimeFormatter formatter = new RelativeTimeFormatter(new Resources());
+    Resources resources = new Resources();
+    assertEquals(resources.getString(R.string.a_moment_ago), formatter.format(now - 30 * SECOND, now));
+    assertEquals(resources.getString(R.string.one_minute_ago), formatter.format(now - 31 * SECOND, now));
+    assertEquals("7 " + resources.getString(R.string.minutes_ago), formatter.format(now - 7 * 60 * SECOND, now));
+    assertEquals("3 " + resources.getString(R.string.hours_ago), formatter.format(now - 3 * 3600 * SECOND, now));
+    assertEquals("2 " + resources.getString(R.string.days_ago), formatter.format(now - 2 * DAY, now));
+  }
+
+  /**
+   * For every age up to past a week, the label holds until nextChangeAt()
+   * and is different from then on.
+   */
+  @Test
+  public void changesWhenPredicted() {
+    RelativeTimeFormatter formatter = new RelativeTimeFormatter(new Resources());
+    for(long age = 0; age <= 8 * DAY ;age += 7 * SECOND) {
+      long timestamp = now - age;
+      String label = formatter.format(timestamp, now);
+      long changeAt = formatter.nextChangeAt(timestamp, now);
+      if(RelativeTimeFormatter.NEVER == changeAt) {
+        assertTrue(age + "ms", age > 7 * DAY);
+        continue;
+      }
+      assertTrue(age + "ms", changeAt > now);
+      assertEquals(age + "ms", label, formatter.format(timestamp, changeAt - 1));
+      assertFalse(age + "ms", label.equals(formatter.format(timestamp, changeAt)));
+    }
+  }
+
+  /**
+   * Rebinding rows whose labels were built before allocates nothing.
+   */
+  @Test
+  public void allocationFree() {
+    RelativeTimeFormatter formatter = new RelativeTimeFormatter(new Resources());
+    long[] timestamps = new long[256];
+    for(int ii=0; ii < timestamps.length ;ii++) {
+      timestamps[ii] = now - ii * 47 * 60 * SECOND;
+    }
+    int length = format(formatter, timestamps);
+
+    long before = Allocations.get();
+    length += format(formatter, timestamps);
+    long allocated = Allocations.get() - before;
+    assertTrue(allocated + " bytes allocated", allocated < ALLOCATION_SLACK);
+    assertTrue(length > 0);
+  }
+
+  private int format(RelativeTimeFormatter _formatter, long[] _timestamps) {
+    int length = 0;
+    for(int ii=0; ii < 1000 ;ii++) {
+      for(long timestamp : _timestamps) {
+        length += _formatter.format(timestamp, now).length();
+      }
+    }
+    return length;
+  }
+
+}
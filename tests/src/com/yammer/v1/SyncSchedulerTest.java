@@ -0,0 +1,118 @@
+package com.yammer.v1;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SyncSchedulerTest {
+
+  private static final long INTERVAL = 5 * 60 * 1000L;
+
+  private long now;
+  private SyncScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    now = 1000000L;
+    scheduler = new SyncScheduler(new SyncScheduler.Clock() {
+      public long now() {
+        return now;
+      }
+    });
+    scheduler.setInterval(INTERVAL);
+  }
+
+  @Test
+  public void dueOneIntervalAfterTheLastSync() {
+    scheduler.onSyncFinished(3, false);
+    assertEquals(now + INTERVAL, scheduler.getNextSyncAt());
+    now += INTERVAL - 1000L;
+    assertEquals(1000L, scheduler.getDelay());
+    now += 5000L;
+    assertEquals(0L, scheduler.getDelay());
+  }
+
+  @Test
+  public void idleAndFailedSyncsDoubleTheInterval() {
+    scheduler.onSyncFinished(0, false);
+    assertEquals(INTERVAL << 1, scheduler.getCurrentInterval());
+    scheduler.onSyncFinished(0, false);
+    assertEquals(INTERVAL << 2, scheduler.getCurrentInterval());
+    scheduler.onSyncFinished(0, true);
+    assertEquals(INTERVAL << 3, scheduler.getCurrentInterval());
+  }
+
+  @Test
+  public void newMessagesEndTheIdleBackOff() {
+    scheduler.onSyncFinished(0, false);
+    scheduler.onSyncFinished(0, false);
+    scheduler.onSyncFinished(2, false);
+    assertEquals(INTERVAL, scheduler.getCurrentInterval());
+  }
+
+  @Test
+  public void backOffStopsAtTheCap() {
+    for(int ii=0; ii < 20 ;ii++) {
+      scheduler.onSyncFinished(0, true);
+    }
+    assertEquals(SyncScheduler.MAX_INTERVAL, scheduler.getCurrentInterval());
+  }
+
+  @Test
+  public void intervalAboveTheCapIsKept() {
+    long daily = 24 * 60 * 60 * 1000L;
+    scheduler.setInterval(daily);
+    scheduler.onSyncFinished(0, false);
+    assertEquals(daily, scheduler.getCurrentInterval());
+  }
+
+  @Test
+  public void foregroundSpeedsUpAndIgnoresIdleBackOff() {
+    scheduler.onSyncFinished(0, false);
+    scheduler.onSyncFinished(0, false);
+    scheduler.setForeground(true);
+    assertEquals(INTERVAL / SyncScheduler.FOREGROUND_SPEEDUP, scheduler.getCurrentInterval());
+    scheduler.onSyncFinished(0, true);
+    assertEquals((INTERVAL / SyncScheduler.FOREGROUND_SPEEDUP) << 1, scheduler.getCurrentInterval());
+    scheduler.setForeground(false);
+    assertEquals(INTERVAL << 3, scheduler.getCurrentInterval());
+  }
+
+  @Test
+  public void neverFasterThanTheMinimum() {
+    scheduler.setInterval(1000L);
+    scheduler.setForeground(true);
+    assertEquals(SyncScheduler.MIN_INTERVAL, scheduler.getCurrentInterval());
+  }
+
+  @Test
+  public void resetForgetsTheBackOff() {
+    scheduler.onSyncFinished(0, true);
+    scheduler.onSyncFinished(0, true);
+    scheduler.onSyncFinished(0, false);
+    scheduler.reset();
+    assertEquals(INTERVAL, scheduler.getCurrentInterval());
+    assertEquals(now + INTERVAL, scheduler.getNextSyncAt());
+  }
+
+  @Test
+  public void successAfterFailuresResetsTheFailureBackOff() {
+    scheduler.onSyncFinished(0, true);
+    scheduler.onSyncFinished(0, true);
+    scheduler.onSyncFinished(1, false);
+    assertEquals(INTERVAL, scheduler.getCurrentInterval());
+  }
+
+  @Test
+  public void disabledOrSuspendedNeverSyncs() {
+    scheduler.onSyncFinished(1, false);
+    scheduler.setSuspended(true);
+    assertEquals(SyncScheduler.NEVER, scheduler.getDelay());
+    scheduler.setSuspended(false);
+    assertEquals(now + INTERVAL, scheduler.getNextSyncAt());
+    scheduler.setInterval(0L);
+    assertEquals(SyncScheduler.NEVER, scheduler.getNextSyncAt());
+  }
+
+}
@@ -0,0 +1,114 @@
+package com.yammer.v1;
+
+import static org.junit.Assert.assertEquals;
+
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class UtilsTest {
+
+  /**
+   * The test suite from RFC 1321.
+   */
+  @Test
+  public void md5KnownAnswers() {
+    assertEquals("d41d8cd98f00b204e9800998ecf8427e", Utils.md5(""));
+    assertEquals("0cc175b9c0f1b6a831c399e269772661", Utils.md5("a"));
+    assertEquals("900150983cd24fb0d6963f7d28e17f72", Utils.md5("abc"));
+    assertEquals("f96b697d7cb7938d525a2f31aaf161d0", Utils.md5("message digest"));
+    assertEquals("c3fcd3d76192e4007dfb496cca67e13b", Utils.md5("abcdefghijklmnopqrstuvwxyz"));
+    assertEquals("d174ab98d277d9f5a5611c2c9f419d9f",
+        Utils.md5("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789"));
+    assertEquals("57edf4a22be3c955ac49da2e2107b67a",
+        Utils.md5("12345678901234567890123456789012345678901234567890123456789012345678901234567890"));
+  }
+
+  @Test
+  public void md5OfUTF8() throws Exception {
+    // Latin-1, CJK and a character outside the BMP
+    String text = "Gr\u00fc\u00dfe aus M\u00fcnchen \u65e5\u672c \ud83d\ude00";
+    byte[] digest = MessageDigest.getInstance("MD5").digest(text.getBytes("UTF-8"));
+    assertEquals(baselineHex(digest), Utils.md5(text));
+  }
+
+  /**
+   * Hashes of ASCII, such as mugshot URLs, must not change: cached avatars
+   * and responses are stored under them.
+   */
+  @Test
+  public void md5MatchesBaseline() throws Exception {
+    Random random = new Random(1);
+    for(int ii=0; ii < 10000 ;ii++) {
+      char[] text = new char[random.nextInt(300)];
+      for(int jj=0; jj < text.length ;jj++) {
+        text[jj] = (char)(32 + random.nextInt(95));
+      }
+      String input = new String(text);
+      assertEquals(input, baselineMd5(input), Utils.md5(input));
+    }
+  }
+
+  @Test
+  public void hexMatchesBaseline() {
+    Random random = new Random(2);
+    assertEquals("", Utils.toHex(new byte[0]));
+    assertEquals("00017f80ff", Utils.toHex(new byte[] { 0, 1, 127, -128, -1 }));
+    for(int ii=0; ii < 10000 ;ii++) {
+      byte[] bytes = new byte[random.nextInt(64)];
+      random.nextBytes(bytes);
+      assertEquals(baselineHex(bytes), Utils.toHex(bytes));
+    }
+  }
+
+  @Test
+  public void md5AcrossThreads() throws InterruptedException {
+    final String expected = "900150983cd24fb0d6963f7d28e17f72";
+    final long[] wrong = new long[1];
+    Thread[] threads = new Thread[4];
+    for(int ii=0; ii < threads.length ;ii++) {
+      threads[ii] = new Thread() {
+        public void run() {
+          for(int jj=0; jj < 100000 ;jj++) {
+            if( ! expected.equals(Utils.md5("abc"))) {
+              synchronized(wrong) {
+                wrong[0]++;
+              }
+            }
+          }
+        }
+      };
+      threads[ii].start();
+    }
+    for(Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0L, wrong[0]);
+  }
+
+  /**
+   * Utils.md5() as it was, less the platform charset, which is UTF-8 on Android.
+   */
+  static String baselineMd5(String _input) throws Exception {
+    MessageDigest algorithm = MessageDigest.getInstance("MD5");
+    algorithm.reset();
+    algorithm.update(_input.getBytes("UTF-8"));
+    return baselineHex(algorithm.digest());
+  }
+
+  static String baselineHex(byte[] _bytes) {
+    String res = "";
+    String tmp = "";
+    for (int i = 0; i < _bytes.length; i++) {
+      tmp = (Integer.toHexString(0xFF & _bytes[i]));
+      if (tmp.length() == 1) {
+        res += "0" + tmp;
+      } else {
+        res += tmp;
+      }
+    }
+    return res;
+  }
+
+}
@@ -0,0 +1,155 @@
+package com.yammer.v1.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+public class PageWriterTest {
+
+  private static final long NETWORK_ID = 7L;
+  private static final String FEED = "following";
+
+  private SQLiteDatabase db;
+  private UserCache users;
+
+  @Before
+  public void setUp() {
+    db = SQLiteDatabase.create(null);
+    Message.onCreateDB(db);
+    User.onCreateDB(db);
+    Network.onCreateDB(db);
+    URL.onCreateDB(db);
+    FeedMessage.onCreateDB(db);
+    Message.createIndexes(db);
+    URL.createIndexes(db);
+    users = new UserCache(16);
+  }
+
+  @After
+  public void tearDown() {
+    db.close();
+  }
+
+  @Test
+  public void rewritingKeepsOneRow() throws JSONException {
+    write(user(1, "Ann"), message(100, 1, "first", null, "https://a.example.com/"));
+    write(user(1, "Ann Smith"), message(100, 1, "edited", null, "https://b.example.com/"));
+
+    assertEquals(1L, Base.queryLong(db, "SELECT COUNT(*) FROM messages", null));
+    assertEquals(1L, Base.queryLong(db, "SELECT COUNT(*) FROM users", null));
+    assertEquals(1L, Base.queryLong(db, "SELECT COUNT(*) FROM feed_messages", null));
+    assertEquals(1L, Base.queryLong(db, "SELECT COUNT(*) FROM urls WHERE url='https://b.example.com/'", null));
+    assertEquals(1L, Base.queryLong(db, "SELECT COUNT(*) FROM urls", null));
+    assertEquals("Ann Smith", User.findByUserId(db, 1).fullName);
+    assertEquals(100L, FeedMessage.getLastMessageId(db, NETWORK_ID, FEED));
+  }
+
+  @Test
+  public void timelineNewestFirstWithReplyee() throws JSONException {
+    write(user(1, "Ann"), message(100, 1, "question", null, null));
+    write(user(2, "Bob"), message(101, 2, "answer", 100L, null));
+
+    Cursor c = Message.findTimeline(db, NETWORK_ID, FEED, 50);
+    try {
+      assertEquals(2, c.getCount());
+      assertTrue(c.moveToFirst());
+      assertEquals(101L, c.getLong(c.getColumnIndex(Message.FIELD_MESSAGE_ID)));
+      assertEquals("Bob", c.getString(c.getColumnIndex(User.FIELD_FULL_NAME)));
+      assertEquals("Ann", c.getString(c.getColumnIndex(User.FIELD_REPLYEE_FULL_NAME)));
+      assertTrue(c.moveToNext());
+      assertEquals(100L, c.getLong(c.getColumnIndex(Message.FIELD_MESSAGE_ID)));
+      assertNull(c.getString(c.getColumnIndex(User.FIELD_REPLYEE_FULL_NAME)));
+      assertFalse(c.moveToNext());
+    } finally {
+      c.close();
+    }
+  }
+
+  @Test
+  public void usersCachedOnlyOnPublish() throws JSONException {
+    PageWriter writer = new PageWriter(db, NETWORK_ID, FEED, users);
+    db.beginTransaction();
+    try {
+      writer.addUser(user(1, "Ann"));
+      // Never marked successful
+    } finally {
+      db.endTransaction();
+      writer.close();
+    }
+    assertEquals(0L, Base.queryLong(db, "SELECT COUNT(*) FROM users", null));
+    assertEquals(0, users.size());
+
+    write(user(1, "Ann"), message(100, 1, "hello", null, null));
+    assertEquals(1, users.size());
+    assertEquals("Ann", users.get(1).fullName);
+  }
+
+  @Test
+  public void unchangedUserNotWrittenAgain() throws JSONException {
+    write(user(1, "Ann"), message(100, 1, "hello", null, null));
+    PageWriter writer = new PageWriter(db, NETWORK_ID, FEED, users);
+    try {
+      writer.addUser(user(1, "Ann"));
+      assertEquals(0, writer.getRowsWritten());
+      writer.addUser(user(1, "Ann Smith"));
+      assertEquals(1, writer.getRowsWritten());
+    } finally {
+      writer.close();
+    }
+  }
+
+  private void write(JSONObject _user, JSONObject _message) throws JSONException {
+    PageWriter writer = new PageWriter(db, NETWORK_ID, FEED, users);
+    db.beginTransaction();
+    try {
+      writer.addUser(_user);
+      writer.addMessage(_message);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+      writer.publishUsers();
+      writer.close();
+    }
+  }
+
+  private static JSONObject user(long _id, String _fullName) throws JSONException {
+    return new JSONObject()
+        .put("type", "user")
+        .put("network_id", NETWORK_ID)
+        .put("id", _id)
+        .put("name", "user" + _id)
+        .put("full_name", _fullName)
+        .put("job_title", "Engineer")
+        .put("mugshot_url", "https://assets.example.com/mugshots/" + _id + ".gif")
+        .put("web_url", "https://www.example.com/users/user" + _id)
+        .put("url", "https://www.example.com/api/v1/users/" + _id);
+  }
+
+  private static JSONObject message(long _id, long _senderId, String _text, Long _repliedToId, String _url) throws JSONException {
+    JSONObject body = new JSONObject().put("plain", _text);
+    if(null != _url) {
+      body.put("urls", new JSONArray().put(_url));
+    }
+    return new JSONObject()
+        .put("id", _id)
+        .put("sender_id", _senderId)
+        .put("sender_type", "user")
+        .put("thread_id", _id)
+        .put("replied_to_id", null == _repliedToId ? JSONObject.NULL : (Object)_repliedToId)
+        .put("client_type", "Web")
+        .put("created_at", "2009/01/04 21:57:17 +0000")
+        .put("body", body);
+  }
+
+}
@@ -0,0 +1,54 @@
+package android.content;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Host stand-in for the framework's ContentValues.
+ */
+public final class ContentValues {
+
+  private final LinkedHashMap<String, Object> values = new LinkedHashMap<String, Object>();
+
+  public void put(String _key, String _value) {
+    values.put(_key, _value);
+  }
+
+  public void put(String _key, Long _value) {
+    values.put(_key, _value);
+  }
+
+  public void put(String _key, Integer _value) {
+    values.put(_key, _value);
+  }
+
+  public void put(String _key, Boolean _value) {
+    values.put(_key, _value);
+  }
+
+  public void put(String _key, Double _value) {
+    values.put(_key, _value);
+  }
+
+  public void put(String _key, byte[] _value) {
+    values.put(_key, _value);
+  }
+
+  public void putNull(String _key) {
+    values.put(_key, null);
+  }
+
+  public Object get(String _key) {
+    return values.get(_key);
+  }
+
+  public int size() {
+    return values.size();
+  }
+
+  public Set<Map.Entry<String, Object>> valueSet() {
+    return values.entrySet();
+  }
+
+}
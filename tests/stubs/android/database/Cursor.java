@@ -0,0 +1,46 @@
+package android.database;
+
+/**
+ * Host stand-in for the framework's Cursor, the methods the app uses.
+ */
+public interface Cursor {
+
+  int getCount();
+
+  int getPosition();
+
+  boolean moveToPosition(int _position);
+
+  boolean moveToFirst();
+
+  boolean moveToNext();
+
+  boolean isAfterLast();
+
+  int getColumnCount();
+
+  int getColumnIndex(String _columnName);
+
+  int getColumnIndexOrThrow(String _columnName) throws IllegalArgumentException;
+
+  String getColumnName(int _columnIndex);
+
+  String[] getColumnNames();
+
+  boolean isNull(int _columnIndex);
+
+  String getString(int _columnIndex);
+
+  int getInt(int _columnIndex);
+
+  long getLong(int _columnIndex);
+
+  double getDouble(int _columnIndex);
+
+  byte[] getBlob(int _columnIndex);
+
+  void close();
+
+  boolean isClosed();
+
+}
@@ -0,0 +1,20 @@
+package android.database;
+
+/**
+ * Host stand-in for the framework's SQLException.
+ */
+@SuppressWarnings("serial")
+public class SQLException extends RuntimeException {
+
+  public SQLException() {
+  }
+
+  public SQLException(String _message) {
+    super(_message);
+  }
+
+  public SQLException(String _message, Throwable _cause) {
+    super(_message, _cause);
+  }
+
+}
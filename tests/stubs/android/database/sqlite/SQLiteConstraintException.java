@@ -0,0 +1,20 @@
+package android.database.sqlite;
+
+/**
+ * Host stand-in for the framework's SQLiteConstraintException.
+ */
+@SuppressWarnings("serial")
+public class SQLiteConstraintException extends SQLiteException {
+
+  public SQLiteConstraintException() {
+  }
+
+  public SQLiteConstraintException(String _message) {
+    super(_message);
+  }
+
+  public SQLiteConstraintException(String _message, Throwable _cause) {
+    super(_message, _cause);
+  }
+
+}
@@ -0,0 +1,179 @@
+package android.database.sqlite;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import android.database.Cursor;
+
+/**
+ * Host stand-in for the framework's SQLiteCursor. Every row is read when
+ * the query runs, as the framework fills its CursorWindow on the first
+ * move, and values convert between types the way SQLite converts them.
+ */
+public class SQLiteCursor implements Cursor {
+
+  private final String[] columnNames;
+  private final ArrayList<Object[]> rows = new ArrayList<Object[]>();
+  private int position = -1;
+  private boolean closed = false;
+
+  SQLiteCursor(ResultSet _results) throws SQLException {
+    ResultSetMetaData meta = _results.getMetaData();
+    columnNames = new String[meta.getColumnCount()];
+    for(int ii=0; ii < columnNames.length ;ii++) {
+      columnNames[ii] = meta.getColumnLabel(ii + 1);
+    }
+    while(_results.next()) {
+      Object[] row = new Object[columnNames.length];
+      for(int ii=0; ii < row.length ;ii++) {
+        row[ii] = _results.getObject(ii + 1);
+      }
+      rows.add(row);
+    }
+  }
+
+  public int getCount() {
+    return rows.size();
+  }
+
+  public int getPosition() {
+    return position;
+  }
+
+  public boolean moveToPosition(int _position) {
+    if(_position < 0) {
+      position = -1;
+      return false;
+    }
+    if(_position >= rows.size()) {
+      position = rows.size();
+      return false;
+    }
+    position = _position;
+    return true;
+  }
+
+  public boolean moveToFirst() {
+    return moveToPosition(0);
+  }
+
+  public boolean moveToNext() {
+    return moveToPosition(position + 1);
+  }
+
+  public boolean isAfterLast() {
+    return 0 == rows.size() || position >= rows.size();
+  }
+
+  public int getColumnCount() {
+    return columnNames.length;
+  }
+
+  public int getColumnIndex(String _columnName) {
+    // The framework also finds "table.column" by its column name
+    int dot = _columnName.lastIndexOf('.');
+    String name = -1 == dot ? _columnName : _columnName.substring(dot + 1);
+    for(int ii=0; ii < columnNames.length ;ii++) {
+      if(columnNames[ii].equalsIgnoreCase(name)) {
+        return ii;
+      }
+    }
+    return -1;
+  }
+
+  public int getColumnIndexOrThrow(String _columnName) {
+    int index = getColumnIndex(_columnName);
+    if(-1 == index) {
+      throw new IllegalArgumentException("column '" + _columnName + "' does not exist");
+    }
+    return index;
+  }
+
+  public String getColumnName(int _columnIndex) {
+    return columnNames[_columnIndex];
+  }
+
+  public String[] getColumnNames() {
+    return columnNames.clone();
+  }
+
+  public boolean isNull(int _columnIndex) {
+    return null == value(_columnIndex);
+  }
+
+  public String getString(int _columnIndex) {
+    Object value = value(_columnIndex);
+    if(null == value) {
+      return null;
+    }
+    if(value instanceof byte[]) {
+      throw new SQLiteException("Unable to convert BLOB to string");
+    }
+    return value.toString();
+  }
+
+  public int getInt(int _columnIndex) {
+    return (int)getLong(_columnIndex);
+  }
+
+  public long getLong(int _columnIndex) {
+    Object value = value(_columnIndex);
+    if(value instanceof Number) {
+      return ((Number)value).longValue();
+    }
+    return (long)toDouble(value);
+  }
+
+  public double getDouble(int _columnIndex) {
+    Object value = value(_columnIndex);
+    if(value instanceof Number) {
+      return ((Number)value).doubleValue();
+    }
+    return toDouble(value);
+  }
+
+  public byte[] getBlob(int _columnIndex) {
+    Object value = value(_columnIndex);
+    if(null == value || value instanceof byte[]) {
+      return (byte[])value;
+    }
+    return getString(_columnIndex).getBytes();
+  }
+
+  public void close() {
+    closed = true;
+    rows.clear();
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  private Object value(int _columnIndex) {
+    if(position < 0 || position >= rows.size()) {
+      throw new IllegalStateException("Index " + position + " requested, with a size of " + rows.size());
+    }
+    return rows.get(position)[_columnIndex];
+  }
+
+  /**
+   * As SQLite reads a number from text: the longest numeric prefix, 0 if none.
+   */
+  private static double toDouble(Object _value) {
+    if(null == _value || _value instanceof byte[]) {
+      return 0;
+    }
+    String text = _value.toString().trim();
+    for(int end = text.length(); 0 < end ;end--) {
+      try {
+        return Double.parseDouble(text.substring(0, end));
+      } catch(NumberFormatException e) {
+        // try a shorter prefix
+      }
+    }
+    return 0;
+  }
+
+}
@@ -0,0 +1,328 @@
+package android.database.sqlite;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Map;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * Host stand-in for the framework's SQLiteDatabase, on sqlite-jdbc, so the
+ * models run their own SQL against a real SQLite.
+ *
+ * As on the device, a statement outside a transaction commits by itself,
+ * and transactions nest: the outermost one commits only if every level
+ * was marked successful.
+ */
+public class SQLiteDatabase {
+
+  public interface CursorFactory {
+  }
+
+  // Primary result code for a constraint violation
+  private static final int SQLITE_CONSTRAINT = 19;
+
+  private final Connection connection;
+  private int transactionDepth = 0;
+  private boolean levelSuccessful = false;
+  private boolean transactionFailed = false;
+
+  private SQLiteDatabase(Connection _connection) {
+    this.connection = _connection;
+  }
+
+  public static SQLiteDatabase openOrCreateDatabase(String _path, CursorFactory _factory) {
+    try {
+      return new SQLiteDatabase(DriverManager.getConnection("jdbc:sqlite:" + _path));
+    } catch(SQLException e) {
+      throw translate(e);
+    }
+  }
+
+  /**
+   * An in-memory database, gone on close().
+   */
+  public static SQLiteDatabase create(CursorFactory _factory) {
+    return openOrCreateDatabase(":memory:", _factory);
+  }
+
+  public void execSQL(String _sql) {
+    Statement statement = null;
+    try {
+      statement = connection.createStatement();
+      statement.execute(_sql);
+    } catch(SQLException e) {
+      throw translate(e);
+    } finally {
+      close(statement);
+    }
+  }
+
+  public void execSQL(String _sql, Object[] _bindArgs) {
+    PreparedStatement statement = null;
+    try {
+      statement = connection.prepareStatement(_sql);
+      for(int ii=0; ii < _bindArgs.length ;ii++) {
+        statement.setObject(ii + 1, _bindArgs[ii]);
+      }
+      statement.execute();
+    } catch(SQLException e) {
+      throw translate(e);
+    } finally {
+      close(statement);
+    }
+  }
+
+  public Cursor rawQuery(String _sql, String[] _selectionArgs) {
+    PreparedStatement statement = null;
+    ResultSet results = null;
+    try {
+      statement = connection.prepareStatement(_sql);
+      if(null != _selectionArgs) {
+        for(int ii=0; ii < _selectionArgs.length ;ii++) {
+          statement.setString(ii + 1, _selectionArgs[ii]);
+        }
+      }
+      results = statement.executeQuery();
+      return new SQLiteCursor(results);
+    } catch(SQLException e) {
+      throw translate(e);
+    } finally {
+      close(results);
+      close(statement);
+    }
+  }
+
+  public Cursor query(String _table, String[] _columns, String _selection, String[] _selectionArgs,
+      String _groupBy, String _having, String _orderBy) {
+    return query(false, _table, _columns, _selection, _selectionArgs, _groupBy, _having, _orderBy, null);
+  }
+
+  public Cursor query(String _table, String[] _columns, String _selection, String[] _selectionArgs,
+      String _groupBy, String _having, String _orderBy, String _limit) {
+    return query(false, _table, _columns, _selection, _selectionArgs, _groupBy, _having, _orderBy, _limit);
+  }
+
+  public Cursor query(boolean _distinct, String _table, String[] _columns, String _selection, String[] _selectionArgs,
+      String _groupBy, String _having, String _orderBy, String _limit) {
+    StringBuilder sql = new StringBuilder("SELECT ");
+    if(_distinct) {
+      sql.append("DISTINCT ");
+    }
+    if(null == _columns) {
+      sql.append('*');
+    } else {
+      for(int ii=0; ii < _columns.length ;ii++) {
+        if(0 < ii) {
+          sql.append(", ");
+        }
+        sql.append(_columns[ii]);
+      }
+    }
+    sql.append(" FROM ").append(_table);
+    appendClause(sql, " WHERE ", _selection);
+    appendClause(sql, " GROUP BY ", _groupBy);
+    appendClause(sql, " HAVING ", _having);
+    appendClause(sql, " ORDER BY ", _orderBy);
+    appendClause(sql, " LIMIT ", _limit);
+    return rawQuery(sql.toString(), _selectionArgs);
+  }
+
+  private static void appendClause(StringBuilder _sql, String _keyword, String _clause) {
+    if(null != _clause && 0 < _clause.length()) {
+      _sql.append(_keyword).append(_clause);
+    }
+  }
+
+  /**
+   * @return the row id of the new row, -1 on error
+   */
+  public long insert(String _table, String _nullColumnHack, ContentValues _values) {
+    StringBuilder names = new StringBuilder();
+    StringBuilder params = new StringBuilder();
+    ArrayList<Object> args = new ArrayList<Object>();
+    for(Map.Entry<String, Object> entry : _values.valueSet()) {
+      if(0 < args.size()) {
+        names.append(", ");
+        params.append(", ");
+      }
+      names.append(entry.getKey());
+      params.append('?');
+      args.add(entry.getValue());
+    }
+    try {
+      update("INSERT INTO " + _table + " (" + names + ") VALUES (" + params + ")", args, null);
+      return lastInsertRowId();
+    } catch(SQLiteException e) {
+      return -1L;
+    }
+  }
+
+  /**
+   * @return the number of rows changed
+   */
+  public int update(String _table, ContentValues _values, String _whereClause, String[] _whereArgs) {
+    StringBuilder sql = new StringBuilder("UPDATE ").append(_table).append(" SET ");
+    ArrayList<Object> args = new ArrayList<Object>();
+    for(Map.Entry<String, Object> entry : _values.valueSet()) {
+      if(0 < args.size()) {
+        sql.append(", ");
+      }
+      sql.append(entry.getKey()).append("=?");
+      args.add(entry.getValue());
+    }
+    appendClause(sql, " WHERE ", _whereClause);
+    return update(sql.toString(), args, _whereArgs);
+  }
+
+  /**
+   * @return the number of rows deleted
+   */
+  public int delete(String _table, String _whereClause, String[] _whereArgs) {
+    StringBuilder sql = new StringBuilder("DELETE FROM ").append(_table);
+    appendClause(sql, " WHERE ", _whereClause);
+    return update(sql.toString(), new ArrayList<Object>(), _whereArgs);
+  }
+
+  private int update(String _sql, ArrayList<Object> _args, String[] _moreArgs) {
+    PreparedStatement statement = null;
+    try {
+      statement = connection.prepareStatement(_sql);
+      int index = 1;
+      for(int ii=0; ii < _args.size() ;ii++) {
+        statement.setObject(index++, _args.get(ii));
+      }
+      if(null != _moreArgs) {
+        for(int ii=0; ii < _moreArgs.length ;ii++) {
+          statement.setString(index++, _moreArgs[ii]);
+        }
+      }
+      return statement.executeUpdate();
+    } catch(SQLException e) {
+      throw translate(e);
+    } finally {
+      close(statement);
+    }
+  }
+
+  public SQLiteStatement compileStatement(String _sql) {
+    try {
+      return new SQLiteStatement(this, connection.prepareStatement(_sql));
+    } catch(SQLException e) {
+      throw translate(e);
+    }
+  }
+
+  public void beginTransaction() {
+    if(0 == transactionDepth) {
+      try {
+        connection.setAutoCommit(false);
+      } catch(SQLException e) {
+        throw translate(e);
+      }
+      transactionFailed = false;
+    }
+    transactionDepth++;
+    levelSuccessful = false;
+  }
+
+  public void setTransactionSuccessful() {
+    if(0 == transactionDepth) {
+      throw new IllegalStateException("no transaction pending");
+    }
+    levelSuccessful = true;
+  }
+
+  public void endTransaction() {
+    if(0 == transactionDepth) {
+      throw new IllegalStateException("no transaction pending");
+    }
+    if( ! levelSuccessful) {
+      transactionFailed = true;
+    }
+    levelSuccessful = false;
+    transactionDepth--;
+    if(0 < transactionDepth) {
+      return;
+    }
+    try {
+      if(transactionFailed) {
+        connection.rollback();
+      } else {
+        connection.commit();
+      }
+      connection.setAutoCommit(true);
+    } catch(SQLException e) {
+      throw translate(e);
+    }
+  }
+
+  public boolean inTransaction() {
+    return 0 < transactionDepth;
+  }
+
+  /**
+   * Nothing else shares the connection on the host.
+   */
+  public boolean yieldIfContendedSafely() {
+    return false;
+  }
+
+  public void close() {
+    try {
+      connection.close();
+    } catch(SQLException e) {
+      throw translate(e);
+    }
+  }
+
+  long lastInsertRowId() {
+    Statement statement = null;
+    ResultSet results = null;
+    try {
+      statement = connection.createStatement();
+      results = statement.executeQuery("SELECT last_insert_rowid()");
+      results.next();
+      return results.getLong(1);
+    } catch(SQLException e) {
+      throw translate(e);
+    } finally {
+      close(results);
+      close(statement);
+    }
+  }
+
+  static SQLiteException translate(SQLException _e) {
+    if(SQLITE_CONSTRAINT == (_e.getErrorCode() & 0xff)) {
+      return new SQLiteConstraintException(_e.getMessage(), _e);
+    }
+    return new SQLiteException(_e.getMessage(), _e);
+  }
+
+  static void close(Statement _statement) {
+    if(null != _statement) {
+      try {
+        _statement.close();
+      } catch(SQLException e) {
+        // ignore
+      }
+    }
+  }
+
+  static void close(ResultSet _results) {
+    if(null != _results) {
+      try {
+        _results.close();
+      } catch(SQLException e) {
+        // ignore
+      }
+    }
+  }
+
+}
@@ -0,0 +1,22 @@
+package android.database.sqlite;
+
+import android.database.SQLException;
+
+/**
+ * Host stand-in for the framework's SQLiteException.
+ */
+@SuppressWarnings("serial")
+public class SQLiteException extends SQLException {
+
+  public SQLiteException() {
+  }
+
+  public SQLiteException(String _message) {
+    super(_message);
+  }
+
+  public SQLiteException(String _message, Throwable _cause) {
+    super(_message, _cause);
+  }
+
+}
@@ -0,0 +1,115 @@
+package android.database.sqlite;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Host stand-in for the framework's SQLiteStatement. Bindings stay in
+ * place between executions, as on the device.
+ */
+public class SQLiteStatement {
+
+  private final SQLiteDatabase db;
+  private final PreparedStatement statement;
+
+  SQLiteStatement(SQLiteDatabase _db, PreparedStatement _statement) {
+    this.db = _db;
+    this.statement = _statement;
+  }
+
+  public void bindNull(int _index) {
+    try {
+      statement.setNull(_index, Types.NULL);
+    } catch(SQLException e) {
+      throw SQLiteDatabase.translate(e);
+    }
+  }
+
+  public void bindLong(int _index, long _value) {
+    try {
+      statement.setLong(_index, _value);
+    } catch(SQLException e) {
+      throw SQLiteDatabase.translate(e);
+    }
+  }
+
+  public void bindDouble(int _index, double _value) {
+    try {
+      statement.setDouble(_index, _value);
+    } catch(SQLException e) {
+      throw SQLiteDatabase.translate(e);
+    }
+  }
+
+  public void bindString(int _index, String _value) {
+    try {
+      statement.setString(_index, _value);
+    } catch(SQLException e) {
+      throw SQLiteDatabase.translate(e);
+    }
+  }
+
+  public void bindBlob(int _index, byte[] _value) {
+    try {
+      statement.setBytes(_index, _value);
+    } catch(SQLException e) {
+      throw SQLiteDatabase.translate(e);
+    }
+  }
+
+  public void clearBindings() {
+    try {
+      statement.clearParameters();
+    } catch(SQLException e) {
+      throw SQLiteDatabase.translate(e);
+    }
+  }
+
+  public void execute() {
+    try {
+      statement.execute();
+    } catch(SQLException e) {
+      throw SQLiteDatabase.translate(e);
+    }
+  }
+
+  /**
+   * @return the row id of the inserted row, -1 if nothing was inserted
+   */
+  public long executeInsert() {
+    try {
+      if(0 == statement.executeUpdate()) {
+        return -1L;
+      }
+    } catch(SQLException e) {
+      throw SQLiteDatabase.translate(e);
+    }
+    return db.lastInsertRowId();
+  }
+
+  public long simpleQueryForLong() {
+    ResultSet results = null;
+    try {
+      results = statement.executeQuery();
+      if( ! results.next()) {
+        throw new SQLiteException("query returned no rows");
+      }
+      return results.getLong(1);
+    } catch(SQLException e) {
+      throw SQLiteDatabase.translate(e);
+    } finally {
+      SQLiteDatabase.close(results);
+    }
+  }
+
+  public void close() {
+    try {
+      statement.close();
+    } catch(SQLException e) {
+      throw SQLiteDatabase.translate(e);
+    }
+  }
+
+}
@@ -0,0 +1,11 @@
+package android.provider;
+
+/**
+ * Host stand-in for the framework's BaseColumns.
+ */
+public interface BaseColumns {
+
+  public static final String _ID = "_id";
+  public static final String _COUNT = "_count";
+
+}
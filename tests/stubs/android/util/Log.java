@@ -0,0 +1,47 @@
+package android.util;
+
+/**
+ * Host stand-in for the framework's Log: warnings and errors go to stderr.
+ */
+public final class Log {
+
+  private Log() {
+  }
+
+  public static int v(String _tag, String _msg) {
+    return 0;
+  }
+
+  public static int d(String _tag, String _msg) {
+    return 0;
+  }
+
+  public static int i(String _tag, String _msg) {
+    return 0;
+  }
+
+  public static int w(String _tag, String _msg) {
+    return println("W", _tag, _msg, null);
+  }
+
+  public static int w(String _tag, String _msg, Throwable _tr) {
+    return println("W", _tag, _msg, _tr);
+  }
+
+  public static int e(String _tag, String _msg) {
+    return println("E", _tag, _msg, null);
+  }
+
+  public static int e(String _tag, String _msg, Throwable _tr) {
+    return println("E", _tag, _msg, _tr);
+  }
+
+  private static int println(String _level, String _tag, String _msg, Throwable _tr) {
+    System.err.println(_level + "/" + _tag + ": " + _msg);
+    if(null != _tr) {
+      _tr.printStackTrace();
+    }
+    return 0;
+  }
+
+}
@@ -0,0 +1,20 @@
+package com.yammer.v1;
+
+/**
+ * Host stand-in for the generated R, with just the ids the host-built
+ * classes use.
+ */
+public final class R {
+
+  public static final class string {
+    public static final int a_moment_ago = 0x7f050001;
+    public static final int one_minute_ago = 0x7f050002;
+    public static final int a_few_minutes_ago = 0x7f050003;
+    public static final int minutes_ago = 0x7f050004;
+    public static final int about_half_an_hour_ago = 0x7f050005;
+    public static final int about_an_hour_ago = 0x7f050006;
+    public static final int hours_ago = 0x7f050007;
+    public static final int days_ago = 0x7f050008;
+  }
+
+}